@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+
+/**
+ * {@link MessageConverter} that writes objects in the compact binary format of a
+ * {@link BinaryObjectSerializer}, as a faster and much smaller alternative to Java serialization.
+ * Classes do not need to implement {@link java.io.Serializable}, but need a no-arg constructor.
+ * <p>
+ * The class of the payload is carried in a header through the {@link ClassMapper} abstraction (as
+ * for the {@link JsonMessageConverter}), so the body contains field data only. Nested values whose
+ * class differs from the declared field type are identified by registration id (see
+ * {@link #setRegisteredClasses(List)}). Unregistered classes are rejected unless
+ * {@link #setRegistrationRequired(boolean) registrationRequired} is switched off; this includes the
+ * payload class named by the header, so the payload class and the classes of its fields must be
+ * registered.
+ *
+ * @author agent
+ */
+public class BinaryMessageConverter implements MessageConverter, BeanClassLoaderAware {
+
+	public static final String CONTENT_TYPE_BINARY_OBJECT = "application/x-spring-amqp-binary-object";
+
+	private static Log log = LogFactory.getLog(BinaryMessageConverter.class);
+
+
+	private final BinaryObjectSerializer serializer = new BinaryObjectSerializer();
+
+	private volatile ClassMapper classMapper = new DefaultClassMapper();
+
+
+	public ClassMapper getClassMapper() {
+		return this.classMapper;
+	}
+
+	public void setClassMapper(ClassMapper classMapper) {
+		this.classMapper = classMapper;
+	}
+
+	public void setBeanClassLoader(ClassLoader beanClassLoader) {
+		this.serializer.setBeanClassLoader(beanClassLoader);
+	}
+
+	/**
+	 * @see BinaryObjectSerializer#setRegisteredClasses(List)
+	 */
+	public void setRegisteredClasses(List<Class<?>> registeredClasses) {
+		this.serializer.setRegisteredClasses(registeredClasses);
+	}
+
+	/**
+	 * @see BinaryObjectSerializer#setRegistrationRequired(boolean)
+	 */
+	public void setRegistrationRequired(boolean registrationRequired) {
+		this.serializer.setRegistrationRequired(registrationRequired);
+	}
+
+	public Object fromMessage(Message message) throws MessageConversionException {
+		Object content = null;
+		MessageProperties properties = message.getMessageProperties();
+		if (properties != null) {
+			String contentType = properties.getContentType();
+			if (CONTENT_TYPE_BINARY_OBJECT.equals(contentType)) {
+				Object classId = properties.getHeaders().get(this.classMapper.getClassIdFieldName());
+				if (classId == null) {
+					throw new MessageConversionException(
+							"failed to convert binary Message content. Could not resolve classId in header");
+				}
+				Class<?> targetClass = this.classMapper.toClass(classId.toString());
+				try {
+					content = this.serializer.deserialize(message.getBody(), targetClass);
+				}
+				catch (IllegalArgumentException e) {
+					throw new MessageConversionException("Failed to convert binary Message content", e);
+				}
+			}
+			else {
+				log.warn("Could not convert incoming message with content-type [" + contentType + "]");
+			}
+		}
+		if (content == null) {
+			content = message.getBody();
+		}
+		return content;
+	}
+
+	public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+		byte[] bytes;
+		try {
+			bytes = this.serializer.serialize(object);
+		}
+		catch (IllegalArgumentException e) {
+			throw new MessageConversionException("Failed to convert Message content", e);
+		}
+		messageProperties.setContentType(CONTENT_TYPE_BINARY_OBJECT);
+		messageProperties.setContentLength(bytes.length);
+		if (object != null) {
+			messageProperties.getHeaders().put(this.classMapper.getClassIdFieldName(),
+					this.classMapper.fromClass(object.getClass()));
+		}
+		return new Message(bytes, messageProperties);
+	}
+
+}
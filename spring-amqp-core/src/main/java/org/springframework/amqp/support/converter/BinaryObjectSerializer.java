@@ -0,0 +1,886 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.amqp.utils.BufferPool;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Compact, schema-less binary serializer for plain Java objects. Objects are written field by field
+ * (all non-static, non-transient fields including inherited ones, in name order) without any field
+ * names or class descriptors, so both sides must use the same version of each class. Supported
+ * values are primitives and their wrappers, Strings, byte arrays, BigDecimal, BigInteger, Date,
+ * enums, Lists, Sets, Maps and objects of classes with a no-arg constructor (of any visibility)
+ * whose fields are themselves supported. Object graphs must be acyclic. Collections are read back as
+ * the declared type of their field where that is a concrete class with a no-arg constructor, and as
+ * ArrayList, LinkedHashSet and LinkedHashMap otherwise.
+ * <p>
+ * Where the runtime class of a value is the declared type of its field it is not written at all.
+ * Otherwise the class is written as a small integer id if it has been {@link #setRegisteredClasses
+ * registered}. Both sides must register the same classes in the same order. By default every class
+ * that is instantiated, including the root type and the declared types of fields, must be registered
+ * (collections and maps of the <code>java.util</code> package excepted) and other classes are
+ * rejected on both serialization and deserialization: the root type is chosen by the producer, and
+ * resolving classes named in the data would let any producer make the consumer instantiate and
+ * populate arbitrary classes. Only switch {@link #setRegistrationRequired(boolean)
+ * registrationRequired} off for trusted producers.
+ * <p>
+ * Instances are thread-safe once configured.
+ *
+ * @author agent
+ * @see BinaryMessageConverter
+ */
+public class BinaryObjectSerializer {
+
+	private static final int MAX_DEPTH = 256;
+
+	private static final byte TAG_NULL = 0;
+
+	private static final byte TAG_TRUE = 1;
+
+	private static final byte TAG_FALSE = 2;
+
+	private static final byte TAG_BYTE = 3;
+
+	private static final byte TAG_SHORT = 4;
+
+	private static final byte TAG_INT = 5;
+
+	private static final byte TAG_LONG = 6;
+
+	private static final byte TAG_FLOAT = 7;
+
+	private static final byte TAG_DOUBLE = 8;
+
+	private static final byte TAG_CHAR = 9;
+
+	private static final byte TAG_STRING = 10;
+
+	private static final byte TAG_BYTES = 11;
+
+	private static final byte TAG_BIG_DECIMAL = 12;
+
+	private static final byte TAG_BIG_INTEGER = 13;
+
+	private static final byte TAG_DATE = 14;
+
+	private static final byte TAG_ENUM = 15;
+
+	private static final byte TAG_LIST = 16;
+
+	private static final byte TAG_SET = 17;
+
+	private static final byte TAG_MAP = 18;
+
+	private static final byte TAG_OBJECT = 19;
+
+	/** Class reference meaning "the declared type of the field". */
+	private static final int CLASS_REF_DECLARED = 0;
+
+	/** Class reference followed by the class name. */
+	private static final int CLASS_REF_NAMED = 1;
+
+	/** Offset added to the registration id of a registered class. */
+	private static final int CLASS_REF_REGISTERED_BASE = 2;
+
+	private static final Map<Class<?>, Byte> SIMPLE_TYPE_TAGS = new HashMap<Class<?>, Byte>();
+
+	static {
+		SIMPLE_TYPE_TAGS.put(Byte.class, TAG_BYTE);
+		SIMPLE_TYPE_TAGS.put(Short.class, TAG_SHORT);
+		SIMPLE_TYPE_TAGS.put(Integer.class, TAG_INT);
+		SIMPLE_TYPE_TAGS.put(Long.class, TAG_LONG);
+		SIMPLE_TYPE_TAGS.put(Float.class, TAG_FLOAT);
+		SIMPLE_TYPE_TAGS.put(Double.class, TAG_DOUBLE);
+		SIMPLE_TYPE_TAGS.put(Character.class, TAG_CHAR);
+		SIMPLE_TYPE_TAGS.put(String.class, TAG_STRING);
+		SIMPLE_TYPE_TAGS.put(byte[].class, TAG_BYTES);
+		SIMPLE_TYPE_TAGS.put(BigDecimal.class, TAG_BIG_DECIMAL);
+		SIMPLE_TYPE_TAGS.put(BigInteger.class, TAG_BIG_INTEGER);
+		SIMPLE_TYPE_TAGS.put(Date.class, TAG_DATE);
+	}
+
+
+	private volatile ClassLoader beanClassLoader = ClassUtils.getDefaultClassLoader();
+
+	private volatile boolean registrationRequired = true;
+
+	private volatile List<Class<?>> registeredClasses = new ArrayList<Class<?>>();
+
+	private volatile Map<Class<?>, Integer> registrationIds = new HashMap<Class<?>, Integer>();
+
+	private final Map<Class<?>, ClassDescriptor> descriptors = new ConcurrentHashMap<Class<?>, ClassDescriptor>();
+
+	private final Map<String, Class<?>> namedClasses = new ConcurrentHashMap<String, Class<?>>();
+
+
+	public void setBeanClassLoader(ClassLoader beanClassLoader) {
+		this.beanClassLoader = beanClassLoader;
+		this.namedClasses.clear();
+	}
+
+	/**
+	 * Register the classes that are referred to by id instead of by name. The id of a class is its
+	 * position in the list, so producers and consumers must use the same list.
+	 */
+	public void setRegisteredClasses(List<Class<?>> registeredClasses) {
+		Assert.notNull(registeredClasses, "registeredClasses must not be null");
+		Map<Class<?>, Integer> ids = new HashMap<Class<?>, Integer>();
+		for (int i = 0; i < registeredClasses.size(); i++) {
+			Class<?> clazz = registeredClasses.get(i);
+			Assert.notNull(clazz, "registeredClasses must not contain null");
+			Assert.isTrue(!ids.containsKey(clazz), "class registered more than once: " + clazz.getName());
+			ids.put(clazz, i);
+		}
+		this.registeredClasses = new ArrayList<Class<?>>(registeredClasses);
+		this.registrationIds = ids;
+	}
+
+	/**
+	 * If true, objects and enums of classes that are not registered are rejected, even where the
+	 * class is the declared type of the field (or the root type) and would not be written at all.
+	 * Collections and maps are only instantiated as their declared type if it is registered or in the
+	 * <code>java.util</code> package. If false, unregistered classes are written (and resolved on
+	 * read) by class name. Default true. Resolving classes by name allows the producer to choose any
+	 * class on the consumer's class path to be instantiated, so only set this to false if all
+	 * producers are trusted.
+	 */
+	public void setRegistrationRequired(boolean registrationRequired) {
+		this.registrationRequired = registrationRequired;
+	}
+
+	/**
+	 * Serialize the given object graph.
+	 * @param object the object to serialize (may be null)
+	 * @return the serialized bytes
+	 * @throws IllegalArgumentException if the graph contains an unsupported value
+	 */
+	public byte[] serialize(Object object) {
+		Class<?> type = (object != null) ? object.getClass() : Object.class;
+		Output output = new Output(BufferPool.estimateSize(type));
+		writeValue(output, object, type, 0);
+		BufferPool.recordSize(type, output.position);
+		return output.toByteArray();
+	}
+
+	/**
+	 * Deserialize an object graph previously written by {@link #serialize(Object)}.
+	 * @param bytes the serialized bytes
+	 * @param type the class of the root object
+	 * @return the deserialized object (may be null)
+	 * @throws IllegalArgumentException if the bytes cannot be read as an instance of the type
+	 */
+	public Object deserialize(byte[] bytes, Class<?> type) {
+		Input input = new Input(bytes);
+		Object result = readValue(input, type, 0);
+		if (input.position != bytes.length) {
+			throw new IllegalArgumentException("Unexpected trailing bytes after deserializing " + type.getName());
+		}
+		return result;
+	}
+
+	private void writeValue(Output output, Object value, Class<?> declaredType, int depth) {
+		if (depth > MAX_DEPTH) {
+			throw new IllegalArgumentException("Object graph too deep (or cyclic) at depth " + depth);
+		}
+		if (value == null) {
+			output.writeByte(TAG_NULL);
+			return;
+		}
+		Class<?> clazz = value.getClass();
+		if (clazz == Boolean.class) {
+			output.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+			return;
+		}
+		Byte tag = SIMPLE_TYPE_TAGS.get(clazz);
+		if (tag != null) {
+			output.writeByte(tag.byteValue());
+			writeSimpleValue(output, tag.byteValue(), value);
+		}
+		else if (value instanceof Enum<?>) {
+			Class<?> enumClass = ((Enum<?>) value).getDeclaringClass();
+			output.writeByte(TAG_ENUM);
+			writeClassRef(output, enumClass, declaredType);
+			output.writeVarInt(((Enum<?>) value).ordinal());
+		}
+		else if (value instanceof List<?>) {
+			output.writeByte(TAG_LIST);
+			writeElements(output, (Collection<?>) value, depth);
+		}
+		else if (value instanceof Set<?>) {
+			output.writeByte(TAG_SET);
+			writeElements(output, (Collection<?>) value, depth);
+		}
+		else if (value instanceof Map<?, ?>) {
+			output.writeByte(TAG_MAP);
+			Map<?, ?> map = (Map<?, ?>) value;
+			output.writeVarInt(map.size());
+			for (Entry<?, ?> entry : map.entrySet()) {
+				writeValue(output, entry.getKey(), Object.class, depth + 1);
+				writeValue(output, entry.getValue(), Object.class, depth + 1);
+			}
+		}
+		else if (clazz.isArray()) {
+			throw new IllegalArgumentException("Arrays other than byte[] are not supported: " + clazz.getName());
+		}
+		else {
+			output.writeByte(TAG_OBJECT);
+			writeClassRef(output, clazz, declaredType);
+			ClassDescriptor descriptor = getDescriptor(clazz);
+			try {
+				for (Field field : descriptor.fields) {
+					writeField(output, field, value, depth);
+				}
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Could not read fields of " + clazz.getName(), e);
+			}
+		}
+	}
+
+	private void writeSimpleValue(Output output, byte tag, Object value) {
+		switch (tag) {
+		case TAG_BYTE:
+			output.writeByte(((Byte) value).byteValue());
+			break;
+		case TAG_SHORT:
+			output.writeVarInt(zigZag(((Short) value).intValue()));
+			break;
+		case TAG_INT:
+			output.writeVarInt(zigZag(((Integer) value).intValue()));
+			break;
+		case TAG_LONG:
+			output.writeVarLong(zigZag(((Long) value).longValue()));
+			break;
+		case TAG_FLOAT:
+			output.writeInt(Float.floatToIntBits(((Float) value).floatValue()));
+			break;
+		case TAG_DOUBLE:
+			output.writeLong(Double.doubleToLongBits(((Double) value).doubleValue()));
+			break;
+		case TAG_CHAR:
+			output.writeVarInt(((Character) value).charValue());
+			break;
+		case TAG_STRING:
+			output.writeString((String) value);
+			break;
+		case TAG_BYTES:
+			byte[] bytes = (byte[]) value;
+			output.writeVarInt(bytes.length);
+			output.writeBytes(bytes);
+			break;
+		case TAG_BIG_DECIMAL:
+			BigDecimal decimal = (BigDecimal) value;
+			output.writeVarInt(zigZag(decimal.scale()));
+			byte[] unscaled = decimal.unscaledValue().toByteArray();
+			output.writeVarInt(unscaled.length);
+			output.writeBytes(unscaled);
+			break;
+		case TAG_BIG_INTEGER:
+			byte[] integer = ((BigInteger) value).toByteArray();
+			output.writeVarInt(integer.length);
+			output.writeBytes(integer);
+			break;
+		case TAG_DATE:
+			output.writeVarLong(zigZag(((Date) value).getTime()));
+			break;
+		default:
+			throw new IllegalStateException("Unknown tag " + tag);
+		}
+	}
+
+	private void writeElements(Output output, Collection<?> collection, int depth) {
+		output.writeVarInt(collection.size());
+		for (Object element : collection) {
+			writeValue(output, element, Object.class, depth + 1);
+		}
+	}
+
+	private void writeField(Output output, Field field, Object target, int depth) throws IllegalAccessException {
+		Class<?> type = field.getType();
+		if (!type.isPrimitive()) {
+			writeValue(output, field.get(target), type, depth + 1);
+		}
+		else if (type == int.class) {
+			output.writeVarInt(zigZag(field.getInt(target)));
+		}
+		else if (type == long.class) {
+			output.writeVarLong(zigZag(field.getLong(target)));
+		}
+		else if (type == boolean.class) {
+			output.writeByte(field.getBoolean(target) ? TAG_TRUE : TAG_FALSE);
+		}
+		else if (type == double.class) {
+			output.writeLong(Double.doubleToLongBits(field.getDouble(target)));
+		}
+		else if (type == float.class) {
+			output.writeInt(Float.floatToIntBits(field.getFloat(target)));
+		}
+		else if (type == short.class) {
+			output.writeVarInt(zigZag(field.getShort(target)));
+		}
+		else if (type == byte.class) {
+			output.writeByte(field.getByte(target));
+		}
+		else {
+			output.writeVarInt(field.getChar(target));
+		}
+	}
+
+	private void writeClassRef(Output output, Class<?> clazz, Class<?> declaredType) {
+		Integer id = this.registrationIds.get(clazz);
+		if (clazz == declaredType && (id != null || !this.registrationRequired)) {
+			output.writeVarInt(CLASS_REF_DECLARED);
+			return;
+		}
+		if (id != null) {
+			output.writeVarInt(CLASS_REF_REGISTERED_BASE + id.intValue());
+			return;
+		}
+		if (this.registrationRequired) {
+			throw new IllegalArgumentException("Class is not registered: " + clazz.getName());
+		}
+		output.writeVarInt(CLASS_REF_NAMED);
+		output.writeString(clazz.getName());
+	}
+
+	private Object readValue(Input input, Class<?> declaredType, int depth) {
+		if (depth > MAX_DEPTH) {
+			throw new IllegalArgumentException("Object graph too deep at depth " + depth);
+		}
+		byte tag = input.readByte();
+		switch (tag) {
+		case TAG_NULL:
+			return null;
+		case TAG_TRUE:
+			return Boolean.TRUE;
+		case TAG_FALSE:
+			return Boolean.FALSE;
+		case TAG_BYTE:
+			return Byte.valueOf(input.readByte());
+		case TAG_SHORT:
+			return Short.valueOf((short) unZigZag(input.readVarInt()));
+		case TAG_INT:
+			return Integer.valueOf(unZigZag(input.readVarInt()));
+		case TAG_LONG:
+			return Long.valueOf(unZigZag(input.readVarLong()));
+		case TAG_FLOAT:
+			return Float.valueOf(Float.intBitsToFloat(input.readInt()));
+		case TAG_DOUBLE:
+			return Double.valueOf(Double.longBitsToDouble(input.readLong()));
+		case TAG_CHAR:
+			return Character.valueOf((char) input.readVarInt());
+		case TAG_STRING:
+			return input.readString();
+		case TAG_BYTES:
+			return input.readBytes(input.readVarInt());
+		case TAG_BIG_DECIMAL:
+			int scale = unZigZag(input.readVarInt());
+			return new BigDecimal(new BigInteger(input.readBytes(input.readVarInt())), scale);
+		case TAG_BIG_INTEGER:
+			return new BigInteger(input.readBytes(input.readVarInt()));
+		case TAG_DATE:
+			return new Date(unZigZag(input.readVarLong()));
+		case TAG_ENUM:
+			Class<?> enumClass = readClassRef(input, declaredType);
+			Object[] constants = enumClass.getEnumConstants();
+			int ordinal = input.readVarInt();
+			if (constants == null || ordinal < 0 || ordinal >= constants.length) {
+				throw new IllegalArgumentException("Invalid enum constant " + ordinal + " for " + enumClass.getName());
+			}
+			return constants[ordinal];
+		case TAG_LIST:
+			int listSize = input.readCollectionSize();
+			Collection<Object> list = newCollection(declaredType, List.class);
+			if (list == null) {
+				list = new ArrayList<Object>(listSize);
+			}
+			for (int i = 0; i < listSize; i++) {
+				list.add(readValue(input, Object.class, depth + 1));
+			}
+			return list;
+		case TAG_SET:
+			int setSize = input.readCollectionSize();
+			Collection<Object> set = newCollection(declaredType, Set.class);
+			if (set == null) {
+				set = new LinkedHashSet<Object>(capacityFor(setSize));
+			}
+			for (int i = 0; i < setSize; i++) {
+				set.add(readValue(input, Object.class, depth + 1));
+			}
+			return set;
+		case TAG_MAP:
+			int mapSize = input.readCollectionSize();
+			Map<Object, Object> map = newMap(declaredType);
+			if (map == null) {
+				map = new LinkedHashMap<Object, Object>(capacityFor(mapSize));
+			}
+			for (int i = 0; i < mapSize; i++) {
+				Object key = readValue(input, Object.class, depth + 1);
+				map.put(key, readValue(input, Object.class, depth + 1));
+			}
+			return map;
+		case TAG_OBJECT:
+			return readObject(input, readClassRef(input, declaredType), depth);
+		default:
+			throw new IllegalArgumentException("Unknown value tag " + tag + " at offset " + (input.position - 1));
+		}
+	}
+
+	private Object readObject(Input input, Class<?> clazz, int depth) {
+		ClassDescriptor descriptor = getDescriptor(clazz);
+		try {
+			Object target = descriptor.constructor.newInstance();
+			for (Field field : descriptor.fields) {
+				readField(input, field, target, depth);
+			}
+			return target;
+		}
+		catch (Exception e) {
+			if (e instanceof IllegalArgumentException) {
+				throw (IllegalArgumentException) e;
+			}
+			throw new IllegalArgumentException("Could not instantiate " + clazz.getName(), e);
+		}
+	}
+
+	private void readField(Input input, Field field, Object target, int depth) throws IllegalAccessException {
+		Class<?> type = field.getType();
+		if (!type.isPrimitive()) {
+			Object value = readValue(input, type, depth + 1);
+			if (value != null && !type.isInstance(value)) {
+				throw new IllegalArgumentException("Value of type " + value.getClass().getName()
+						+ " cannot be assigned to field " + field);
+			}
+			field.set(target, value);
+		}
+		else if (type == int.class) {
+			field.setInt(target, unZigZag(input.readVarInt()));
+		}
+		else if (type == long.class) {
+			field.setLong(target, unZigZag(input.readVarLong()));
+		}
+		else if (type == boolean.class) {
+			field.setBoolean(target, input.readByte() == TAG_TRUE);
+		}
+		else if (type == double.class) {
+			field.setDouble(target, Double.longBitsToDouble(input.readLong()));
+		}
+		else if (type == float.class) {
+			field.setFloat(target, Float.intBitsToFloat(input.readInt()));
+		}
+		else if (type == short.class) {
+			field.setShort(target, (short) unZigZag(input.readVarInt()));
+		}
+		else if (type == byte.class) {
+			field.setByte(target, input.readByte());
+		}
+		else {
+			field.setChar(target, (char) input.readVarInt());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Collection<Object> newCollection(Class<?> declaredType, Class<?> collectionType) {
+		if (isConcrete(declaredType) && collectionType.isAssignableFrom(declaredType)) {
+			checkCollectionType(declaredType);
+			return (Collection<Object>) instantiate(declaredType);
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Object, Object> newMap(Class<?> declaredType) {
+		if (isConcrete(declaredType) && Map.class.isAssignableFrom(declaredType)) {
+			checkCollectionType(declaredType);
+			return (Map<Object, Object>) instantiate(declaredType);
+		}
+		return null;
+	}
+
+	private void checkCollectionType(Class<?> declaredType) {
+		if (this.registrationRequired && !declaredType.getName().startsWith("java.util.")
+				&& !this.registrationIds.containsKey(declaredType)) {
+			throw new IllegalArgumentException("Class is not registered: " + declaredType.getName());
+		}
+	}
+
+	private Object instantiate(Class<?> clazz) {
+		try {
+			return clazz.newInstance();
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException("Could not instantiate " + clazz.getName(), e);
+		}
+	}
+
+	private static boolean isConcrete(Class<?> clazz) {
+		return !clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers());
+	}
+
+	private Class<?> readClassRef(Input input, Class<?> declaredType) {
+		int ref = input.readVarInt();
+		if (ref == CLASS_REF_DECLARED) {
+			if (declaredType == Object.class || declaredType.isInterface()) {
+				throw new IllegalArgumentException("Missing class information for value of type " + declaredType.getName());
+			}
+			if (this.registrationRequired && !this.registrationIds.containsKey(declaredType)) {
+				throw new IllegalArgumentException("Class is not registered: " + declaredType.getName());
+			}
+			return declaredType;
+		}
+		if (ref == CLASS_REF_NAMED) {
+			String className = input.readString();
+			if (this.registrationRequired) {
+				throw new IllegalArgumentException("Class is not registered: " + className);
+			}
+			return resolveClass(className);
+		}
+		int id = ref - CLASS_REF_REGISTERED_BASE;
+		List<Class<?>> registered = this.registeredClasses;
+		if (id < 0 || id >= registered.size()) {
+			throw new IllegalArgumentException("Unknown class registration id " + id);
+		}
+		return registered.get(id);
+	}
+
+	private Class<?> resolveClass(String className) {
+		Class<?> clazz = this.namedClasses.get(className);
+		if (clazz == null) {
+			try {
+				clazz = ClassUtils.forName(className, this.beanClassLoader);
+			}
+			catch (ClassNotFoundException e) {
+				throw new IllegalArgumentException("Could not resolve class " + className, e);
+			}
+			catch (LinkageError e) {
+				throw new IllegalArgumentException("Could not resolve class " + className, e);
+			}
+			this.namedClasses.put(className, clazz);
+		}
+		return clazz;
+	}
+
+	private ClassDescriptor getDescriptor(Class<?> clazz) {
+		ClassDescriptor descriptor = this.descriptors.get(clazz);
+		if (descriptor == null) {
+			try {
+				descriptor = new ClassDescriptor(clazz);
+			}
+			catch (IllegalArgumentException e) {
+				throw e;
+			}
+			catch (RuntimeException e) {
+				// e.g. a JDK class whose fields cannot be made accessible
+				throw new IllegalArgumentException("Cannot access fields of " + clazz.getName(), e);
+			}
+			this.descriptors.put(clazz, descriptor);
+		}
+		return descriptor;
+	}
+
+	private static int capacityFor(int size) {
+		return Math.max((int) (size / .75f) + 1, 16);
+	}
+
+	private static int zigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static int unZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+
+	/**
+	 * Cached reflective metadata for a class: its serializable fields in a stable order and its
+	 * no-arg constructor.
+	 */
+	private static class ClassDescriptor {
+
+		private final Field[] fields;
+
+		private final Constructor<?> constructor;
+
+		ClassDescriptor(Class<?> clazz) {
+			if (!isConcrete(clazz)) {
+				throw new IllegalArgumentException("Cannot serialize abstract type " + clazz.getName());
+			}
+			try {
+				this.constructor = clazz.getDeclaredConstructor();
+			}
+			catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("Class " + clazz.getName() + " has no no-arg constructor", e);
+			}
+			ReflectionUtils.makeAccessible(this.constructor);
+			List<Field> fields = new ArrayList<Field>();
+			for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+				for (Field field : current.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+						ReflectionUtils.makeAccessible(field);
+						fields.add(field);
+					}
+				}
+			}
+			this.fields = fields.toArray(new Field[fields.size()]);
+			Arrays.sort(this.fields, new Comparator<Field>() {
+				public int compare(Field f1, Field f2) {
+					int result = f1.getName().compareTo(f2.getName());
+					if (result == 0) {
+						result = f1.getDeclaringClass().getName().compareTo(f2.getDeclaringClass().getName());
+					}
+					return result;
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Growable byte buffer with variable-length integer encoding.
+	 */
+	private static class Output {
+
+		private byte[] buffer;
+
+		private int position;
+
+		Output(int initialSize) {
+			this.buffer = new byte[initialSize];
+		}
+
+		private void ensureCapacity(int required) {
+			if (this.position + required > this.buffer.length) {
+				byte[] newBuffer = new byte[Math.max(this.buffer.length << 1, this.position + required)];
+				System.arraycopy(this.buffer, 0, newBuffer, 0, this.position);
+				this.buffer = newBuffer;
+			}
+		}
+
+		void writeByte(byte value) {
+			ensureCapacity(1);
+			this.buffer[this.position++] = value;
+		}
+
+		void writeBytes(byte[] bytes) {
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+			this.position += bytes.length;
+		}
+
+		void writeInt(int value) {
+			ensureCapacity(4);
+			this.buffer[this.position++] = (byte) (value >>> 24);
+			this.buffer[this.position++] = (byte) (value >>> 16);
+			this.buffer[this.position++] = (byte) (value >>> 8);
+			this.buffer[this.position++] = (byte) value;
+		}
+
+		void writeLong(long value) {
+			writeInt((int) (value >>> 32));
+			writeInt((int) value);
+		}
+
+		void writeVarInt(int value) {
+			ensureCapacity(5);
+			while ((value & ~0x7F) != 0) {
+				this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.buffer[this.position++] = (byte) value;
+		}
+
+		void writeVarLong(long value) {
+			ensureCapacity(10);
+			while ((value & ~0x7FL) != 0) {
+				this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.buffer[this.position++] = (byte) value;
+		}
+
+		/**
+		 * Writes the number of chars followed by the UTF-8 encoding of the string. Surrogate pairs
+		 * are encoded as two three-byte sequences (as in modified UTF-8), which round-trips exactly.
+		 */
+		void writeString(String value) {
+			int length = value.length();
+			writeVarInt(length);
+			ensureCapacity(length * 3);
+			byte[] buffer = this.buffer;
+			int position = this.position;
+			for (int i = 0; i < length; i++) {
+				char c = value.charAt(i);
+				if (c < 0x80) {
+					buffer[position++] = (byte) c;
+				}
+				else if (c < 0x800) {
+					buffer[position++] = (byte) (0xC0 | (c >> 6));
+					buffer[position++] = (byte) (0x80 | (c & 0x3F));
+				}
+				else {
+					buffer[position++] = (byte) (0xE0 | (c >> 12));
+					buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buffer[position++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			this.position = position;
+		}
+
+		byte[] toByteArray() {
+			if (this.position == this.buffer.length) {
+				return this.buffer;
+			}
+			byte[] result = new byte[this.position];
+			System.arraycopy(this.buffer, 0, result, 0, this.position);
+			return result;
+		}
+	}
+
+
+	/**
+	 * Reader for the format produced by {@link Output}, with bounds checking.
+	 */
+	private static class Input {
+
+		private final byte[] buffer;
+
+		private int position;
+
+		Input(byte[] buffer) {
+			this.buffer = buffer;
+		}
+
+		private void require(int count) {
+			if (count < 0 || this.position + count > this.buffer.length) {
+				throw new IllegalArgumentException("Unexpected end of data at offset " + this.position);
+			}
+		}
+
+		byte readByte() {
+			require(1);
+			return this.buffer[this.position++];
+		}
+
+		byte[] readBytes(int length) {
+			require(length);
+			byte[] result = new byte[length];
+			System.arraycopy(this.buffer, this.position, result, 0, length);
+			this.position += length;
+			return result;
+		}
+
+		int readInt() {
+			require(4);
+			byte[] b = this.buffer;
+			int p = this.position;
+			this.position += 4;
+			return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16) | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+		}
+
+		long readLong() {
+			return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+		}
+
+		int readVarInt() {
+			int result = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				byte b = readByte();
+				result |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return result;
+				}
+			}
+			throw new IllegalArgumentException("Malformed variable-length int at offset " + this.position);
+		}
+
+		long readVarLong() {
+			long result = 0;
+			for (int shift = 0; shift < 70; shift += 7) {
+				byte b = readByte();
+				result |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return result;
+				}
+			}
+			throw new IllegalArgumentException("Malformed variable-length long at offset " + this.position);
+		}
+
+		/**
+		 * Reads a collection size, rejecting values that could not possibly fit in the remaining
+		 * data (every element takes at least one byte) so corrupt input cannot force a huge allocation.
+		 */
+		int readCollectionSize() {
+			int size = readVarInt();
+			require(size);
+			return size;
+		}
+
+		String readString() {
+			int length = readVarInt();
+			require(length);
+			char[] chars = new char[length];
+			byte[] b = this.buffer;
+			for (int i = 0; i < length; i++) {
+				int c = readByte() & 0xFF;
+				if (c >= 0x80) {
+					if (c < 0xE0) {
+						c = ((c & 0x1F) << 6) | (readByte() & 0x3F);
+					}
+					else {
+						require(2);
+						c = ((c & 0x0F) << 12) | ((b[this.position] & 0x3F) << 6) | (b[this.position + 1] & 0x3F);
+						this.position += 2;
+					}
+				}
+				chars[i] = (char) c;
+			}
+			return new String(chars);
+		}
+	}
+
+}
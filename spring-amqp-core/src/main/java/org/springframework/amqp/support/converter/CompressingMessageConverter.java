@@ -0,0 +1,191 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+/**
+ * {@link MessageConverter} that wraps another converter and transparently compresses message bodies
+ * larger than a {@link #setCompressionThreshold(int) threshold}. Compressed messages are marked
+ * through the {@link MessageProperties#getContentEncoding() content-encoding}: since that property
+ * usually carries the charset of text based content, the encoding of the {@link Compressor} is
+ * prepended to it, separated by a colon (e.g. <code>"gzip:UTF-8"</code>, or just
+ * <code>"gzip"</code> if there was no content-encoding). On receipt the body is decompressed with
+ * the compressor registered for that prefix and the original content-encoding is restored before
+ * the message is passed to the delegate. Messages with any other content-encoding are passed
+ * through unchanged, so compressed and uncompressed producers can share a queue.
+ * <p>
+ * The "gzip" and "deflate" encodings are supported out of the box through
+ * {@link DeflaterCompressor}s; other codecs can be plugged in by implementing {@link Compressor}.
+ * The inbound message is not modified: a decompressed message gets its own properties.
+ *
+ * @author agent
+ */
+public class CompressingMessageConverter implements MessageConverter, DisposableBean {
+
+	private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+
+	private final MessageConverter delegate;
+
+	private volatile Compressor compressor;
+
+	private final Map<String, Compressor> decompressors = new ConcurrentHashMap<String, Compressor>();
+
+	private volatile int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+	private final DeflaterCompressor defaultGzip = new DeflaterCompressor(DeflaterCompressor.GZIP);
+
+	private final DeflaterCompressor defaultDeflate = new DeflaterCompressor(DeflaterCompressor.DEFLATE);
+
+
+	/**
+	 * Create a converter that compresses the output of the delegate with gzip.
+	 * @param delegate the converter creating the uncompressed messages
+	 */
+	public CompressingMessageConverter(MessageConverter delegate) {
+		Assert.notNull(delegate, "delegate must not be null");
+		this.delegate = delegate;
+		this.decompressors.put(this.defaultDeflate.getEncoding(), this.defaultDeflate);
+		setCompressor(this.defaultGzip);
+	}
+
+
+	/**
+	 * Set the compressor used for outbound messages. It is also registered for decompression of
+	 * inbound messages. Default is a gzip {@link DeflaterCompressor}.
+	 */
+	public void setCompressor(Compressor compressor) {
+		Assert.notNull(compressor, "compressor must not be null");
+		checkEncoding(compressor);
+		this.decompressors.put(compressor.getEncoding(), compressor);
+		this.compressor = compressor;
+	}
+
+	/**
+	 * Register additional compressors that are only used to decompress inbound messages, e.g.
+	 * while migrating producers to a different codec. "gzip" and "deflate" are always supported.
+	 */
+	public void setDecompressors(List<Compressor> decompressors) {
+		for (Compressor decompressor : decompressors) {
+			checkEncoding(decompressor);
+			this.decompressors.put(decompressor.getEncoding(), decompressor);
+		}
+	}
+
+	/**
+	 * Set the minimum body size in bytes for compression to be attempted. Smaller bodies are sent
+	 * as is, as are bodies that would not get any smaller. Default 1024.
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		Assert.isTrue(compressionThreshold >= 0, "compressionThreshold must not be negative");
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * Set the maximum size in bytes of decompressed content for the built-in "gzip" and "deflate"
+	 * compressors. Compressors set explicitly are configured on their own.
+	 * @see DeflaterCompressor#setMaxDecompressedSize(int)
+	 */
+	public void setMaxDecompressedSize(int maxDecompressedSize) {
+		this.defaultGzip.setMaxDecompressedSize(maxDecompressedSize);
+		this.defaultDeflate.setMaxDecompressedSize(maxDecompressedSize);
+	}
+
+	/**
+	 * Release the pooled resources of the built-in compressors. Compressors set explicitly are
+	 * expected to be managed (and destroyed) by whoever created them.
+	 */
+	public void destroy() {
+		this.defaultGzip.destroy();
+		this.defaultDeflate.destroy();
+	}
+
+	public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+		Message message = this.delegate.toMessage(object, messageProperties);
+		byte[] body = message.getBody();
+		if (body == null || body.length < this.compressionThreshold) {
+			return message;
+		}
+		Compressor compressor = this.compressor;
+		byte[] compressed = compressor.compress(body);
+		if (compressed.length >= body.length) {
+			return message;
+		}
+		MessageProperties properties = message.getMessageProperties();
+		String contentEncoding = properties.getContentEncoding();
+		properties.setContentEncoding(contentEncoding == null ? compressor.getEncoding()
+				: compressor.getEncoding() + ":" + contentEncoding);
+		properties.setContentLength(compressed.length);
+		return new Message(compressed, properties);
+	}
+
+	public Object fromMessage(Message message) throws MessageConversionException {
+		MessageProperties properties = message.getMessageProperties();
+		String contentEncoding = (properties != null) ? properties.getContentEncoding() : null;
+		if (contentEncoding != null && message.getBody() != null) {
+			int colon = contentEncoding.indexOf(':');
+			Compressor decompressor = this.decompressors.get(colon < 0 ? contentEncoding : contentEncoding.substring(0, colon));
+			if (decompressor != null) {
+				byte[] body = decompressor.decompress(message.getBody());
+				MessageProperties decompressedProperties = copyProperties(properties);
+				decompressedProperties.setContentEncoding(colon < 0 ? null : contentEncoding.substring(colon + 1));
+				decompressedProperties.setContentLength(body.length);
+				message = new Message(body, decompressedProperties);
+			}
+		}
+		return this.delegate.fromMessage(message);
+	}
+
+	private static MessageProperties copyProperties(MessageProperties source) {
+		MessageProperties target = new MessageProperties();
+		target.getHeaders().putAll(source.getHeaders());
+		target.setTimestamp(source.getTimestamp());
+		target.setMessageId(source.getMessageId());
+		target.setUserId(source.getUserId());
+		target.setAppId(source.getAppId());
+		target.setClusterId(source.getClusterId());
+		target.setType(source.getType());
+		target.setCorrelationId(source.getCorrelationId());
+		target.setReplyTo(source.getReplyTo());
+		target.setContentType(source.getContentType());
+		target.setContentEncoding(source.getContentEncoding());
+		target.setContentLength(source.getContentLength());
+		target.setDeliveryMode(source.getDeliveryMode());
+		target.setExpiration(source.getExpiration());
+		target.setPriority(source.getPriority());
+		target.setReceivedExchange(source.getReceivedExchange());
+		target.setReceivedRoutingKey(source.getReceivedRoutingKey());
+		target.setRedelivered(source.isRedelivered());
+		target.setDeliveryTag(source.getDeliveryTag());
+		target.setMessageCount(source.getMessageCount());
+		return target;
+	}
+
+	private static void checkEncoding(Compressor compressor) {
+		Assert.isTrue(compressor.getEncoding() != null && compressor.getEncoding().indexOf(':') < 0,
+				"compressor encoding must not be null or contain ':'");
+	}
+
+}
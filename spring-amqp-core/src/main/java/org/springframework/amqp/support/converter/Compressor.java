@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+/**
+ * Strategy for compressing and decompressing message bodies, used by the
+ * {@link CompressingMessageConverter}. Implementations must be thread-safe.
+ *
+ * @author agent
+ */
+public interface Compressor {
+
+	/**
+	 * @return the name of the encoding, used as (the prefix of) the content-encoding of compressed
+	 * messages, e.g. "gzip"
+	 */
+	String getEncoding();
+
+	/**
+	 * Compress the given bytes.
+	 * @param bytes the uncompressed bytes
+	 * @return the compressed bytes
+	 * @throws MessageConversionException in case of failure
+	 */
+	byte[] compress(byte[] bytes) throws MessageConversionException;
+
+	/**
+	 * Decompress the given bytes.
+	 * @param bytes the compressed bytes
+	 * @return the decompressed bytes
+	 * @throws MessageConversionException if the bytes are not valid for this encoding
+	 */
+	byte[] decompress(byte[] bytes) throws MessageConversionException;
+
+}
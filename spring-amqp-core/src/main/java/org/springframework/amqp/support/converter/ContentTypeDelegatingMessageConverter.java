@@ -0,0 +1,263 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.util.Assert;
+
+/**
+ * {@link MessageConverter} that routes each conversion to a delegate selected by the
+ * {@link MessageProperties#getContentType() content-type} of the message. This allows a single
+ * container or template to serve producers using different formats (e.g. JSON, text and binary)
+ * without any branching in the listener.
+ * <p>
+ * Delegates are looked up with an exact-match hash lookup on the content type after stripping any
+ * parameters (e.g. <code>"application/json; charset=UTF-8"</code> becomes
+ * <code>"application/json"</code>) and lower-casing it. If there is no exact match the lookup falls
+ * back to a wildcard delegate registered for the primary type (e.g. <code>"text/*"</code>) and then
+ * to the {@link #setDefaultConverter(MessageConverter) default converter}. The result of the
+ * resolution is cached per raw content-type value, so the string handling happens only once per
+ * distinct header value.
+ * <p>
+ * The number of messages converted per (normalized) content type is tracked and can be obtained
+ * through {@link #getConversionCounts()}.
+ *
+ * @author agent
+ */
+public class ContentTypeDelegatingMessageConverter implements MessageConverter {
+
+	/**
+	 * Key used in the {@link #getConversionCounts() conversion counts} for messages without a
+	 * content-type.
+	 */
+	public static final String NO_CONTENT_TYPE = "none";
+
+	/**
+	 * Key used in the {@link #getConversionCounts() conversion counts} for content types that
+	 * could not be tracked individually because the cache limit was reached.
+	 */
+	public static final String OTHER_CONTENT_TYPE = "other";
+
+	private static final int DEFAULT_CACHE_LIMIT = 256;
+
+
+	private final Map<String, MessageConverter> delegates = new ConcurrentHashMap<String, MessageConverter>();
+
+	private volatile MessageConverter defaultConverter = new SimpleMessageConverter();
+
+	private volatile int cacheLimit = DEFAULT_CACHE_LIMIT;
+
+	private final ConcurrentMap<String, ResolvedContentType> resolvedContentTypes = new ConcurrentHashMap<String, ResolvedContentType>();
+
+	private final ConcurrentMap<String, AtomicLong> conversionCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+
+	/**
+	 * Create a converter that uses a {@link SimpleMessageConverter} as the default.
+	 */
+	public ContentTypeDelegatingMessageConverter() {
+	}
+
+	/**
+	 * Create a converter with the given default converter.
+	 * @param defaultConverter the converter to use when no delegate matches the content type
+	 */
+	public ContentTypeDelegatingMessageConverter(MessageConverter defaultConverter) {
+		setDefaultConverter(defaultConverter);
+	}
+
+
+	/**
+	 * Set the converter used when no delegate is registered for a content type (or the message
+	 * has no content type). Defaults to a {@link SimpleMessageConverter}.
+	 */
+	public void setDefaultConverter(MessageConverter defaultConverter) {
+		Assert.notNull(defaultConverter, "defaultConverter must not be null");
+		this.defaultConverter = defaultConverter;
+		this.resolvedContentTypes.clear();
+	}
+
+	/**
+	 * Set the delegates keyed by content type. Keys may be full content types (e.g.
+	 * <code>"application/json"</code>) or wildcards for a primary type (e.g. <code>"text/*"</code>).
+	 * Replaces any existing delegates.
+	 */
+	public void setDelegates(Map<String, MessageConverter> delegates) {
+		Assert.notNull(delegates, "delegates must not be null");
+		this.delegates.clear();
+		for (Entry<String, MessageConverter> entry : delegates.entrySet()) {
+			addDelegate(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Register a delegate for the given content type.
+	 * @param contentType a content type or primary type wildcard such as <code>"text/*"</code>
+	 * @param converter the converter to use for that content type
+	 */
+	public void addDelegate(String contentType, MessageConverter converter) {
+		Assert.hasText(contentType, "contentType must not be empty");
+		Assert.notNull(converter, "converter must not be null");
+		this.delegates.put(normalize(contentType), converter);
+		this.resolvedContentTypes.clear();
+	}
+
+	/**
+	 * Remove the delegate registered for the given content type.
+	 * @return the removed delegate, or null if there was none
+	 */
+	public MessageConverter removeDelegate(String contentType) {
+		MessageConverter removed = this.delegates.remove(normalize(contentType));
+		this.resolvedContentTypes.clear();
+		return removed;
+	}
+
+	/**
+	 * Set the maximum number of distinct raw content-type values for which the resolved delegate is
+	 * cached. When the limit is reached the cache is cleared, so a producer sending arbitrary
+	 * content-type values cannot grow it without bound. The same limit applies to the number of
+	 * content types tracked individually in the conversion counts. Default 256.
+	 */
+	public void setCacheLimit(int cacheLimit) {
+		Assert.isTrue(cacheLimit > 0, "cacheLimit must be positive");
+		this.cacheLimit = cacheLimit;
+	}
+
+	/**
+	 * @return a snapshot of the number of messages converted (in either direction) per normalized
+	 * content type; messages without a content type are counted under {@link #NO_CONTENT_TYPE}
+	 * and content types beyond the cache limit under {@link #OTHER_CONTENT_TYPE}
+	 */
+	public Map<String, Long> getConversionCounts() {
+		Map<String, Long> counts = new HashMap<String, Long>();
+		for (Entry<String, AtomicLong> entry : this.conversionCounts.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+
+	/**
+	 * Reset all conversion counts to zero.
+	 */
+	public void resetConversionCounts() {
+		this.conversionCounts.clear();
+	}
+
+	public Object fromMessage(Message message) throws MessageConversionException {
+		MessageProperties properties = message.getMessageProperties();
+		String contentType = (properties != null) ? properties.getContentType() : null;
+		return resolve(contentType).converter.fromMessage(message);
+	}
+
+	/**
+	 * Converts the object with the delegate registered for the content type currently set on the
+	 * supplied properties (by default {@link MessageProperties#CONTENT_TYPE_BYTES}), or the default
+	 * converter if there is none.
+	 */
+	public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+		return resolve(messageProperties.getContentType()).converter.toMessage(object, messageProperties);
+	}
+
+	/**
+	 * Return the converter that would be used for the given content type.
+	 */
+	public MessageConverter getConverterForContentType(String contentType) {
+		ResolvedContentType resolved = contentType == null ? null : this.resolvedContentTypes.get(contentType);
+		if (resolved == null) {
+			resolved = doResolve(contentType);
+		}
+		return resolved.converter;
+	}
+
+	private ResolvedContentType resolve(String contentType) {
+		if (contentType == null) {
+			count(NO_CONTENT_TYPE);
+			return new ResolvedContentType(NO_CONTENT_TYPE, this.defaultConverter);
+		}
+		ResolvedContentType resolved = this.resolvedContentTypes.get(contentType);
+		if (resolved == null) {
+			resolved = doResolve(contentType);
+			if (this.resolvedContentTypes.size() >= this.cacheLimit) {
+				this.resolvedContentTypes.clear();
+			}
+			this.resolvedContentTypes.put(contentType, resolved);
+		}
+		count(resolved.normalizedContentType);
+		return resolved;
+	}
+
+	private ResolvedContentType doResolve(String contentType) {
+		if (contentType == null) {
+			return new ResolvedContentType(NO_CONTENT_TYPE, this.defaultConverter);
+		}
+		String normalized = normalize(contentType);
+		MessageConverter converter = this.delegates.get(normalized);
+		if (converter == null) {
+			int slash = normalized.indexOf('/');
+			if (slash > 0) {
+				converter = this.delegates.get(normalized.substring(0, slash) + "/*");
+			}
+		}
+		if (converter == null) {
+			converter = this.defaultConverter;
+		}
+		return new ResolvedContentType(normalized, converter);
+	}
+
+	private void count(String normalizedContentType) {
+		AtomicLong counter = this.conversionCounts.get(normalizedContentType);
+		if (counter == null) {
+			if (this.conversionCounts.size() >= this.cacheLimit) {
+				normalizedContentType = OTHER_CONTENT_TYPE;
+			}
+			AtomicLong newCounter = new AtomicLong();
+			counter = this.conversionCounts.putIfAbsent(normalizedContentType, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	private static String normalize(String contentType) {
+		int semicolon = contentType.indexOf(';');
+		String type = (semicolon >= 0) ? contentType.substring(0, semicolon) : contentType;
+		return type.trim().toLowerCase();
+	}
+
+
+	private static class ResolvedContentType {
+
+		private final String normalizedContentType;
+
+		private final MessageConverter converter;
+
+		ResolvedContentType(String normalizedContentType, MessageConverter converter) {
+			this.normalizedContentType = normalizedContentType;
+			this.converter = converter;
+		}
+	}
+
+}
@@ -15,15 +15,28 @@
  */
 package org.springframework.amqp.support.converter;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 
 /**
+ * Default {@link ClassMapper}. Classes are identified by the ids in the
+ * {@link #setIdClassMapping(Map) id-class mapping} where present, Maps by a common "Hashtable" id,
+ * and all other classes by their fully qualified name.
+ * <p>
+ * Resolved classes (and, for unresolvable class names, the failure) are cached per id so that the
+ * class loader is only consulted once per distinct id. The caches are bounded by
+ * {@link #setCacheLimit(int)}. Use {@link #setTrustedPackages(List)} to restrict the classes that
+ * can be resolved by name.
  * 
  * @author Mark Pollack
  *
@@ -33,6 +46,8 @@ public class DefaultClassMapper implements ClassMapper, InitializingBean {
 	
 	public static final String DEFAULT_CLASSID_FIELD_NAME = "__TypeId__";
 	
+	private static final int DEFAULT_CACHE_LIMIT = 1024;
+
 	private Map<String, Class<?>> idClassMapping = new HashMap<String, Class<?>>();
 	
 	private Map<Class<?>, String> classIdMapping = new HashMap<Class<?>, String>();
@@ -41,9 +56,20 @@ public class DefaultClassMapper implements ClassMapper, InitializingBean {
 	
 	private Class<?> defaultHashtableClass = Hashtable.class;
 
+	private volatile List<String> trustedPackages;
+
+	private volatile int cacheLimit = DEFAULT_CACHE_LIMIT;
+
+	private final ConcurrentMap<String, Class<?>> resolvedClasses = new ConcurrentHashMap<String, Class<?>>();
+
+	private final ConcurrentMap<String, MessageConversionException> unresolvableClassIds = new ConcurrentHashMap<String, MessageConversionException>();
+
+	private final ConcurrentMap<Class<?>, String> resolvedClassIds = new ConcurrentHashMap<Class<?>, String>();
+
 	
 	public void setDefaultHashtableClass(Class<?> defaultHashtableClass) {
 		this.defaultHashtableClass = defaultHashtableClass;
+		clearCaches();
 	}
 	
 	public String getClassIdFieldName() {
@@ -52,9 +78,49 @@ public class DefaultClassMapper implements ClassMapper, InitializingBean {
 		
 	public void setIdClassMapping(Map<String, Class<?>> idClassMapping) {
 		this.idClassMapping = idClassMapping;
+		clearCaches();
+	}
+
+	/**
+	 * Restrict the classes that can be resolved from a class name to those in the given packages
+	 * (or their sub-packages). Classes in the {@link #setIdClassMapping(Map) id-class mapping} and
+	 * the default Hashtable class are always allowed. A "*" entry allows all packages. By default
+	 * all packages are allowed.
+	 */
+	public void setTrustedPackages(List<String> trustedPackages) {
+		if (trustedPackages == null || trustedPackages.contains("*")) {
+			this.trustedPackages = null;
+		}
+		else {
+			List<String> prefixes = new ArrayList<String>();
+			for (String trustedPackage : trustedPackages) {
+				Assert.hasText(trustedPackage, "trustedPackages must not contain empty entries");
+				prefixes.add(trustedPackage.endsWith(".") ? trustedPackage : trustedPackage + ".");
+			}
+			this.trustedPackages = prefixes;
+		}
+		clearCaches();
+	}
+
+	/**
+	 * Set the maximum number of entries in each of the resolution caches. When a cache is full it
+	 * is cleared, so producers sending arbitrary type ids cannot grow it without bound. Default 1024.
+	 */
+	public void setCacheLimit(int cacheLimit) {
+		Assert.isTrue(cacheLimit > 0, "cacheLimit must be positive");
+		this.cacheLimit = cacheLimit;
 	}
 
 	public String fromClass(Class<?> classOfObjectToConvert) {
+		String classId = this.resolvedClassIds.get(classOfObjectToConvert);
+		if (classId == null) {
+			classId = doFromClass(classOfObjectToConvert);
+			put(this.resolvedClassIds, classOfObjectToConvert, classId);
+		}
+		return classId;
+	}
+
+	private String doFromClass(Class<?> classOfObjectToConvert) {
 		if (classIdMapping.containsKey(classOfObjectToConvert)) {
 			return classIdMapping.get(classOfObjectToConvert);
 		}
@@ -66,6 +132,26 @@ public class DefaultClassMapper implements ClassMapper, InitializingBean {
 	}
 
 	public Class<?> toClass(String classId) {
+		Class<?> clazz = this.resolvedClasses.get(classId);
+		if (clazz != null) {
+			return clazz;
+		}
+		MessageConversionException failure = this.unresolvableClassIds.get(classId);
+		if (failure != null) {
+			throw new MessageConversionException(failure.getMessage(), failure.getCause());
+		}
+		try {
+			clazz = doToClass(classId);
+		}
+		catch (MessageConversionException e) {
+			put(this.unresolvableClassIds, classId, e);
+			throw e;
+		}
+		put(this.resolvedClasses, classId, clazz);
+		return clazz;
+	}
+
+	private Class<?> doToClass(String classId) {
 		if (this.idClassMapping.containsKey(classId)) {
 			return idClassMapping.get(classId);
 		}
@@ -73,6 +159,9 @@ public class DefaultClassMapper implements ClassMapper, InitializingBean {
 		{
 			return this.defaultHashtableClass;
 		}
+		if (!isTrusted(classId)) {
+			throw new MessageConversionException("class name [" + classId + "] is not in a trusted package");
+		}
 		try {
 			return ClassUtils.forName(classId, getClass().getClassLoader());
 		} catch (ClassNotFoundException e) {
@@ -82,7 +171,36 @@ public class DefaultClassMapper implements ClassMapper, InitializingBean {
 		}
 	}
 
+	private boolean isTrusted(String className) {
+		List<String> trustedPackages = this.trustedPackages;
+		if (trustedPackages == null) {
+			return true;
+		}
+		// array types resolve to their component type
+		String name = className;
+		while (name.endsWith("[]")) {
+			name = name.substring(0, name.length() - 2);
+		}
+		for (String trustedPackage : trustedPackages) {
+			if (name.startsWith(trustedPackage)) {
+				return true;
+			}
+		}
+		return false;
+	}
 
+	private <K, V> void put(ConcurrentMap<K, V> cache, K key, V value) {
+		if (cache.size() >= this.cacheLimit) {
+			cache.clear();
+		}
+		cache.put(key, value);
+	}
+
+	private void clearCaches() {
+		this.resolvedClasses.clear();
+		this.unresolvableClassIds.clear();
+		this.resolvedClassIds.clear();
+	}
 
 	public void afterPropertiesSet() throws Exception {
 		validateIdTypeMapping();		
@@ -97,6 +215,7 @@ public class DefaultClassMapper implements ClassMapper, InitializingBean {
 		    classIdMapping.put(clazz, id);		    
 		}
 		this.idClassMapping = finalIdClassMapping; 
+		clearCaches();
 	}
 
 }
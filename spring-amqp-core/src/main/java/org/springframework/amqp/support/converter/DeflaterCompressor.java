@@ -0,0 +1,324 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+/**
+ * {@link Compressor} for the "gzip" and "deflate" (zlib) encodings, based on the JDK
+ * {@link Deflater} and {@link Inflater}. Since these hold native zlib state that is expensive to
+ * create (and is only released on {@link Deflater#end()} or finalization), instances are pooled
+ * and {@link Deflater#reset() reset} between uses rather than created per message.
+ * <p>
+ * Decompression is limited to {@link #setMaxDecompressedSize(int) a maximum size}, so that a small
+ * but highly compressed body cannot exhaust the consumer's memory.
+ *
+ * @author agent
+ */
+public class DeflaterCompressor implements Compressor, DisposableBean {
+
+	public static final String GZIP = "gzip";
+
+	public static final String DEFLATE = "deflate";
+
+	private static final int DEFAULT_POOL_SIZE = 16;
+
+	private static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+	private static final int GZIP_HEADER_LENGTH = 10;
+
+	private static final int GZIP_TRAILER_LENGTH = 8;
+
+	/** Upper bound of the deflate compression ratio, used to sanity check the gzip size trailer. */
+	private static final int MAX_DEFLATE_RATIO = 1032;
+
+	private static final int FHCRC = 2;
+
+	private static final int FEXTRA = 4;
+
+	private static final int FNAME = 8;
+
+	private static final int FCOMMENT = 16;
+
+
+	private final String encoding;
+
+	private final boolean gzip;
+
+	private volatile int level = Deflater.DEFAULT_COMPRESSION;
+
+	private volatile int maxDecompressedSize = DEFAULT_MAX_DECOMPRESSED_SIZE;
+
+	private volatile BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(DEFAULT_POOL_SIZE);
+
+	private volatile BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(DEFAULT_POOL_SIZE);
+
+
+	/**
+	 * Create a "gzip" compressor.
+	 */
+	public DeflaterCompressor() {
+		this(GZIP);
+	}
+
+	/**
+	 * Create a compressor for the given encoding.
+	 * @param encoding {@link #GZIP} or {@link #DEFLATE}
+	 */
+	public DeflaterCompressor(String encoding) {
+		Assert.isTrue(GZIP.equals(encoding) || DEFLATE.equals(encoding),
+				"encoding must be '" + GZIP + "' or '" + DEFLATE + "'");
+		this.encoding = encoding;
+		this.gzip = GZIP.equals(encoding);
+	}
+
+
+	/**
+	 * Set the compression level (0-9, see {@link Deflater}). Default {@link Deflater#DEFAULT_COMPRESSION}.
+	 */
+	public void setLevel(int level) {
+		Assert.isTrue(level == Deflater.DEFAULT_COMPRESSION || (level >= 0 && level <= 9), "invalid level " + level);
+		this.level = level;
+		BlockingQueue<Deflater> oldDeflaters = this.deflaters;
+		this.deflaters = new ArrayBlockingQueue<Deflater>(oldDeflaters.remainingCapacity() + oldDeflaters.size());
+		endAll(oldDeflaters, null);
+	}
+
+	/**
+	 * Set the maximum size in bytes of decompressed content. Larger content is rejected with a
+	 * {@link MessageConversionException} before it is fully inflated. Default 64 MB.
+	 */
+	public void setMaxDecompressedSize(int maxDecompressedSize) {
+		Assert.isTrue(maxDecompressedSize > 0 && maxDecompressedSize < Integer.MAX_VALUE,
+				"maxDecompressedSize must be positive and less than Integer.MAX_VALUE");
+		this.maxDecompressedSize = maxDecompressedSize;
+	}
+
+	/**
+	 * Set the maximum number of idle {@link Deflater} and {@link Inflater} instances kept for reuse
+	 * (each). Should be about the number of threads converting concurrently. Default 16.
+	 */
+	public void setPoolSize(int poolSize) {
+		Assert.isTrue(poolSize > 0, "poolSize must be positive");
+		BlockingQueue<Deflater> oldDeflaters = this.deflaters;
+		BlockingQueue<Inflater> oldInflaters = this.inflaters;
+		this.deflaters = new ArrayBlockingQueue<Deflater>(poolSize);
+		this.inflaters = new ArrayBlockingQueue<Inflater>(poolSize);
+		endAll(oldDeflaters, oldInflaters);
+	}
+
+	/**
+	 * Release the native resources of all pooled instances. The compressor remains usable.
+	 */
+	public void destroy() {
+		endAll(this.deflaters, this.inflaters);
+	}
+
+	public String getEncoding() {
+		return this.encoding;
+	}
+
+	public byte[] compress(byte[] bytes) throws MessageConversionException {
+		BlockingQueue<Deflater> pool = this.deflaters;
+		Deflater deflater = pool.poll();
+		if (deflater == null) {
+			deflater = new Deflater(this.level, this.gzip);
+		}
+		try {
+			int headerLength = this.gzip ? GZIP_HEADER_LENGTH : 0;
+			byte[] buffer = new byte[headerLength + bytes.length / 2 + 64];
+			if (this.gzip) {
+				buffer[0] = (byte) 0x1f;
+				buffer[1] = (byte) 0x8b;
+				buffer[2] = Deflater.DEFLATED;
+				buffer[9] = (byte) 0xff; // unknown OS
+			}
+			deflater.setInput(bytes);
+			deflater.finish();
+			int length = headerLength;
+			while (!deflater.finished()) {
+				if (length == buffer.length) {
+					buffer = grow(buffer, length, Math.max(buffer.length << 1, 64));
+				}
+				length += deflater.deflate(buffer, length, buffer.length - length);
+			}
+			if (this.gzip) {
+				if (length + GZIP_TRAILER_LENGTH > buffer.length) {
+					buffer = grow(buffer, length, length + GZIP_TRAILER_LENGTH);
+				}
+				CRC32 crc = new CRC32();
+				crc.update(bytes);
+				writeIntLE(buffer, length, (int) crc.getValue());
+				writeIntLE(buffer, length + 4, bytes.length);
+				length += GZIP_TRAILER_LENGTH;
+			}
+			return (length == buffer.length) ? buffer : grow(buffer, length, length);
+		}
+		finally {
+			deflater.reset();
+			if (!pool.offer(deflater)) {
+				deflater.end();
+			}
+		}
+	}
+
+	public byte[] decompress(byte[] bytes) throws MessageConversionException {
+		int offset = 0;
+		int end = bytes.length;
+		int expectedLength = -1;
+		if (this.gzip) {
+			offset = readGzipHeader(bytes);
+			end = bytes.length - GZIP_TRAILER_LENGTH;
+			if (end < offset) {
+				throw new MessageConversionException("Truncated gzip content");
+			}
+			expectedLength = readIntLE(bytes, end + 4);
+		}
+		int maxSize = this.maxDecompressedSize;
+		if (expectedLength > maxSize) {
+			throw tooLarge(maxSize);
+		}
+		BlockingQueue<Inflater> pool = this.inflaters;
+		Inflater inflater = pool.poll();
+		if (inflater == null) {
+			inflater = new Inflater(this.gzip);
+		}
+		try {
+			int compressedLength = end - offset;
+			// one byte beyond the maximum, to tell content of exactly the maximum size from larger content
+			long limit = (long) maxSize + 1;
+			boolean trustedLength = expectedLength >= 0 && expectedLength <= (long) compressedLength * MAX_DEFLATE_RATIO + 64;
+			byte[] buffer = new byte[trustedLength ? expectedLength : (int) Math.min((long) compressedLength * 4 + 64, limit)];
+			// the trailer is included in the input as zlib may need a byte beyond the end of a raw stream
+			inflater.setInput(bytes, offset, bytes.length - offset);
+			int length = 0;
+			while (!inflater.finished()) {
+				if (length == buffer.length) {
+					if (length > maxSize) {
+						throw tooLarge(maxSize);
+					}
+					buffer = grow(buffer, length, (int) Math.min(Math.max((long) buffer.length << 1, 64), limit));
+				}
+				int count = inflater.inflate(buffer, length, buffer.length - length);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new MessageConversionException("Truncated " + this.encoding + " content");
+				}
+				length += count;
+			}
+			if (length > maxSize) {
+				throw tooLarge(maxSize);
+			}
+			if (length != buffer.length) {
+				buffer = grow(buffer, length, length);
+			}
+			if (this.gzip) {
+				CRC32 crc = new CRC32();
+				crc.update(buffer);
+				if ((int) crc.getValue() != readIntLE(bytes, end) || length != expectedLength) {
+					throw new MessageConversionException("Corrupt gzip content: checksum or length mismatch");
+				}
+			}
+			return buffer;
+		}
+		catch (DataFormatException e) {
+			throw new MessageConversionException("Invalid " + this.encoding + " content", e);
+		}
+		finally {
+			inflater.reset();
+			if (!pool.offer(inflater)) {
+				inflater.end();
+			}
+		}
+	}
+
+	private MessageConversionException tooLarge(int maxSize) {
+		return new MessageConversionException("Decompressed " + this.encoding + " content exceeds the maximum size of "
+				+ maxSize + " bytes");
+	}
+
+	private static void endAll(BlockingQueue<Deflater> deflaters, BlockingQueue<Inflater> inflaters) {
+		Deflater deflater;
+		while ((deflater = deflaters.poll()) != null) {
+			deflater.end();
+		}
+		if (inflaters != null) {
+			Inflater inflater;
+			while ((inflater = inflaters.poll()) != null) {
+				inflater.end();
+			}
+		}
+	}
+
+	/**
+	 * @return the offset of the deflate data following the (variable length) gzip header
+	 */
+	private static int readGzipHeader(byte[] bytes) {
+		if (bytes.length < GZIP_HEADER_LENGTH + GZIP_TRAILER_LENGTH || bytes[0] != (byte) 0x1f
+				|| bytes[1] != (byte) 0x8b || bytes[2] != Deflater.DEFLATED) {
+			throw new MessageConversionException("Not in gzip format");
+		}
+		int flags = bytes[3] & 0xff;
+		int offset = GZIP_HEADER_LENGTH;
+		if ((flags & FEXTRA) != 0) {
+			offset += 2 + ((bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8));
+		}
+		if ((flags & FNAME) != 0) {
+			offset = skipZeroTerminated(bytes, offset);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			offset = skipZeroTerminated(bytes, offset);
+		}
+		if ((flags & FHCRC) != 0) {
+			offset += 2;
+		}
+		return offset;
+	}
+
+	private static int skipZeroTerminated(byte[] bytes, int offset) {
+		while (offset < bytes.length && bytes[offset] != 0) {
+			offset++;
+		}
+		return offset + 1;
+	}
+
+	private static byte[] grow(byte[] buffer, int length, int newSize) {
+		byte[] newBuffer = new byte[newSize];
+		System.arraycopy(buffer, 0, newBuffer, 0, length);
+		return newBuffer;
+	}
+
+	private static void writeIntLE(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) value;
+		buffer[offset + 1] = (byte) (value >>> 8);
+		buffer[offset + 2] = (byte) (value >>> 16);
+		buffer[offset + 3] = (byte) (value >>> 24);
+	}
+
+	private static int readIntLE(byte[] buffer, int offset) {
+		return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8) | ((buffer[offset + 2] & 0xff) << 16)
+				| ((buffer[offset + 3] & 0xff) << 24);
+	}
+
+}
@@ -31,16 +31,17 @@ import org.codehaus.jackson.map.ObjectMapper;
 
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.utils.BufferPool;
+import org.springframework.amqp.utils.PooledByteArrayOutputStream;
 
 /**
  * JSON converter that uses the Jackson Json library.
  * 
  * @author Mark Pollack
+ * @see ContentTypeDelegatingMessageConverter
  */
 public class JsonMessageConverter implements MessageConverter {
 
-	// TODO create composite MessageConverter with key/value pairs of content-type/converter.  introduce base class
-	
 	private static Log log = LogFactory.getLog(JsonMessageConverter.class);
 
 	public static final String DEFAULT_CHARSET = "UTF-8";
@@ -140,8 +141,12 @@ public class JsonMessageConverter implements MessageConverter {
 	public Message toMessage(Object objectToConvert, MessageProperties messageProperties) throws MessageConversionException {
 		byte[] bytes = null;
 		try {
-			String jsonString = jsonObjectMapper.writeValueAsString(objectToConvert);
-			bytes = jsonString.getBytes(this.defaultCharset);
+			if (objectToConvert != null && DEFAULT_CHARSET.equals(this.defaultCharset)) {
+				bytes = convertObjectToUtf8Bytes(objectToConvert);
+			}
+			else {
+				bytes = jsonObjectMapper.writeValueAsString(objectToConvert).getBytes(this.defaultCharset);
+			}
 		}
 		catch (UnsupportedEncodingException e) {
 			throw new MessageConversionException("Failed to convert Message content", e);
@@ -160,9 +165,23 @@ public class JsonMessageConverter implements MessageConverter {
 		if (bytes != null) {
 			messageProperties.setContentLength(bytes.length);
 		}
-		Map<String, Object> headers =  messageProperties.getHeaders();
-		headers.put(classMapper.getClassIdFieldName(), classMapper.fromClass(objectToConvert.getClass()));
+		if (objectToConvert != null) {
+			Map<String, Object> headers =  messageProperties.getHeaders();
+			headers.put(classMapper.getClassIdFieldName(), classMapper.fromClass(objectToConvert.getClass()));
+		}
 		return new Message(bytes, messageProperties);
 	}
 
+	private byte[] convertObjectToUtf8Bytes(Object objectToConvert) throws JsonGenerationException, JsonMappingException, IOException {
+		PooledByteArrayOutputStream output = BufferPool.acquire(objectToConvert.getClass());
+		try {
+			// Jackson writes UTF-8 directly, without an intermediate String
+			jsonObjectMapper.writeValue(output, objectToConvert);
+			return output.toByteArray();
+		}
+		finally {
+			output.release();
+		}
+	}
+
 }
@@ -17,8 +17,6 @@
 package org.springframework.amqp.support.converter;
 
 import java.io.ByteArrayInputStream;
-
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import javax.xml.transform.stream.StreamResult;
@@ -26,6 +24,8 @@ import javax.xml.transform.stream.StreamSource;
 
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.utils.BufferPool;
+import org.springframework.amqp.utils.PooledByteArrayOutputStream;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.oxm.Marshaller;
 import org.springframework.oxm.Unmarshaller;
@@ -119,8 +119,8 @@ public class MarshallingMessageConverter implements MessageConverter, Initializi
 	 * Marshals the given object to a {@link Message}.
 	 */
 	public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+		PooledByteArrayOutputStream bos = BufferPool.acquire(object.getClass());
 		try {
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
 			StreamResult streamResult = new StreamResult(bos);
 			marshaller.marshal(object, streamResult);
 			return new Message(bos.toByteArray(), messageProperties);
@@ -131,6 +131,9 @@ public class MarshallingMessageConverter implements MessageConverter, Initializi
 		catch (IOException ex) {
 			throw new MessageConversionException("Could not marshal  [" + object + "]", ex);
 		}
+		finally {
+			bos.release();
+		}
 	}
 
 	/**
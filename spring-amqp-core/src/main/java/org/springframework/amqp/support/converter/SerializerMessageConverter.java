@@ -14,12 +14,13 @@
 package org.springframework.amqp.support.converter;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.utils.BufferPool;
+import org.springframework.amqp.utils.PooledByteArrayOutputStream;
 import org.springframework.core.serializer.DefaultDeserializer;
 import org.springframework.core.serializer.DefaultSerializer;
 import org.springframework.core.serializer.Deserializer;
@@ -131,13 +132,15 @@ public class SerializerMessageConverter implements MessageConverter {
 			bytes = (byte[]) object;
 			messageProperties.setContentType(MessageProperties.CONTENT_TYPE_BYTES);
 		} else {
-			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			PooledByteArrayOutputStream output = BufferPool.acquire(object.getClass());
 			try {
 				serializer.serialize(object, output);
+				bytes = output.toByteArray();
 			} catch (IOException e) {
 				throw new MessageConversionException("Cannot convert object to bytes", e);
+			} finally {
+				output.release();
 			}
-			bytes = output.toByteArray();
 			messageProperties.setContentType(MessageProperties.CONTENT_TYPE_SERIALIZED_OBJECT);
 		}
 		if (bytes != null) {
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2006-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Static facility providing reusable output buffers for message converters. Each thread keeps one
+ * idle {@link PooledByteArrayOutputStream}; re-entrant use on the same thread (e.g. a converter
+ * delegating to another) gets a fresh stream instead. Buffers larger than {@link #MAX_RETAINED_CAPACITY}
+ * are not retained, so a single huge message does not pin memory in every converting thread.
+ * <p>
+ * The number of bytes written is recorded per type, and the initial capacity of a buffer is taken
+ * from a decaying maximum of the recent sizes for that type, so that buffers rarely need to grow.
+ *
+ * @author agent
+ */
+public abstract class BufferPool {
+
+	/**
+	 * The largest buffer kept for reuse by a thread.
+	 */
+	public static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private static final int MAX_TRACKED_TYPES = 1024;
+
+	private static final ThreadLocal<PooledByteArrayOutputStream> buffers = new ThreadLocal<PooledByteArrayOutputStream>();
+
+	private static final ConcurrentMap<String, SizeEstimate> estimates = new ConcurrentHashMap<String, SizeEstimate>();
+
+
+	/**
+	 * Obtain an empty buffer for writing an instance of the given type. The caller must
+	 * {@link PooledByteArrayOutputStream#release() release} it when done.
+	 * @param type the type being written (may be null)
+	 * @return an empty buffer with enough capacity for a typical instance of the type
+	 */
+	public static PooledByteArrayOutputStream acquire(Class<?> type) {
+		String key = (type != null) ? type.getName() : null;
+		int capacity = estimateSize(key);
+		PooledByteArrayOutputStream buffer = buffers.get();
+		if (buffer != null) {
+			// taken out of the pool until released, so re-entrant use creates a new one
+			buffers.remove();
+		}
+		else {
+			buffer = new PooledByteArrayOutputStream(capacity);
+		}
+		buffer.init(key, capacity);
+		return buffer;
+	}
+
+	/**
+	 * @param type the type being written
+	 * @return the estimated number of bytes needed to write an instance of the type, based on
+	 * recent sizes
+	 */
+	public static int estimateSize(Class<?> type) {
+		return estimateSize(type != null ? type.getName() : null);
+	}
+
+	/**
+	 * Record the number of bytes written for an instance of the given type, for use by subsequent
+	 * size estimates. Not required for buffers obtained through {@link #acquire(Class)}.
+	 */
+	public static void recordSize(Class<?> type, int size) {
+		if (type != null) {
+			recordSize(type.getName(), size);
+		}
+	}
+
+	static void release(PooledByteArrayOutputStream buffer) {
+		recordSize(buffer.getType(), buffer.size());
+		if (buffer.capacity() <= MAX_RETAINED_CAPACITY && buffers.get() == null) {
+			buffers.set(buffer);
+		}
+	}
+
+	private static int estimateSize(String type) {
+		SizeEstimate estimate = (type != null) ? estimates.get(type) : null;
+		if (estimate == null) {
+			return DEFAULT_CAPACITY;
+		}
+		int size = estimate.size;
+		// some headroom to avoid growing for a slightly larger instance
+		return size + (size >> 3) + 16;
+	}
+
+	private static void recordSize(String type, int size) {
+		if (type == null) {
+			return;
+		}
+		SizeEstimate estimate = estimates.get(type);
+		if (estimate == null) {
+			if (estimates.size() >= MAX_TRACKED_TYPES) {
+				estimates.clear();
+			}
+			SizeEstimate newEstimate = new SizeEstimate();
+			estimate = estimates.putIfAbsent(type, newEstimate);
+			if (estimate == null) {
+				estimate = newEstimate;
+			}
+		}
+		estimate.record(size);
+	}
+
+
+	/**
+	 * Decaying maximum of the sizes written for one type. Updates are racy, which is harmless as
+	 * the value is only a capacity hint.
+	 */
+	private static class SizeEstimate {
+
+		private volatile int size;
+
+		void record(int newSize) {
+			int current = this.size;
+			if (newSize >= current) {
+				this.size = newSize;
+			}
+			else {
+				this.size = current - ((current - newSize) >> 4);
+			}
+		}
+	}
+
+}
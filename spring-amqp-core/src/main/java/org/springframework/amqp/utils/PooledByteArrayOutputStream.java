@@ -0,0 +1,125 @@
+/*
+ * Copyright 2006-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.utils;
+
+import java.io.OutputStream;
+
+/**
+ * Unsynchronized, growable byte array output stream obtained from {@link BufferPool#acquire(Class)}.
+ * Unlike {@link java.io.ByteArrayOutputStream} the backing array is reused across messages by the
+ * same thread and is pre-sized from the recent message sizes of the type being written, so writing
+ * a message normally involves no growth and exactly one copy (in {@link #toByteArray()}).
+ * <p>
+ * Must be {@link #release() released} after use, typically in a finally block. {@link #close()}
+ * has no effect, so the stream can be passed to libraries that close their target.
+ *
+ * @author agent
+ */
+public class PooledByteArrayOutputStream extends OutputStream {
+
+	private byte[] buffer;
+
+	private int count;
+
+	private String type;
+
+
+	PooledByteArrayOutputStream(int capacity) {
+		this.buffer = new byte[capacity];
+	}
+
+
+	void init(String type, int capacity) {
+		this.type = type;
+		this.count = 0;
+		if (this.buffer.length < capacity) {
+			this.buffer = new byte[capacity];
+		}
+	}
+
+	String getType() {
+		return this.type;
+	}
+
+	int capacity() {
+		return this.buffer.length;
+	}
+
+	/**
+	 * Make sure that at least the given number of bytes can be written without growing the buffer.
+	 */
+	public void ensureCapacity(int additional) {
+		int required = this.count + additional;
+		if (required > this.buffer.length) {
+			byte[] newBuffer = new byte[Math.max(this.buffer.length << 1, required)];
+			System.arraycopy(this.buffer, 0, newBuffer, 0, this.count);
+			this.buffer = newBuffer;
+		}
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(1);
+		this.buffer[this.count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		ensureCapacity(length);
+		System.arraycopy(bytes, offset, this.buffer, this.count, length);
+		this.count += length;
+	}
+
+	/**
+	 * @return the number of bytes written
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Discard everything written so far.
+	 */
+	public void reset() {
+		this.count = 0;
+	}
+
+	/**
+	 * @return a new array with the bytes written so far
+	 */
+	public byte[] toByteArray() {
+		byte[] result = new byte[this.count];
+		System.arraycopy(this.buffer, 0, result, 0, this.count);
+		return result;
+	}
+
+	/**
+	 * Return the stream to the pool, recording the number of bytes written for the type it was
+	 * acquired for. The stream must not be used afterwards.
+	 */
+	public void release() {
+		BufferPool.release(this);
+	}
+
+	/**
+	 * Has no effect; use {@link #release()} when done.
+	 */
+	@Override
+	public void close() {
+	}
+
+}
@@ -17,7 +17,6 @@
 package org.springframework.amqp.utils;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -39,14 +38,19 @@ public class SerializationUtils {
 		if (object == null) {
 			return null;
 		}
-		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		PooledByteArrayOutputStream stream = BufferPool.acquire(object.getClass());
 		try {
-			new ObjectOutputStream(stream).writeObject(object);
+			ObjectOutputStream objectStream = new ObjectOutputStream(stream);
+			objectStream.writeObject(object);
+			objectStream.flush();
+			return stream.toByteArray();
 		}
 		catch (IOException e) {
 			throw new IllegalArgumentException("Could not serialize object of type: " + object.getClass(), e);
 		}
-		return stream.toByteArray();
+		finally {
+			stream.release();
+		}
 	}
 
 	/**
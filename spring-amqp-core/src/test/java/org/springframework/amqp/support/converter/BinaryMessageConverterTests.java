@@ -0,0 +1,227 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * @author agent
+ */
+public class BinaryMessageConverterTests {
+
+	@Test
+	public void simpleTrade() {
+		SimpleTrade trade = createTrade();
+		BinaryMessageConverter converter = createConverter(SimpleTrade.class);
+		Message message = converter.toMessage(trade, new MessageProperties());
+		assertEquals(BinaryMessageConverter.CONTENT_TYPE_BINARY_OBJECT, message.getMessageProperties().getContentType());
+		String classIdFieldName = converter.getClassMapper().getClassIdFieldName();
+		assertEquals(SimpleTrade.class.getName(), message.getMessageProperties().getHeaders().get(classIdFieldName));
+		assertEquals(trade, converter.fromMessage(message));
+	}
+
+	@Test
+	public void smallerThanJson() {
+		SimpleTrade trade = createTrade();
+		Message binary = createConverter(SimpleTrade.class).toMessage(trade, new MessageProperties());
+		Message json = new JsonMessageConverter().toMessage(trade, new MessageProperties());
+		assertTrue(binary.getBody().length * 2 < json.getBody().length);
+	}
+
+	@Test
+	public void nestedBean() {
+		JsonMessageConverterTests.Bar bar = new JsonMessageConverterTests.Bar();
+		bar.getFoo().setName("spam");
+		BinaryMessageConverter converter = createConverter(JsonMessageConverterTests.Bar.class,
+				JsonMessageConverterTests.Foo.class);
+		Message message = converter.toMessage(bar, new MessageProperties());
+		assertEquals(bar, converter.fromMessage(message));
+	}
+
+	@Test
+	public void polymorphicValuesWithRegisteredClasses() {
+		BinaryMessageConverter converter = createConverter(Holder.class, SimpleTrade.class, Type.class);
+		converter.setRegistrationRequired(true);
+		Holder holder = new Holder();
+		holder.value = createTrade();
+		holder.values = new ArrayList<Object>(Arrays.asList("a", 1, 2L, 3.5d, null, Type.SELL, createTrade()));
+		Message message = converter.toMessage(holder, new MessageProperties());
+		Holder result = (Holder) converter.fromMessage(message);
+		assertEquals(holder.value, result.value);
+		assertEquals(holder.values, result.values);
+		assertEquals(Type.BUY, result.type);
+	}
+
+	@Test(expected = MessageConversionException.class)
+	public void unregisteredClassRejected() {
+		BinaryMessageConverter converter = createConverter(Holder.class, Type.class);
+		converter.setRegistrationRequired(true);
+		Holder holder = new Holder();
+		holder.value = createTrade();
+		converter.toMessage(holder, new MessageProperties());
+	}
+
+	@Test(expected = MessageConversionException.class)
+	public void truncatedBody() {
+		BinaryMessageConverter converter = createConverter(SimpleTrade.class);
+		Message message = converter.toMessage(createTrade(), new MessageProperties());
+		byte[] truncated = new byte[message.getBody().length - 3];
+		System.arraycopy(message.getBody(), 0, truncated, 0, truncated.length);
+		converter.fromMessage(new Message(truncated, message.getMessageProperties()));
+	}
+
+	@Test(expected = MessageConversionException.class)
+	public void unregisteredClassRejectedOnReadByDefault() {
+		BinaryMessageConverter producer = new BinaryMessageConverter();
+		producer.setRegistrationRequired(false);
+		Holder holder = new Holder();
+		holder.value = createTrade();
+		Message message = producer.toMessage(holder, new MessageProperties());
+		createConverter(Holder.class, Type.class).fromMessage(message);
+	}
+
+	@Test
+	public void unregisteredRootClassRejected() {
+		Victim.instances = 0;
+		BinaryMessageConverter converter = createConverter(SimpleTrade.class);
+		Message message = converter.toMessage(createTrade(), new MessageProperties());
+		// a producer naming another class on the consumer's class path than the one it sent
+		message.getMessageProperties().getHeaders().put(converter.getClassMapper().getClassIdFieldName(),
+				Victim.class.getName());
+		try {
+			converter.fromMessage(message);
+			fail("Expected MessageConversionException");
+		}
+		catch (MessageConversionException e) {
+			assertTrue(e.getCause().getMessage().contains("not registered"));
+		}
+		assertEquals(0, Victim.instances);
+	}
+
+	@Test(expected = MessageConversionException.class)
+	public void unregisteredRootClassNotWritten() {
+		new BinaryMessageConverter().toMessage(createTrade(), new MessageProperties());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unregisteredFieldTypeRejected() {
+		// a registered class whose field of a concrete, unregistered type is not null
+		BinaryObjectSerializer serializer = new BinaryObjectSerializer();
+		serializer.setRegistrationRequired(false);
+		JsonMessageConverterTests.Bar bar = new JsonMessageConverterTests.Bar();
+		byte[] bytes = serializer.serialize(bar);
+		serializer = new BinaryObjectSerializer();
+		serializer.setRegisteredClasses(Collections.<Class<?>> singletonList(JsonMessageConverterTests.Bar.class));
+		serializer.deserialize(bytes, JsonMessageConverterTests.Bar.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeRegistrationId() {
+		// object with declared class, then field "type": enum with class ref -1
+		byte[] bytes = new byte[] { 19, 0, 15, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F };
+		createSerializer().deserialize(bytes, Holder.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeEnumOrdinal() {
+		byte[] bytes = new byte[] { 19, 0, 15, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F };
+		createSerializer().deserialize(bytes, Holder.class);
+	}
+
+	@Test(expected = MessageConversionException.class)
+	public void unsupportedJdkClass() {
+		BinaryMessageConverter converter = new BinaryMessageConverter();
+		converter.setRegistrationRequired(false);
+		Holder holder = new Holder();
+		holder.value = UUID.randomUUID();
+		converter.toMessage(holder, new MessageProperties());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void hashtable() {
+		Hashtable<String, String> hashtable = new Hashtable<String, String>();
+		hashtable.put("TICKER", "VMW");
+		hashtable.put("PRICE", "103.2");
+		BinaryMessageConverter converter = new BinaryMessageConverter();
+		Message message = converter.toMessage(hashtable, new MessageProperties());
+		Hashtable<String, String> result = (Hashtable<String, String>) converter.fromMessage(message);
+		assertEquals(hashtable, result);
+	}
+
+	private BinaryMessageConverter createConverter(Class<?>... registeredClasses) {
+		BinaryMessageConverter converter = new BinaryMessageConverter();
+		converter.setRegisteredClasses(Arrays.<Class<?>> asList(registeredClasses));
+		return converter;
+	}
+
+	private BinaryObjectSerializer createSerializer() {
+		BinaryObjectSerializer serializer = new BinaryObjectSerializer();
+		serializer.setRegisteredClasses(Arrays.<Class<?>> asList(Holder.class, Type.class));
+		return serializer;
+	}
+
+	private SimpleTrade createTrade() {
+		SimpleTrade trade = new SimpleTrade();
+		trade.setAccountName("Acct1");
+		trade.setBuyRequest(true);
+		trade.setOrderType("Market");
+		trade.setPrice(new BigDecimal("103.30"));
+		trade.setQuantity(100);
+		trade.setRequestId("R123");
+		trade.setTicker("VMW");
+		trade.setUserName("Joe Trader");
+		return trade;
+	}
+
+	private enum Type {
+		BUY, SELL
+	}
+
+	private static class Holder {
+
+		private Object value;
+
+		private List<Object> values;
+
+		private Type type = Type.BUY;
+	}
+
+	public static class Victim {
+
+		private static int instances;
+
+		public Victim() {
+			instances++;
+		}
+	}
+
+}
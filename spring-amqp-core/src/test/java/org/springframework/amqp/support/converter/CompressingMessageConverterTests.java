@@ -0,0 +1,144 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * @author agent
+ */
+public class CompressingMessageConverterTests {
+
+	@Test
+	public void smallMessageNotCompressed() {
+		CompressingMessageConverter converter = new CompressingMessageConverter(new SimpleMessageConverter());
+		Message message = converter.toMessage("test", new MessageProperties());
+		assertEquals("UTF-8", message.getMessageProperties().getContentEncoding());
+		assertEquals("test", converter.fromMessage(message));
+	}
+
+	@Test
+	public void largeMessageCompressed() throws Exception {
+		String text = createText(10000);
+		CompressingMessageConverter converter = new CompressingMessageConverter(new SimpleMessageConverter());
+		Message message = converter.toMessage(text, new MessageProperties());
+		assertEquals("gzip:UTF-8", message.getMessageProperties().getContentEncoding());
+		assertTrue(message.getBody().length < text.length() / 4);
+		// readable by the JDK implementation
+		GZIPInputStream stream = new GZIPInputStream(new ByteArrayInputStream(message.getBody()));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int count;
+		while ((count = stream.read(buffer)) > 0) {
+			out.write(buffer, 0, count);
+		}
+		assertEquals(text, out.toString("UTF-8"));
+		assertEquals(text, converter.fromMessage(message));
+		// the inbound message is left alone
+		assertEquals("gzip:UTF-8", message.getMessageProperties().getContentEncoding());
+	}
+
+	@Test
+	public void deflateAndJson() {
+		CompressingMessageConverter converter = new CompressingMessageConverter(new JsonMessageConverter());
+		converter.setCompressor(new DeflaterCompressor(DeflaterCompressor.DEFLATE));
+		converter.setCompressionThreshold(0);
+		SimpleTrade trade = new SimpleTrade();
+		trade.setTicker("VMW");
+		trade.setAccountName(createText(200));
+		Message message = converter.toMessage(trade, new MessageProperties());
+		assertEquals("deflate:UTF-8", message.getMessageProperties().getContentEncoding());
+		assertEquals(trade, converter.fromMessage(message));
+	}
+
+	@Test
+	public void decompressJdkGzip() throws Exception {
+		byte[] bytes = createText(5000).getBytes("UTF-8");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream stream = new GZIPOutputStream(out);
+		stream.write(bytes);
+		stream.close();
+		assertArrayEquals(bytes, new DeflaterCompressor().decompress(out.toByteArray()));
+	}
+
+	@Test
+	public void emptyBody() {
+		DeflaterCompressor compressor = new DeflaterCompressor();
+		assertEquals(0, compressor.decompress(compressor.compress(new byte[0])).length);
+	}
+
+	@Test(expected = MessageConversionException.class)
+	public void corruptContent() {
+		DeflaterCompressor compressor = new DeflaterCompressor();
+		byte[] compressed = compressor.compress(createText(5000).getBytes());
+		compressed[compressed.length - 12] ^= 0x55;
+		compressor.decompress(compressed);
+	}
+
+	@Test
+	public void maxDecompressedSize() throws Exception {
+		CompressingMessageConverter converter = new CompressingMessageConverter(new SimpleMessageConverter());
+		Message message = converter.toMessage(createText(10000), new MessageProperties());
+		converter.setMaxDecompressedSize(10000);
+		try {
+			converter.fromMessage(message);
+			fail("Expected MessageConversionException");
+		}
+		catch (MessageConversionException e) {
+			assertTrue(e.getMessage().contains("maximum size"));
+		}
+		finally {
+			converter.destroy();
+		}
+	}
+
+	@Test(expected = MessageConversionException.class)
+	public void maxDecompressedSizeWithUnknownLength() {
+		DeflaterCompressor compressor = new DeflaterCompressor(DeflaterCompressor.DEFLATE);
+		byte[] compressed = compressor.compress(new byte[1024 * 1024]);
+		compressor.setMaxDecompressedSize(1024 * 1024 - 1);
+		compressor.decompress(compressed);
+	}
+
+	@Test
+	public void exactlyMaxDecompressedSize() {
+		DeflaterCompressor compressor = new DeflaterCompressor(DeflaterCompressor.DEFLATE);
+		compressor.setMaxDecompressedSize(1024 * 1024);
+		assertEquals(1024 * 1024, compressor.decompress(compressor.compress(new byte[1024 * 1024])).length);
+	}
+
+	private String createText(int length) {
+		StringBuilder builder = new StringBuilder(length);
+		while (builder.length() < length) {
+			builder.append("{\"ticker\":\"VMW\",\"price\":").append(builder.length() % 97).append("},");
+		}
+		return builder.toString();
+	}
+
+}
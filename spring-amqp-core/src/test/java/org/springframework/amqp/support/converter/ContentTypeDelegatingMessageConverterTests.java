@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * @author agent
+ */
+public class ContentTypeDelegatingMessageConverterTests {
+
+	@Test
+	public void jsonAndTextOnOneConverter() throws Exception {
+		ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter();
+		JsonMessageConverter jsonConverter = new JsonMessageConverter();
+		converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, jsonConverter);
+
+		SimpleTrade trade = new SimpleTrade();
+		trade.setTicker("VMW");
+		trade.setQuantity(100);
+		Message jsonMessage = jsonConverter.toMessage(trade, new MessageProperties());
+		assertEquals(trade, converter.fromMessage(jsonMessage));
+
+		Message textMessage = new SimpleMessageConverter().toMessage("test", new MessageProperties());
+		assertEquals("test", converter.fromMessage(textMessage));
+
+		Map<String, Long> counts = converter.getConversionCounts();
+		assertEquals(Long.valueOf(1), counts.get(MessageProperties.CONTENT_TYPE_JSON));
+		assertEquals(Long.valueOf(1), counts.get(MessageProperties.CONTENT_TYPE_TEXT_PLAIN));
+	}
+
+	@Test
+	public void parametersStrippedFromContentType() {
+		ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter();
+		MessageConverter jsonConverter = new JsonMessageConverter();
+		converter.addDelegate("application/json", jsonConverter);
+		assertSame(jsonConverter, converter.getConverterForContentType("Application/JSON; charset=UTF-8"));
+	}
+
+	@Test
+	public void fallbackChain() {
+		MessageConverter defaultConverter = new SimpleMessageConverter();
+		MessageConverter textConverter = new SerializerMessageConverter();
+		MessageConverter htmlConverter = new SerializerMessageConverter();
+		ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(defaultConverter);
+		converter.addDelegate("text/*", textConverter);
+		converter.addDelegate("text/html", htmlConverter);
+		assertSame(htmlConverter, converter.getConverterForContentType("text/html"));
+		assertSame(textConverter, converter.getConverterForContentType("text/plain"));
+		assertSame(defaultConverter, converter.getConverterForContentType("application/octet-stream"));
+		assertSame(defaultConverter, converter.getConverterForContentType(null));
+	}
+
+	@Test
+	public void countsBoundedByCacheLimit() {
+		ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter();
+		converter.setCacheLimit(2);
+		for (int i = 0; i < 5; i++) {
+			MessageProperties properties = new MessageProperties();
+			properties.setContentType("application/x-test-" + i);
+			converter.fromMessage(new Message(new byte[] { 1 }, properties));
+		}
+		Map<String, Long> counts = converter.getConversionCounts();
+		assertEquals(3, counts.size());
+		assertEquals(Long.valueOf(3), counts.get(ContentTypeDelegatingMessageConverter.OTHER_CONTENT_TYPE));
+	}
+
+}
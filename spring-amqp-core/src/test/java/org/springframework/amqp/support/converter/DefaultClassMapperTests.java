@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.support.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class DefaultClassMapperTests {
+
+	@Test
+	public void roundTrip() throws Exception {
+		DefaultClassMapper mapper = new DefaultClassMapper();
+		Map<String, Class<?>> mapping = new HashMap<String, Class<?>>();
+		mapping.put("trade", SimpleTrade.class);
+		mapper.setIdClassMapping(mapping);
+		mapper.afterPropertiesSet();
+		assertEquals("trade", mapper.fromClass(SimpleTrade.class));
+		assertEquals("trade", mapper.fromClass(SimpleTrade.class));
+		assertSame(SimpleTrade.class, mapper.toClass("trade"));
+		assertEquals("Hashtable", mapper.fromClass(HashMap.class));
+		assertSame(Hashtable.class, mapper.toClass("Hashtable"));
+		assertEquals(String.class.getName(), mapper.fromClass(String.class));
+		assertSame(String.class, mapper.toClass(String.class.getName()));
+		assertSame(String.class, mapper.toClass(String.class.getName()));
+	}
+
+	@Test
+	public void unresolvableClassIdFailsRepeatedly() {
+		DefaultClassMapper mapper = new DefaultClassMapper();
+		for (int i = 0; i < 2; i++) {
+			try {
+				mapper.toClass("com.example.DoesNotExist");
+				fail("Expected MessageConversionException");
+			}
+			catch (MessageConversionException e) {
+				assertEquals(ClassNotFoundException.class, e.getCause().getClass());
+			}
+		}
+	}
+
+	@Test
+	public void trustedPackages() throws Exception {
+		DefaultClassMapper mapper = new DefaultClassMapper();
+		Map<String, Class<?>> mapping = new HashMap<String, Class<?>>();
+		mapping.put("string", String.class);
+		mapper.setIdClassMapping(mapping);
+		mapper.afterPropertiesSet();
+		mapper.setTrustedPackages(Arrays.asList("org.springframework.amqp"));
+		assertSame(SimpleTrade.class, mapper.toClass(SimpleTrade.class.getName()));
+		assertSame(String.class, mapper.toClass("string"));
+		assertSame(Hashtable.class, mapper.toClass("Hashtable"));
+		try {
+			mapper.toClass("java.lang.Runtime");
+			fail("Expected MessageConversionException");
+		}
+		catch (MessageConversionException e) {
+			// expected
+		}
+		mapper.setTrustedPackages(Arrays.asList("*"));
+		assertSame(Runtime.class, mapper.toClass("java.lang.Runtime"));
+	}
+
+}
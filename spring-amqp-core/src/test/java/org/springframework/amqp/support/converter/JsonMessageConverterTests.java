@@ -14,6 +14,7 @@
 package org.springframework.amqp.support.converter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.math.BigDecimal;
 import java.util.Hashtable;
@@ -73,6 +74,24 @@ public class JsonMessageConverterTests {
 		assertEquals("103.2", marhsalledHashtable.get("PRICE"));
 	}
 
+	@Test
+	public void nullObject() throws Exception {
+		JsonMessageConverter converter = new JsonMessageConverter();
+		Message message = converter.toMessage(null, new MessageProperties());
+		assertEquals("null", new String(message.getBody(), "UTF-8"));
+		assertNull(message.getMessageProperties().getHeaders().get(converter.getClassMapper().getClassIdFieldName()));
+	}
+
+	@Test
+	public void nonUtf8Charset() throws Exception {
+		Bar bar = new Bar();
+		JsonMessageConverter converter = new JsonMessageConverter();
+		converter.setDefaultCharset("ISO-8859-1");
+		Message message = converter.toMessage(bar, new MessageProperties());
+		assertEquals("ISO-8859-1", message.getMessageProperties().getContentEncoding());
+		assertEquals(bar, converter.fromMessage(message));
+	}
+
 	public static class Foo {
 		private String name = "foo";
 
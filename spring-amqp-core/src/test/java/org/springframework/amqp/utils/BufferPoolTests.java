@@ -0,0 +1,68 @@
+/*
+ * Copyright 2006-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class BufferPoolTests {
+
+	@Test
+	public void bufferReusedByThread() {
+		PooledByteArrayOutputStream first = BufferPool.acquire(String.class);
+		first.write(new byte[] { 1, 2, 3 }, 0, 3);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, first.toByteArray());
+		first.release();
+		PooledByteArrayOutputStream second = BufferPool.acquire(String.class);
+		assertSame(first, second);
+		assertEquals(0, second.size());
+		second.release();
+	}
+
+	@Test
+	public void reentrantUseGetsNewBuffer() {
+		PooledByteArrayOutputStream outer = BufferPool.acquire(String.class);
+		PooledByteArrayOutputStream inner = BufferPool.acquire(String.class);
+		assertNotSame(outer, inner);
+		inner.release();
+		outer.release();
+	}
+
+	@Test
+	public void sizeEstimateFollowsRecentSizes() {
+		PooledByteArrayOutputStream buffer = BufferPool.acquire(Sized.class);
+		buffer.write(new byte[5000], 0, 5000);
+		buffer.release();
+		assertTrue(BufferPool.estimateSize(Sized.class) >= 5000);
+		for (int i = 0; i < 200; i++) {
+			BufferPool.recordSize(Sized.class, 100);
+		}
+		assertTrue(BufferPool.estimateSize(Sized.class) < 200);
+	}
+
+	private static class Sized {
+	}
+
+}
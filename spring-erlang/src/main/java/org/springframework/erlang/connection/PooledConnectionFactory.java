@@ -0,0 +1,302 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.erlang.connection;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.erlang.OtpIOException;
+import org.springframework.util.Assert;
+
+import com.ericsson.otp.erlang.OtpAuthException;
+import com.ericsson.otp.erlang.OtpConnection;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpPeer;
+import com.ericsson.otp.erlang.OtpSelf;
+
+/**
+ * A {@link ConnectionFactory} that keeps a pool of up to {@link #setPoolSize(int) poolSize} connections to the peer
+ * node, so that concurrent RPCs do not have to queue up behind each other on a single connection. Closing a
+ * Connection obtained from this factory returns it to the pool. A caller that finds all connections in use waits up to
+ * the {@link #setCheckoutTimeout(long) checkoutTimeout} for one to be returned.
+ * <p>
+ * A connection is physically closed instead of being returned to the pool if it is no longer connected, if an RPC on
+ * it failed, or if an RPC was sent without its reply being received (which would otherwise be delivered to the next
+ * user). Since the Erlang distribution protocol allows only one connection between two nodes, each pool slot connects
+ * from its own uniquely named local node. A local node holds a listening socket that JInterface offers no way to
+ * close, so it is created once and reused whenever its slot reconnects.
+ * 
+ * @author agent
+ */
+public class PooledConnectionFactory implements ConnectionFactory, InitializingBean, DisposableBean {
+
+	private static final int DEFAULT_POOL_SIZE = 4;
+
+	private static final long DEFAULT_CHECKOUT_TIMEOUT = 30000;
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final String selfNodeName;
+
+	private final String cookie;
+
+	private final String peerNodeName;
+
+	private volatile int poolSize = DEFAULT_POOL_SIZE;
+
+	private volatile long checkoutTimeout = DEFAULT_CHECKOUT_TIMEOUT;
+
+	private OtpPeer otpPeer;
+
+	private Semaphore permits;
+
+	private final ConcurrentLinkedQueue<PooledConnection> idleConnections = new ConcurrentLinkedQueue<PooledConnection>();
+
+	// local nodes without a connection, one per pool slot once created
+	private final ConcurrentLinkedQueue<OtpSelf> idleSelves = new ConcurrentLinkedQueue<OtpSelf>();
+
+	private volatile boolean active = true;
+
+	public PooledConnectionFactory(String selfNodeName, String cookie, String peerNodeName) {
+		this.selfNodeName = selfNodeName;
+		this.cookie = cookie;
+		this.peerNodeName = peerNodeName;
+	}
+
+	public PooledConnectionFactory(String selfNodeName, String peerNodeName) {
+		this(selfNodeName, null, peerNodeName);
+	}
+
+	/**
+	 * Set the maximum number of connections to the peer node. Default is 4.
+	 */
+	public void setPoolSize(int poolSize) {
+		Assert.isTrue(poolSize > 0, "poolSize must be positive");
+		this.poolSize = poolSize;
+	}
+
+	public int getPoolSize() {
+		return this.poolSize;
+	}
+
+	/**
+	 * Set the maximum time in milliseconds to wait for a connection when all of them are in use. Default is 30000.
+	 */
+	public void setCheckoutTimeout(long checkoutTimeout) {
+		Assert.isTrue(checkoutTimeout >= 0, "checkoutTimeout must not be negative");
+		this.checkoutTimeout = checkoutTimeout;
+	}
+
+	public void afterPropertiesSet() {
+		Assert.isTrue(this.selfNodeName != null && this.peerNodeName != null,
+				"'selfNodeName' and 'peerNodeName' are required");
+		this.otpPeer = new OtpPeer(this.peerNodeName.trim());
+		this.permits = new Semaphore(this.poolSize, true);
+	}
+
+	public Connection createConnection() throws UnknownHostException, OtpAuthException, IOException {
+		Assert.state(this.permits != null, "PooledConnectionFactory has not been initialized");
+		Assert.state(this.active, "PooledConnectionFactory has been destroyed");
+		try {
+			if (!this.permits.tryAcquire(this.checkoutTimeout, TimeUnit.MILLISECONDS)) {
+				throw new OtpIOException("timed out after " + this.checkoutTimeout + "ms waiting for one of "
+						+ this.poolSize + " connections to peer node '" + this.peerNodeName + "'", null);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a connection to peer node '"
+					+ this.peerNodeName + "'");
+		}
+		boolean success = false;
+		try {
+			PooledConnection connection;
+			while ((connection = this.idleConnections.poll()) != null) {
+				if (connection.isConnected()) {
+					connection.checkout();
+					success = true;
+					return connection;
+				}
+				connection.destroy();
+			}
+			connection = createPooledConnection();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Established pooled Otp Connection: " + connection);
+			}
+			connection.checkout();
+			success = true;
+			return connection;
+		} finally {
+			if (!success) {
+				this.permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Close all idle connections. Connections in use are closed when they are returned.
+	 */
+	public void destroy() {
+		this.active = false;
+		PooledConnection connection;
+		while ((connection = this.idleConnections.poll()) != null) {
+			connection.destroy();
+		}
+	}
+
+	private PooledConnection createPooledConnection() throws IOException, OtpAuthException {
+		OtpSelf self = this.idleSelves.poll();
+		if (self == null) {
+			String selfNodeNameToUse = this.selfNodeName.trim() + "-" + UUID.randomUUID().toString();
+			self = (this.cookie == null) ? new OtpSelf(selfNodeNameToUse) : new OtpSelf(selfNodeNameToUse, this.cookie);
+		}
+		boolean success = false;
+		try {
+			PooledConnection connection = new PooledConnection(doCreateConnection(self), self);
+			success = true;
+			return connection;
+		} finally {
+			if (!success) {
+				this.idleSelves.offer(self);
+			}
+		}
+	}
+
+	/**
+	 * Create a connection to the peer node from the given local node, which belongs to one pool slot and is reused
+	 * when that slot reconnects.
+	 */
+	protected OtpConnection doCreateConnection(OtpSelf self) throws IOException, OtpAuthException {
+		try {
+			return self.connect(this.otpPeer);
+		} catch (IOException ex) {
+			throw new OtpIOException("failed to connect from '" + self.node() + "' to peer node '"
+					+ this.peerNodeName + "'", ex);
+		}
+	}
+
+	private void release(PooledConnection connection, boolean reusable) {
+		try {
+			if (reusable && this.active && connection.isConnected()) {
+				this.idleConnections.offer(connection);
+			} else {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Closing pooled Otp Connection: " + connection);
+				}
+				connection.destroy();
+			}
+		} finally {
+			this.permits.release();
+		}
+	}
+
+
+	/**
+	 * Pooled connection, which is returned to the pool on {@link #close()} unless it is broken.
+	 */
+	private class PooledConnection implements ConnectionProxy {
+
+		private final OtpConnection target;
+
+		private final OtpSelf self;
+
+		// only accessed by the thread that checked the connection out
+		private boolean checkedOut;
+
+		private boolean broken;
+
+		private int pendingReplies;
+
+		PooledConnection(OtpConnection target, OtpSelf self) {
+			this.target = target;
+			this.self = self;
+		}
+
+		void checkout() {
+			this.checkedOut = true;
+		}
+
+		boolean isConnected() {
+			return this.target.isConnected();
+		}
+
+		void destroy() {
+			try {
+				this.target.close();
+			} catch (Throwable ex) {
+				logger.debug("Could not close pooled Otp Connection", ex);
+			}
+			idleSelves.offer(this.self);
+		}
+
+		public void sendRPC(String mod, String fun, OtpErlangList args) throws IOException {
+			boolean success = false;
+			try {
+				this.target.sendRPC(mod, fun, args);
+				this.pendingReplies++;
+				success = true;
+			} finally {
+				if (!success) {
+					this.broken = true;
+				}
+			}
+		}
+
+		public OtpErlangObject receiveRPC() throws IOException, OtpErlangExit, OtpAuthException {
+			boolean success = false;
+			try {
+				OtpErlangObject reply = this.target.receiveRPC();
+				this.pendingReplies--;
+				success = true;
+				return reply;
+			} finally {
+				if (!success) {
+					this.broken = true;
+				}
+			}
+		}
+
+		public void close() {
+			if (!this.checkedOut) {
+				return;
+			}
+			this.checkedOut = false;
+			boolean reusable = !this.broken && this.pendingReplies == 0;
+			release(this, reusable);
+		}
+
+		public OtpConnection getTargetConnection() {
+			return this.target;
+		}
+
+		@Override
+		public String toString() {
+			return "Pooled Otp Connection: " + this.target;
+		}
+	}
+
+}
@@ -17,6 +17,8 @@
 
 package org.springframework.erlang.core;
 
+import java.util.concurrent.Future;
+
 import org.springframework.erlang.OtpException;
 import org.springframework.erlang.support.converter.ErlangConverter;
 
@@ -43,4 +45,20 @@ public interface ErlangOperations {
 	Object executeAndConvertRpc(String module, String function, ErlangConverter converterToUse, Object... args) throws OtpException;
 	
 	Object executeAndConvertRpc(String module, String function, Object... args) throws OtpException;
+
+	/**
+	 * Execute an RPC in the background, so that several RPCs can be in flight at the same time. Each RPC uses its own
+	 * Connection, so they only run in parallel with a ConnectionFactory that can provide several Connections at once
+	 * (e.g. {@link org.springframework.erlang.connection.PooledConnectionFactory}).
+	 * @return the future result; {@link Future#get()} throws an ExecutionException with the {@link OtpException} if
+	 * the RPC failed
+	 */
+	Future<OtpErlangObject> executeErlangRpcAsync(String module, String function, OtpErlangList args);
+
+	/**
+	 * Execute an RPC in the background and convert its result, like {@link #executeAndConvertRpc(String, String,
+	 * Object...)}.
+	 * @see #executeErlangRpcAsync(String, String, OtpErlangList)
+	 */
+	Future<Object> executeAndConvertRpcAsync(String module, String function, Object... args);
 }
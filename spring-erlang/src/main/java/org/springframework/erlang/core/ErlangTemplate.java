@@ -16,16 +16,27 @@
 
 package org.springframework.erlang.core;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
 import org.springframework.erlang.ErlangBadRpcException;
 import org.springframework.erlang.ErlangErrorRpcException;
 import org.springframework.erlang.OtpException;
 import org.springframework.erlang.connection.Connection;
 import org.springframework.erlang.connection.ConnectionFactory;
+import org.springframework.erlang.connection.PooledConnectionFactory;
 import org.springframework.erlang.support.ErlangAccessor;
 import org.springframework.erlang.support.ErlangUtils;
 import org.springframework.erlang.support.converter.ErlangConverter;
 import org.springframework.erlang.support.converter.SimpleErlangConverter;
 import org.springframework.util.Assert;
+import org.springframework.util.CustomizableThreadCreator;
 
 import com.ericsson.otp.erlang.*;
 
@@ -38,6 +49,10 @@ public class ErlangTemplate extends ErlangAccessor implements ErlangOperations {
 
 	private volatile ErlangConverter erlangConverter = new SimpleErlangConverter();
 
+	private static final long DEFAULT_THREAD_KEEP_ALIVE = 60000;
+
+	private volatile AsyncTaskExecutor taskExecutor;
+
 	public ErlangTemplate(ConnectionFactory connectionFactory) {
 		setConnectionFactory(connectionFactory);
 		afterPropertiesSet();
@@ -99,6 +114,64 @@ public class ErlangTemplate extends ErlangAccessor implements ErlangOperations {
 		return erlangConverter.fromErlangRpc(module, function, executeErlangRpc(module, function, (OtpErlangList)erlangConverter.toErlang(args)));
 	}
 		
+	public Future<OtpErlangObject> executeErlangRpcAsync(final String module, final String function,
+			final OtpErlangList args) {
+		return getTaskExecutor().submit(new Callable<OtpErlangObject>() {
+			public OtpErlangObject call() {
+				return executeErlangRpc(module, function, args);
+			}
+		});
+	}
+
+	public Future<Object> executeAndConvertRpcAsync(final String module, final String function, final Object... args) {
+		return getTaskExecutor().submit(new Callable<Object>() {
+			public Object call() {
+				return executeAndConvertRpc(module, function, args);
+			}
+		});
+	}
+
+	/**
+	 * Set the executor that runs asynchronous RPCs. Default is a pool of daemon threads as large as the pool of the
+	 * {@link PooledConnectionFactory} (a single thread with other ConnectionFactories), since more RPCs could not run
+	 * at the same time anyway; further RPCs wait in the executor's queue rather than for a Connection. Idle threads
+	 * are discarded after a minute.
+	 */
+	public void setTaskExecutor(AsyncTaskExecutor taskExecutor) {
+		Assert.notNull(taskExecutor, "TaskExecutor must not be null");
+		this.taskExecutor = taskExecutor;
+	}
+
+	private AsyncTaskExecutor getTaskExecutor() {
+		AsyncTaskExecutor taskExecutor = this.taskExecutor;
+		if (taskExecutor == null) {
+			synchronized (this) {
+				taskExecutor = this.taskExecutor;
+				if (taskExecutor == null) {
+					taskExecutor = createDefaultTaskExecutor();
+					this.taskExecutor = taskExecutor;
+				}
+			}
+		}
+		return taskExecutor;
+	}
+
+	private AsyncTaskExecutor createDefaultTaskExecutor() {
+		ConnectionFactory connectionFactory = getConnectionFactory();
+		int threads = (connectionFactory instanceof PooledConnectionFactory) ? ((PooledConnectionFactory) connectionFactory)
+				.getPoolSize() : 1;
+		final CustomizableThreadCreator threadCreator = new CustomizableThreadCreator("ErlangTemplate-");
+		threadCreator.setDaemon(true);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, DEFAULT_THREAD_KEEP_ALIVE,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						return threadCreator.createThread(runnable);
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return new TaskExecutorAdapter(executor);
+	}
+
 	public ErlangConverter getErlangConverter() {
 		return erlangConverter;
 	}
@@ -124,7 +197,8 @@ public class ErlangTemplate extends ErlangAccessor implements ErlangOperations {
 		finally {		
 			org.springframework.erlang.connection.ConnectionFactoryUtils.releaseConnection(con, getConnectionFactory());			
 		}
-		// TODO: physically close and reopen the connection if there is an exception
+		// TODO: physically close and reopen a SingleConnectionFactory's connection if there is an exception
+		// (a PooledConnectionFactory already evicts broken connections)
 		
 	}
 	
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.erlang.support.converter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Converters keyed by the class they handle. A lookup first tries the exact class and then falls back to the first
+ * registered class (in registration order) that is a supertype of it; the result is cached per class, so that the
+ * hierarchy is walked at most once per concrete class. Registration is rare and copies the table, lookups do not
+ * lock.
+ * 
+ * @author agent
+ */
+class ConverterRegistry<T> {
+
+	private volatile Map<Class<?>, T> converters;
+
+	private final ConcurrentMap<Class<?>, T> resolvedConverters = new ConcurrentHashMap<Class<?>, T>();
+
+
+	ConverterRegistry(Map<Class<?>, T> converters) {
+		this.converters = new LinkedHashMap<Class<?>, T>(converters);
+	}
+
+	synchronized void register(Class<?> type, T converter) {
+		Map<Class<?>, T> converters = new LinkedHashMap<Class<?>, T>(this.converters);
+		converters.put(type, converter);
+		this.converters = converters;
+		this.resolvedConverters.clear();
+	}
+
+	/**
+	 * @return the converter for the given class, or null if there is none
+	 */
+	T get(Class<?> type) {
+		T converter = this.resolvedConverters.get(type);
+		if (converter != null) {
+			return converter;
+		}
+		Map<Class<?>, T> converters = this.converters;
+		converter = converters.get(type);
+		if (converter == null) {
+			for (Map.Entry<Class<?>, T> entry : converters.entrySet()) {
+				if (entry.getKey().isAssignableFrom(type)) {
+					converter = entry.getValue();
+					break;
+				}
+			}
+		}
+		if (converter != null) {
+			this.resolvedConverters.put(type, converter);
+			if (this.converters != converters) {
+				// registration raced with the lookup, the result may be stale
+				this.resolvedConverters.remove(type);
+			}
+		}
+		return converter;
+	}
+
+}
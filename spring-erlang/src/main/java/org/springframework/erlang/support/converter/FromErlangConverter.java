@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.erlang.support.converter;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+/**
+ * Converter from one Erlang data type to a Java object, as registered with a {@link SimpleErlangConverter}.
+ * 
+ * @author agent
+ * @see SimpleErlangConverter#registerFromErlangConverter(Class, FromErlangConverter)
+ */
+public interface FromErlangConverter {
+
+	/**
+	 * Convert from a Erlang data type to a Java object.
+	 * @param erlangObject the Erlang object to convert, never null
+	 * @return the converted Java object
+	 * @throws OtpErlangException if the value cannot be represented (e.g. is out of range)
+	 */
+	Object fromErlang(OtpErlangObject erlangObject) throws OtpErlangException;
+
+}
@@ -16,7 +16,10 @@
 
 package org.springframework.erlang.support.converter;
 
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangBinary;
@@ -24,23 +27,181 @@ import com.ericsson.otp.erlang.OtpErlangBoolean;
 import com.ericsson.otp.erlang.OtpErlangByte;
 import com.ericsson.otp.erlang.OtpErlangChar;
 import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangException;
 import com.ericsson.otp.erlang.OtpErlangFloat;
 import com.ericsson.otp.erlang.OtpErlangInt;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangLong;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
-import com.ericsson.otp.erlang.OtpErlangRangeException;
 import com.ericsson.otp.erlang.OtpErlangShort;
 import com.ericsson.otp.erlang.OtpErlangString;
 
 /**
  * Converter that supports the basic types and arrays.
+ * <p>
+ * Conversions are dispatched through tables keyed by class: the converter for a class is looked up directly and,
+ * failing that, taken from the first registered supertype, with the result cached per class. Further types can be
+ * supported by {@link #registerToErlangConverter(Class, ToErlangConverter) registering} additional converters.
  * @author Mark Pollack
  * 
  */
 public class SimpleErlangConverter implements ErlangConverter {
 
+	private static final Map<Class<?>, ToErlangConverter> defaultToErlangConverters = new LinkedHashMap<Class<?>, ToErlangConverter>();
+
+	private static final Map<Class<?>, FromErlangConverter> defaultFromErlangConverters = new LinkedHashMap<Class<?>, FromErlangConverter>();
+
+	static {
+		defaultToErlangConverters.put(byte[].class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangBinary((byte[]) object);
+			}
+		});
+		defaultToErlangConverters.put(Boolean.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangBoolean((Boolean) object);
+			}
+		});
+		defaultToErlangConverters.put(Byte.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangByte((Byte) object);
+			}
+		});
+		defaultToErlangConverters.put(Character.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangChar((Character) object);
+			}
+		});
+		defaultToErlangConverters.put(Double.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangDouble((Double) object);
+			}
+		});
+		defaultToErlangConverters.put(Float.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangFloat((Float) object);
+			}
+		});
+		defaultToErlangConverters.put(Integer.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangInt((Integer) object);
+			}
+		});
+		defaultToErlangConverters.put(Long.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangLong((Long) object);
+			}
+		});
+		defaultToErlangConverters.put(Short.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangShort((Short) object);
+			}
+		});
+		defaultToErlangConverters.put(String.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangString((String) object);
+			}
+		});
+
+		// OtpErlangBoolean, OtpErlangFloat and OtpErlangShort are handled by the converters of their
+		// supertypes (atom, double and long) as registered here
+		defaultFromErlangConverters.put(OtpErlangBinary.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) {
+				return ((OtpErlangBinary) erlangObject).binaryValue();
+			}
+		});
+		defaultFromErlangConverters.put(OtpErlangAtom.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) {
+				return ((OtpErlangAtom) erlangObject).atomValue();
+			}
+		});
+		defaultFromErlangConverters.put(OtpErlangByte.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) throws OtpErlangException {
+				return ((OtpErlangByte) erlangObject).byteValue();
+			}
+		});
+		defaultFromErlangConverters.put(OtpErlangChar.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) throws OtpErlangException {
+				return ((OtpErlangChar) erlangObject).charValue();
+			}
+		});
+		defaultFromErlangConverters.put(OtpErlangDouble.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) {
+				return ((OtpErlangDouble) erlangObject).doubleValue();
+			}
+		});
+		defaultFromErlangConverters.put(OtpErlangInt.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) throws OtpErlangException {
+				return ((OtpErlangInt) erlangObject).intValue();
+			}
+		});
+		defaultFromErlangConverters.put(OtpErlangLong.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) {
+				return ((OtpErlangLong) erlangObject).longValue();
+			}
+		});
+		defaultFromErlangConverters.put(OtpErlangString.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) {
+				return ((OtpErlangString) erlangObject).stringValue();
+			}
+		});
+		defaultFromErlangConverters.put(OtpErlangPid.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) {
+				return ((OtpErlangPid) erlangObject).toString();
+			}
+		});
+	}
+
+	private final ConverterRegistry<ToErlangConverter> toErlangConverters = new ConverterRegistry<ToErlangConverter>(
+			defaultToErlangConverters);
+
+	private final ConverterRegistry<FromErlangConverter> fromErlangConverters = new ConverterRegistry<FromErlangConverter>(
+			defaultFromErlangConverters);
+
+
+	/**
+	 * Register a converter for Java objects of the given type (and, if there is no converter for their exact
+	 * type or an earlier registered supertype, of its subtypes). Replaces any converter registered for the same
+	 * type, including the default ones.
+	 */
+	public void registerToErlangConverter(Class<?> type, ToErlangConverter converter) {
+		Assert.notNull(type, "type must not be null");
+		Assert.notNull(converter, "converter must not be null");
+		this.toErlangConverters.register(type, converter);
+	}
+
+	/**
+	 * Register a converter for Erlang objects of the given type (and, if there is no converter for their exact
+	 * type or an earlier registered supertype, of its subtypes). Replaces any converter registered for the same
+	 * type, including the default ones.
+	 */
+	public void registerFromErlangConverter(Class<? extends OtpErlangObject> type, FromErlangConverter converter) {
+		Assert.notNull(type, "type must not be null");
+		Assert.notNull(converter, "converter must not be null");
+		this.fromErlangConverters.register(type, converter);
+	}
+
+	/**
+	 * Register additional converters for Java objects, keyed by type.
+	 * @see #registerToErlangConverter(Class, ToErlangConverter)
+	 */
+	public void setToErlangConverters(Map<Class<?>, ToErlangConverter> converters) {
+		for (Map.Entry<Class<?>, ToErlangConverter> entry : converters.entrySet()) {
+			registerToErlangConverter(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Register additional converters for Erlang objects, keyed by type.
+	 * @see #registerFromErlangConverter(Class, FromErlangConverter)
+	 */
+	public void setFromErlangConverters(Map<Class<? extends OtpErlangObject>, FromErlangConverter> converters) {
+		for (Map.Entry<Class<? extends OtpErlangObject>, FromErlangConverter> entry : converters.entrySet()) {
+			registerFromErlangConverter(entry.getKey(), entry.getValue());
+		}
+	}
+
 	public Object fromErlang(OtpErlangObject erlangObject)
 			throws ErlangConversionException {
 		//TODO support arrays.
@@ -60,14 +221,11 @@ public class SimpleErlangConverter implements ErlangConverter {
 		if (obj instanceof Object[]) {
 			Object[] objectsToConvert = (Object[]) obj;
 			if (objectsToConvert.length != 0) {
-				ArrayList<OtpErlangObject> tempList = new ArrayList<OtpErlangObject>();
-
-				for (Object objectToConvert : objectsToConvert) {
-					OtpErlangObject erlangObject = convertBasicTypeToErlang(objectToConvert);
-					tempList.add(erlangObject);
+				OtpErlangObject[] erlangObjects = new OtpErlangObject[objectsToConvert.length];
+				for (int i = 0; i < objectsToConvert.length; i++) {
+					erlangObjects[i] = convertBasicTypeToErlang(objectsToConvert[i]);
 				}
-				OtpErlangObject ia[] = new OtpErlangObject[tempList.size()];
-				return new OtpErlangList(tempList.toArray(ia));
+				return new OtpErlangList(erlangObjects);
 			} else {
 				return new OtpErlangList();
 			}
@@ -77,73 +235,37 @@ public class SimpleErlangConverter implements ErlangConverter {
 	}
 
 	protected OtpErlangObject convertBasicTypeToErlang(Object obj) {
-		if (obj instanceof byte[]) {
-			return new OtpErlangBinary((byte[]) obj);
-		} else if (obj instanceof Boolean) {
-			return new OtpErlangBoolean((Boolean) obj);
-		} else if (obj instanceof Byte) {
-			return new OtpErlangByte((Byte) obj);
-		} else if (obj instanceof Character) {
-			return new OtpErlangChar((Character) obj);
-		} else if (obj instanceof Double) {
-			return new OtpErlangDouble((Double) obj);
-		} else if (obj instanceof Float) {
-			return new OtpErlangFloat((Float) obj);
-		} else if (obj instanceof Integer) {
-			return new OtpErlangInt((Integer) obj);
-		} else if (obj instanceof Long) {
-			return new OtpErlangLong((Long) obj);
-		} else if (obj instanceof Short) {
-			return new OtpErlangShort((Short) obj);
-		} else if (obj instanceof String) {
-			return new OtpErlangString((String) obj);
-		} else {
+		ToErlangConverter converter = (obj != null) ? this.toErlangConverters.get(obj.getClass()) : null;
+		if (converter == null) {
 			throw new ErlangConversionException(
-					"Could not convert Java object of type [" + obj.getClass()
+					"Could not convert Java object of type [" + (obj != null ? obj.getClass() : null)
 							+ "] to an Erlang data type.");
 		}
+		return converter.toErlang(obj);
 	}
 
 	protected Object convertErlangToBasicType(OtpErlangObject erlangObject) {
+		FromErlangConverter converter = (erlangObject != null) ? this.fromErlangConverters.get(erlangObject
+				.getClass()) : null;
+		if (converter == null) {
+			throw new ErlangConversionException(
+					"Could not convert Erlang object ["
+							+ (erlangObject != null ? erlangObject.getClass() : null) + "] to Java type.");
+		}
 		try {
-			if (erlangObject instanceof OtpErlangBinary) {
-				return ((OtpErlangBinary) erlangObject).binaryValue();
-			} else if (erlangObject instanceof OtpErlangAtom) {
-				return ((OtpErlangAtom) erlangObject).atomValue();
-			} else if (erlangObject instanceof OtpErlangBinary) {
-				return ((OtpErlangBinary) erlangObject).binaryValue();
-			} else if (erlangObject instanceof OtpErlangBoolean) {
-				return extractBoolean(erlangObject);
-			} else if (erlangObject instanceof OtpErlangByte) {
-				return ((OtpErlangByte) erlangObject).byteValue();
-			} else if (erlangObject instanceof OtpErlangChar) {
-				return ((OtpErlangChar) erlangObject).charValue();
-			} else if (erlangObject instanceof OtpErlangDouble) {
-				return ((OtpErlangDouble) erlangObject).doubleValue();
-			} else if (erlangObject instanceof OtpErlangFloat) {
-				return ((OtpErlangFloat) erlangObject).floatValue();
-			} else if (erlangObject instanceof OtpErlangInt) {
-				return ((OtpErlangInt) erlangObject).intValue();
-			} else if (erlangObject instanceof OtpErlangLong) {
-				return ((OtpErlangLong) erlangObject).longValue();
-			} else if (erlangObject instanceof OtpErlangShort) {
-				return ((OtpErlangShort) erlangObject).shortValue();
-			} else if (erlangObject instanceof OtpErlangString) {
-				return ((OtpErlangString) erlangObject).stringValue();		
-			} else if (erlangObject instanceof OtpErlangPid) {
-				return ((OtpErlangPid) erlangObject).toString();		
-			} else {
-				throw new ErlangConversionException(
-						"Could not convert Erlang object ["
-								+ erlangObject.getClass() + "] to Java type.");
-			}
-		} catch (OtpErlangRangeException e) {
+			return converter.fromErlang(erlangObject);
+		} catch (OtpErlangException e) {
 			throw new ErlangConversionException(
 					"Could not convert Erlang object ["
 							+ erlangObject.getClass() + "] to Java type.", e);
 		}
 	}
 
+	/**
+	 * @deprecated no longer used by the conversion; as before, {@link #fromErlang(OtpErlangObject)} converts an
+	 * {@link OtpErlangBoolean} like any other atom, to the String "true" or "false"
+	 */
+	@Deprecated
 	public static boolean extractBoolean(OtpErlangObject erlangObject) {
 		return ((OtpErlangBoolean) erlangObject).booleanValue();
 	}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.util.exec;
+
+/**
+ * Callback for the output of a subprocess, one line at a time.
+ * 
+ * @author agent
+ * @see StreamMultiplexer
+ * @see MultiplexingStreamHandler
+ */
+public interface LineHandler {
+
+	/**
+	 * Handle one line of output. Called on the thread pumping the stream, which with the
+	 * {@link StreamMultiplexer#getSharedInstance() shared multiplexer} is one thread for every process in the class
+	 * loader: a handler that blocks or is slow holds up the output of all of them, so implementations should return
+	 * quickly and hand any lengthy work over to another thread.
+	 * @param line the line, without the line terminator
+	 */
+	void handleLine(String line);
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.util.exec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link ExecuteStreamHandler} that copies the output and error streams of the subprocess through a
+ * {@link StreamMultiplexer}, so that any number of processes share one pumping thread. Optionally every line of
+ * output (from either stream) is passed to a {@link LineHandler}.
+ * 
+ * @author agent
+ */
+public class MultiplexingStreamHandler implements ExecuteStreamHandler {
+
+	private final OutputStream out;
+
+	private final OutputStream err;
+
+	private final LineHandler lineHandler;
+
+	private StreamMultiplexer multiplexer = StreamMultiplexer.getSharedInstance();
+
+	private InputStream processOutputStream;
+
+	private InputStream processErrorStream;
+
+	private StreamMultiplexer.Pump outputPump;
+
+	private StreamMultiplexer.Pump errorPump;
+
+
+	/**
+	 * @param out the stream to copy the output of the process to (may be null)
+	 * @param err the stream to copy the error output of the process to (may be null)
+	 * @param lineHandler the handler for each line of output (may be null)
+	 */
+	public MultiplexingStreamHandler(OutputStream out, OutputStream err, LineHandler lineHandler) {
+		this.out = out;
+		this.err = err;
+		this.lineHandler = lineHandler;
+	}
+
+	public MultiplexingStreamHandler(OutputStream out, OutputStream err) {
+		this(out, err, null);
+	}
+
+	public MultiplexingStreamHandler(LineHandler lineHandler) {
+		this(System.out, System.err, lineHandler);
+	}
+
+	public MultiplexingStreamHandler() {
+		this(System.out, System.err, null);
+	}
+
+
+	/**
+	 * The multiplexer to pump the streams with. Defaults to the {@link StreamMultiplexer#getSharedInstance() shared
+	 * instance}.
+	 */
+	public void setMultiplexer(StreamMultiplexer multiplexer) {
+		this.multiplexer = multiplexer;
+	}
+
+	public void setProcessInputStream(OutputStream os) {
+	}
+
+	public void setProcessOutputStream(InputStream is) {
+		this.processOutputStream = is;
+	}
+
+	public void setProcessErrorStream(InputStream is) {
+		this.processErrorStream = is;
+	}
+
+	public void start() throws IOException {
+		this.outputPump = this.multiplexer.add(this.processOutputStream, this.out, this.lineHandler);
+		this.errorPump = this.multiplexer.add(this.processErrorStream, this.err, this.lineHandler);
+	}
+
+	/**
+	 * Copy the remaining output of the (finished) process and stop pumping its streams.
+	 */
+	public void stop() {
+		if (this.outputPump != null) {
+			this.outputPump.close();
+			this.outputPump = null;
+		}
+		if (this.errorPump != null) {
+			this.errorPump.close();
+			this.errorPump = null;
+		}
+	}
+
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.util.exec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Copies the output streams of any number of subprocesses on a single thread, instead of one thread per stream as
+ * with {@link StreamPumper}. Process streams are not selectable, so the thread reads only what each stream reports
+ * as {@link InputStream#available() available} and never blocks on a read; when none of the streams has data it
+ * sleeps for a poll interval that starts at {@link #setMinPollInterval(long) the minimum} and doubles up to
+ * {@link #setMaxPollInterval(long) the maximum} while the streams stay idle. The thread is started when the first
+ * stream is added and ends when the last one is removed.
+ * <p>
+ * Besides being copied to an output stream, the output can be passed to a {@link LineHandler} line by line, e.g. to
+ * detect that a server process has started. A stream is read until it is {@link Pump#close() closed}, which
+ * should be done once the process has ended: closing drains whatever output is still available.
+ * 
+ * @author agent
+ * @see MultiplexingStreamHandler
+ */
+public class StreamMultiplexer {
+
+	private static final int DEFAULT_BUFFER_SIZE = 4096;
+
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private static final Log logger = LogFactory.getLog(StreamMultiplexer.class);
+
+	private static final StreamMultiplexer sharedInstance = new StreamMultiplexer();
+
+	private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	private volatile long minPollInterval = 1;
+
+	private volatile long maxPollInterval = 100;
+
+	private final List<Pump> pumps = new CopyOnWriteArrayList<Pump>();
+
+	private final Object monitor = new Object();
+
+	private Thread thread;
+
+
+	/**
+	 * @return a multiplexer shared by all users in the class loader, e.g. by default by
+	 * {@link MultiplexingStreamHandler}s
+	 */
+	public static StreamMultiplexer getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * The size of the buffer used to read each stream. Applies to streams added afterwards. Default 4096.
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be positive");
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * The time in milliseconds to wait after a pass over the streams that found no data. Default 1.
+	 */
+	public void setMinPollInterval(long minPollInterval) {
+		if (minPollInterval <= 0) {
+			throw new IllegalArgumentException("minPollInterval must be positive");
+		}
+		this.minPollInterval = minPollInterval;
+	}
+
+	/**
+	 * The longest time in milliseconds to wait between passes over idle streams. Default 100.
+	 */
+	public void setMaxPollInterval(long maxPollInterval) {
+		if (maxPollInterval <= 0) {
+			throw new IllegalArgumentException("maxPollInterval must be positive");
+		}
+		this.maxPollInterval = maxPollInterval;
+	}
+
+	/**
+	 * Start copying a stream.
+	 * @param in the stream to read, typically the output or error stream of a subprocess
+	 * @param out the stream to copy to (may be null)
+	 * @param lineHandler the handler for each line read (may be null)
+	 * @return the pump, to be closed when the process has ended
+	 */
+	public Pump add(InputStream in, OutputStream out, LineHandler lineHandler) {
+		Pump pump = new Pump(in, out, lineHandler, this.bufferSize);
+		this.pumps.add(pump);
+		synchronized (this.monitor) {
+			if (this.thread == null) {
+				this.thread = new Thread(new Runnable() {
+					public void run() {
+						pumpAll();
+					}
+				}, "StreamMultiplexer");
+				this.thread.setDaemon(true);
+				this.thread.start();
+			}
+		}
+		return pump;
+	}
+
+	/**
+	 * @return the number of streams being copied
+	 */
+	public int size() {
+		return this.pumps.size();
+	}
+
+	private void pumpAll() {
+		long interval = this.minPollInterval;
+		while (true) {
+			synchronized (this.monitor) {
+				if (this.pumps.isEmpty()) {
+					this.thread = null;
+					return;
+				}
+			}
+			boolean transferred = false;
+			for (Pump pump : this.pumps) {
+				transferred |= pump.pump();
+			}
+			if (transferred) {
+				interval = this.minPollInterval;
+			}
+			else {
+				try {
+					Thread.sleep(interval);
+				} catch (InterruptedException e) {
+					// keep pumping until the streams are closed
+				}
+				interval = Math.min(interval * 2, this.maxPollInterval);
+			}
+		}
+	}
+
+
+	/**
+	 * One stream being copied by a {@link StreamMultiplexer}.
+	 */
+	public class Pump {
+
+		private final InputStream in;
+
+		private final OutputStream out;
+
+		private final LineHandler lineHandler;
+
+		private final byte[] buffer;
+
+		private byte[] line;
+
+		private int lineLength;
+
+		private boolean closed;
+
+
+		Pump(InputStream in, OutputStream out, LineHandler lineHandler, int bufferSize) {
+			this.in = in;
+			this.out = out;
+			this.lineHandler = lineHandler;
+			this.buffer = new byte[bufferSize];
+			this.line = (lineHandler != null) ? new byte[Math.min(bufferSize, 256)] : null;
+		}
+
+
+		/**
+		 * Copy whatever is available without blocking.
+		 * @return true if anything was copied
+		 */
+		synchronized boolean pump() {
+			if (this.closed) {
+				return false;
+			}
+			try {
+				int available = this.in.available();
+				if (available <= 0) {
+					return false;
+				}
+				int count = this.in.read(this.buffer, 0, Math.min(available, this.buffer.length));
+				if (count < 0) {
+					close();
+					return false;
+				}
+				if (this.out != null) {
+					this.out.write(this.buffer, 0, count);
+				}
+				if (this.lineHandler != null) {
+					handleLines(count);
+				}
+				return true;
+			} catch (IOException e) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Stopped copying process stream", e);
+				}
+				close();
+				return false;
+			}
+		}
+
+		/**
+		 * Copy the output that is still available and stop copying the stream. The stream itself is not closed.
+		 */
+		public synchronized void close() {
+			if (this.closed) {
+				return;
+			}
+			try {
+				int available;
+				while ((available = this.in.available()) > 0) {
+					int count = this.in.read(this.buffer, 0, Math.min(available, this.buffer.length));
+					if (count < 0) {
+						break;
+					}
+					if (this.out != null) {
+						this.out.write(this.buffer, 0, count);
+					}
+					if (this.lineHandler != null) {
+						handleLines(count);
+					}
+				}
+			} catch (IOException e) {
+				// the process has gone, nothing more to read
+			}
+			if (this.lineLength > 0) {
+				emitLine();
+			}
+			if (this.out != null) {
+				try {
+					this.out.flush();
+				} catch (IOException e) {
+				}
+			}
+			this.closed = true;
+			pumps.remove(this);
+		}
+
+		private void handleLines(int count) {
+			for (int i = 0; i < count; i++) {
+				byte b = this.buffer[i];
+				if (b == '\n') {
+					emitLine();
+				}
+				else {
+					if (this.lineLength == this.line.length) {
+						if (this.lineLength >= MAX_LINE_LENGTH) {
+							emitLine();
+						}
+						else {
+							byte[] line = new byte[this.line.length * 2];
+							System.arraycopy(this.line, 0, line, 0, this.lineLength);
+							this.line = line;
+						}
+					}
+					this.line[this.lineLength++] = b;
+				}
+			}
+		}
+
+		private void emitLine() {
+			int length = this.lineLength;
+			if (length > 0 && this.line[length - 1] == '\r') {
+				length--;
+			}
+			this.lineLength = 0;
+			try {
+				this.lineHandler.handleLine(new String(this.line, 0, length));
+			} catch (RuntimeException e) {
+				logger.error("LineHandler threw exception", e);
+			}
+		}
+
+	}
+
+}
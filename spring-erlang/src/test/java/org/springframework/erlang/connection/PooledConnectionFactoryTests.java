@@ -0,0 +1,150 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.erlang.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.erlang.OtpIOException;
+
+import com.ericsson.otp.erlang.OtpAuthException;
+import com.ericsson.otp.erlang.OtpConnection;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpSelf;
+
+/**
+ * @author agent
+ */
+public class PooledConnectionFactoryTests {
+
+	private final List<OtpConnection> targets = new ArrayList<OtpConnection>();
+
+	private final List<OtpSelf> selves = new ArrayList<OtpSelf>();
+
+	private PooledConnectionFactory connectionFactory;
+
+
+	@Before
+	public void init() {
+		this.connectionFactory = new PooledConnectionFactory("test", "cookie", "peer@localhost") {
+			@Override
+			protected OtpConnection doCreateConnection(OtpSelf self) throws IOException, OtpAuthException {
+				OtpConnection target = mock(OtpConnection.class);
+				when(target.isConnected()).thenReturn(true);
+				targets.add(target);
+				selves.add(self);
+				return target;
+			}
+		};
+		this.connectionFactory.setPoolSize(1);
+		this.connectionFactory.afterPropertiesSet();
+	}
+
+	@After
+	public void close() {
+		this.connectionFactory.destroy();
+	}
+
+	@Test
+	public void connectionReused() throws Exception {
+		Connection connection = this.connectionFactory.createConnection();
+		connection.close();
+		assertSame(connection, this.connectionFactory.createConnection());
+		assertEquals(1, this.targets.size());
+	}
+
+	@Test
+	public void checkoutTimeout() throws Exception {
+		this.connectionFactory.setCheckoutTimeout(50);
+		Connection connection = this.connectionFactory.createConnection();
+		long start = System.currentTimeMillis();
+		try {
+			this.connectionFactory.createConnection();
+			fail("Expected OtpIOException");
+		}
+		catch (OtpIOException e) {
+			assertTrue(e.getMessage().contains("timed out"));
+		}
+		assertTrue(System.currentTimeMillis() - start >= 50);
+		connection.close();
+		assertSame(connection, this.connectionFactory.createConnection());
+	}
+
+	@Test
+	public void disconnectedConnectionEvicted() throws Exception {
+		Connection connection = this.connectionFactory.createConnection();
+		connection.close();
+		when(this.targets.get(0).isConnected()).thenReturn(false);
+		Connection newConnection = this.connectionFactory.createConnection();
+		assertNotSame(connection, newConnection);
+		verify(this.targets.get(0)).close();
+		assertEquals(2, this.targets.size());
+		// the pool slot reconnects from the same local node
+		assertSame(this.selves.get(0), this.selves.get(1));
+	}
+
+	@Test
+	public void pendingReplyNotReusable() throws Exception {
+		Connection connection = this.connectionFactory.createConnection();
+		connection.sendRPC("mod", "fun", new OtpErlangList());
+		connection.close();
+		verify(this.targets.get(0)).close();
+		Connection newConnection = this.connectionFactory.createConnection();
+		assertNotSame(connection, newConnection);
+		assertSame(this.selves.get(0), this.selves.get(1));
+	}
+
+	@Test
+	public void receivedReplyReusable() throws Exception {
+		Connection connection = this.connectionFactory.createConnection();
+		connection.sendRPC("mod", "fun", new OtpErlangList());
+		connection.receiveRPC();
+		connection.close();
+		verify(this.targets.get(0), never()).close();
+		assertSame(connection, this.connectionFactory.createConnection());
+	}
+
+	@Test
+	public void failedRpcNotReusable() throws Exception {
+		Connection connection = this.connectionFactory.createConnection();
+		when(this.targets.get(0).receiveRPC()).thenThrow(new IOException("broken"));
+		connection.sendRPC("mod", "fun", new OtpErlangList());
+		try {
+			connection.receiveRPC();
+			fail("Expected IOException");
+		}
+		catch (IOException e) {
+		}
+		connection.close();
+		verify(this.targets.get(0)).close();
+	}
+
+}
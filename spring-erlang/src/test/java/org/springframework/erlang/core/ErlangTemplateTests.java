@@ -0,0 +1,131 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.erlang.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.erlang.ErlangBadRpcException;
+import org.springframework.erlang.connection.Connection;
+import org.springframework.erlang.connection.ConnectionFactory;
+import org.springframework.erlang.connection.PooledConnectionFactory;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * @author agent
+ */
+public class ErlangTemplateTests {
+
+	@Test
+	public void asyncRpc() throws Exception {
+		ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		when(connection.receiveRPC()).thenReturn(new OtpErlangAtom("ok"));
+		ErlangTemplate template = new ErlangTemplate(connectionFactory);
+		Future<OtpErlangObject> result = template.executeErlangRpcAsync("mod", "fun", new OtpErlangList());
+		assertEquals(new OtpErlangAtom("ok"), result.get(10, TimeUnit.SECONDS));
+		Future<Object> converted = template.executeAndConvertRpcAsync("mod", "fun");
+		assertEquals("ok", converted.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void asyncRpcFailure() throws Exception {
+		ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		when(connection.receiveRPC()).thenReturn(
+				new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("badrpc"), new OtpErlangAtom("nodedown") }));
+		ErlangTemplate template = new ErlangTemplate(connectionFactory);
+		try {
+			template.executeErlangRpcAsync("mod", "fun", new OtpErlangList()).get(10, TimeUnit.SECONDS);
+			fail("Expected ExecutionException");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ErlangBadRpcException);
+		}
+	}
+
+	@Test
+	public void asyncRpcsBoundedByPoolSize() throws Exception {
+		PooledConnectionFactory connectionFactory = mock(PooledConnectionFactory.class);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch latch = new CountDownLatch(1);
+		// not a mock, which would handle one invocation at a time
+		Connection connection = new Connection() {
+			public void sendRPC(String mod, String fun, OtpErlangList args) {
+			}
+
+			public OtpErlangObject receiveRPC() {
+				int current = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(maxRunning.get(), current));
+				}
+				started.countDown();
+				try {
+					latch.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				return new OtpErlangAtom("ok");
+			}
+
+			public void close() {
+			}
+		};
+		when(connectionFactory.getPoolSize()).thenReturn(2);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		ErlangTemplate template = new ErlangTemplate(connectionFactory);
+		List<Future<OtpErlangObject>> results = new ArrayList<Future<OtpErlangObject>>();
+		for (int i = 0; i < 5; i++) {
+			results.add(template.executeErlangRpcAsync("mod", "fun", new OtpErlangList()));
+		}
+		assertTrue("RPCs not started", started.await(10, TimeUnit.SECONDS));
+		// the other RPCs wait for a free connection
+		assertEquals(2, running.get());
+		for (int i = 2; i < 5; i++) {
+			assertFalse(results.get(i).isDone());
+		}
+		latch.countDown();
+		for (Future<OtpErlangObject> result : results) {
+			assertEquals(new OtpErlangAtom("ok"), result.get(10, TimeUnit.SECONDS));
+		}
+		assertEquals(2, maxRunning.get());
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.erlang.support.converter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangBoolean;
+import com.ericsson.otp.erlang.OtpErlangByte;
+import com.ericsson.otp.erlang.OtpErlangChar;
+import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangFloat;
+import com.ericsson.otp.erlang.OtpErlangInt;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangShort;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpErlangUInt;
+import com.ericsson.otp.erlang.OtpErlangUShort;
+
+/**
+ * @author agent
+ */
+public class SimpleErlangConverterTests {
+
+	private final SimpleErlangConverter converter = new SimpleErlangConverter();
+
+	@Test
+	public void toErlang() {
+		assertArrayEquals(new byte[] { 1, 2 }, ((OtpErlangBinary) this.converter.toErlang(new byte[] { 1, 2 }))
+				.binaryValue());
+		assertToErlang(new OtpErlangBoolean(true), Boolean.TRUE);
+		assertToErlang(new OtpErlangByte((byte) 1), (byte) 1);
+		assertToErlang(new OtpErlangChar('a'), 'a');
+		assertToErlang(new OtpErlangDouble(1.5d), 1.5d);
+		assertToErlang(new OtpErlangFloat(1.5f), 1.5f);
+		assertToErlang(new OtpErlangInt(1), 1);
+		assertToErlang(new OtpErlangLong(1L), 1L);
+		assertToErlang(new OtpErlangShort((short) 1), (short) 1);
+		assertToErlang(new OtpErlangString("foo"), "foo");
+	}
+
+	@Test
+	public void toErlangList() {
+		OtpErlangList list = (OtpErlangList) this.converter.toErlang(new Object[] { "foo", 1 });
+		assertEquals(new OtpErlangString("foo"), list.elementAt(0));
+		assertEquals(new OtpErlangInt(1), list.elementAt(1));
+		assertEquals(0, ((OtpErlangList) this.converter.toErlang(new Object[0])).arity());
+		OtpErlangAtom atom = new OtpErlangAtom("foo");
+		assertSame(atom, this.converter.toErlang(atom));
+	}
+
+	@Test(expected = ErlangConversionException.class)
+	public void unsupportedJavaType() {
+		this.converter.toErlang(new Object());
+	}
+
+	@Test
+	public void fromErlang() {
+		assertArrayEquals(new byte[] { 1, 2 }, (byte[]) this.converter.fromErlang(new OtpErlangBinary(new byte[] {
+				1, 2 })));
+		assertFromErlang("foo", new OtpErlangAtom("foo"));
+		assertFromErlang((byte) 1, new OtpErlangByte((byte) 1));
+		assertFromErlang('a', new OtpErlangChar('a'));
+		assertFromErlang(1.5d, new OtpErlangDouble(1.5d));
+		assertFromErlang(1, new OtpErlangInt(1));
+		assertFromErlang(1L, new OtpErlangLong(1L));
+		assertFromErlang("foo", new OtpErlangString("foo"));
+		OtpErlangPid pid = new OtpErlangPid("node@host", 1, 2, 3);
+		assertFromErlang(pid.toString(), pid);
+	}
+
+	@Test
+	public void fromErlangSubtypes() throws Exception {
+		// these have always been converted as their jinterface supertypes
+		assertFromErlang("true", new OtpErlangBoolean(true));
+		assertFromErlang(1.5d, new OtpErlangFloat(1.5f));
+		assertFromErlang(1L, new OtpErlangShort((short) 1));
+		assertFromErlang(1L, new OtpErlangUInt(1));
+		assertFromErlang(1L, new OtpErlangUShort((short) 1));
+	}
+
+	@Test(expected = ErlangConversionException.class)
+	public void unsupportedErlangType() {
+		this.converter.fromErlang(new OtpErlangTuple(new OtpErlangObject[0]));
+	}
+
+	@Test
+	public void registeredConverters() {
+		this.converter.registerToErlangConverter(StringBuilder.class, new ToErlangConverter() {
+			public OtpErlangObject toErlang(Object object) {
+				return new OtpErlangAtom(object.toString());
+			}
+		});
+		this.converter.registerFromErlangConverter(OtpErlangTuple.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) {
+				return ((OtpErlangTuple) erlangObject).arity();
+			}
+		});
+		// replaces the default converter for a subtype only
+		this.converter.registerFromErlangConverter(OtpErlangBoolean.class, new FromErlangConverter() {
+			public Object fromErlang(OtpErlangObject erlangObject) {
+				return ((OtpErlangBoolean) erlangObject).booleanValue();
+			}
+		});
+		assertToErlang(new OtpErlangAtom("foo"), new StringBuilder("foo"));
+		assertFromErlang(2, new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("a"),
+				new OtpErlangAtom("b") }));
+		assertFromErlang(Boolean.TRUE, new OtpErlangBoolean(true));
+		assertFromErlang("foo", new OtpErlangAtom("foo"));
+		try {
+			new SimpleErlangConverter().fromErlang(new OtpErlangTuple(new OtpErlangObject[0]));
+			fail("Expected ErlangConversionException");
+		}
+		catch (ErlangConversionException e) {
+			// registrations are per converter instance
+		}
+	}
+
+	private void assertToErlang(OtpErlangObject expected, Object object) {
+		OtpErlangObject result = this.converter.toErlang(object);
+		assertEquals(expected.getClass(), result.getClass());
+		assertEquals(expected, result);
+	}
+
+	private void assertFromErlang(Object expected, OtpErlangObject erlangObject) {
+		Object result = this.converter.fromErlang(erlangObject);
+		assertEquals(expected.getClass(), result.getClass());
+		assertEquals(expected, result);
+	}
+
+}
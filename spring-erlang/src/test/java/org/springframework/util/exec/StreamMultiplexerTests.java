@@ -0,0 +1,151 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.util.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class StreamMultiplexerTests {
+
+	private final StreamMultiplexer multiplexer = new StreamMultiplexer();
+
+	private final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+
+	private final LineHandler lineHandler = new LineHandler() {
+		public void handleLine(String line) {
+			lines.add(line);
+		}
+	};
+
+
+	@Test
+	public void pumpStreams() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		StreamMultiplexer.Pump outPump = this.multiplexer.add(stream("foo\nbar\n"), out, this.lineHandler);
+		StreamMultiplexer.Pump errPump = this.multiplexer.add(stream("baz\n"), err, null);
+		assertEquals(2, this.multiplexer.size());
+		waitForLines(2);
+		assertEquals(Arrays.asList("foo", "bar"), this.lines);
+		waitFor(err, 4);
+		assertEquals("foo\nbar\n", out.toString());
+		assertEquals("baz\n", err.toString());
+		outPump.close();
+		errPump.close();
+		assertEquals(0, this.multiplexer.size());
+	}
+
+	@Test
+	public void lineHandlerExceptionDoesNotStopPumping() throws Exception {
+		LineHandler failing = new LineHandler() {
+			public void handleLine(String line) {
+				lines.add(line);
+				throw new IllegalStateException("planned");
+			}
+		};
+		StreamMultiplexer.Pump pump = this.multiplexer.add(stream("foo\nbar\n"), null, failing);
+		waitForLines(2);
+		pump.close();
+		assertEquals(Arrays.asList("foo", "bar"), this.lines);
+	}
+
+	@Test
+	public void crLfLineSplitting() throws Exception {
+		StreamMultiplexer.Pump pump = this.multiplexer.add(stream("foo\r\nbar\n\r\nba\rz\r\n"), null, this.lineHandler);
+		waitForLines(4);
+		pump.close();
+		assertEquals(Arrays.asList("foo", "bar", "", "ba\rz"), this.lines);
+	}
+
+	@Test
+	public void longLinesAreCapped() throws Exception {
+		int max = 64 * 1024;
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < max + 10; i++) {
+			builder.append((char) ('a' + i % 26));
+		}
+		String line = builder.toString();
+		StreamMultiplexer.Pump pump = this.multiplexer.add(stream(line + "\nfoo\n"), null, this.lineHandler);
+		waitForLines(3);
+		pump.close();
+		assertEquals(line.substring(0, max), this.lines.get(0));
+		assertEquals(line.substring(max), this.lines.get(1));
+		assertEquals("foo", this.lines.get(2));
+	}
+
+	@Test
+	public void closeDrainsRemainingOutput() throws Exception {
+		// after one idle pass over the stream the pump thread sleeps for longer than the test runs
+		this.multiplexer.setMinPollInterval(60000);
+		final AtomicBoolean ready = new AtomicBoolean();
+		final AtomicInteger polls = new AtomicInteger();
+		InputStream in = new ByteArrayInputStream("foo\nbar".getBytes()) {
+			@Override
+			public synchronized int available() {
+				polls.incrementAndGet();
+				return ready.get() ? super.available() : 0;
+			}
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamMultiplexer.Pump pump = this.multiplexer.add(in, out, this.lineHandler);
+		long timeout = System.currentTimeMillis() + 10000;
+		while (polls.get() == 0 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertTrue("Stream was not polled", polls.get() > 0);
+		assertEquals(0, out.size());
+		ready.set(true);
+		pump.close();
+		assertEquals("foo\nbar", out.toString());
+		// an unterminated last line is passed on as well
+		assertEquals(Arrays.asList("foo", "bar"), this.lines);
+		assertEquals(0, this.multiplexer.size());
+	}
+
+	private InputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes());
+	}
+
+	private void waitForLines(int count) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 10000;
+		while (this.lines.size() < count && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, this.lines.size());
+	}
+
+	private void waitFor(ByteArrayOutputStream out, int size) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 10000;
+		while (out.size() < size && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(size, out.size());
+	}
+
+}
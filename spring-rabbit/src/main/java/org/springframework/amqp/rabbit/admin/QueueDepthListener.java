@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.admin;
+
+/**
+ * Listener notified by a {@link QueueStatisticsPoller} when the depth of a queue crosses one of the configured
+ * thresholds between two polls.
+ * 
+ * @author agent
+ * @see QueueStatisticsPoller#setDepthThresholds(long[])
+ */
+public interface QueueDepthListener {
+
+	/**
+	 * @param queue the statistics of the queue at the latest poll
+	 * @param threshold the threshold that was crossed
+	 * @param rising true if the queue has grown to the threshold or beyond, false if it has dropped below it
+	 */
+	void onDepthThresholdCrossed(QueueStatistics queue, long threshold, boolean rising);
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.admin;
+
+/**
+ * Callback for processing the queues of a broker one at a time, as they are decoded, instead of collecting
+ * them into a list first.
+ * 
+ * @author agent
+ * @see RabbitBrokerAdmin#doWithQueues(String, java.util.Set, QueueInfoCallback)
+ */
+public interface QueueInfoCallback {
+
+	/**
+	 * Process one queue. An exception thrown here stops the walk and is propagated to the caller.
+	 * @param queueInfo the queue, with only the requested fields populated
+	 */
+	void doWithQueueInfo(QueueInfo queueInfo);
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.admin;
+
+/**
+ * Immutable statistics of one queue, as seen by a {@link QueueStatisticsPoller} at one poll, together with the
+ * change since the previous poll.
+ * 
+ * @author agent
+ */
+public class QueueStatistics {
+
+	private final String name;
+
+	private final long messages;
+
+	private final long messagesReady;
+
+	private final long messagesUnacknowledged;
+
+	private final long consumers;
+
+	private final long depthChange;
+
+	private final double depthRate;
+
+
+	QueueStatistics(QueueInfo queueInfo, long depthChange, double depthRate) {
+		this.name = queueInfo.getName();
+		this.messages = queueInfo.getMessages();
+		this.messagesReady = queueInfo.getMessagesReady();
+		this.messagesUnacknowledged = queueInfo.getMessagesUnacknowledged();
+		this.consumers = queueInfo.getConsumers();
+		this.depthChange = depthChange;
+		this.depthRate = depthRate;
+	}
+
+
+	public String getName() {
+		return this.name;
+	}
+
+	public long getMessages() {
+		return this.messages;
+	}
+
+	public long getMessagesReady() {
+		return this.messagesReady;
+	}
+
+	public long getMessagesUnacknowledged() {
+		return this.messagesUnacknowledged;
+	}
+
+	public long getConsumers() {
+		return this.consumers;
+	}
+
+	/**
+	 * @return the change in the number of messages since the previous poll (0 for a queue seen for the first time)
+	 */
+	public long getDepthChange() {
+		return this.depthChange;
+	}
+
+	/**
+	 * @return the change in the number of messages per second since the previous poll; positive when the queue is
+	 * growing, i.e. messages are published faster than they are consumed
+	 */
+	public double getDepthRate() {
+		return this.depthRate;
+	}
+
+	@Override
+	public String toString() {
+		return "QueueStatistics [name=" + name + ", messages=" + messages + ", messagesReady=" + messagesReady
+				+ ", messagesUnacknowledged=" + messagesUnacknowledged + ", consumers=" + consumers
+				+ ", depthChange=" + depthChange + ", depthRate=" + depthRate + "]";
+	}
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.admin;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.rabbit.admin.RabbitControlErlangConverter.QueueInfoField;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.util.Assert;
+
+/**
+ * Polls the queue statistics of a virtual host on a fixed interval in the background, so that frequent readers
+ * (e.g. dashboards) do not each cause a <code>rabbit_amqqueue:info_all</code> RPC on the broker. Every poll
+ * produces an immutable {@link QueueStatisticsSnapshot}; {@link #getSnapshot()} is a volatile read of the latest
+ * one and never blocks or touches the broker.
+ * <p>
+ * Each queue carries the change in depth since the previous poll. {@link QueueDepthListener}s are notified, on the
+ * polling thread, of queues whose depth crossed one of the {@link #setDepthThresholds(long[]) depth thresholds}
+ * between two polls. A failed poll is logged and leaves the previous snapshot in place.
+ * 
+ * @author agent
+ */
+public class QueueStatisticsPoller implements SmartLifecycle, DisposableBean {
+
+	private static final long DEFAULT_POLL_INTERVAL = 10000;
+
+	private static final Set<QueueInfoField> FIELDS = EnumSet.of(QueueInfoField.name, QueueInfoField.messages,
+			QueueInfoField.messages_ready, QueueInfoField.messages_unacknowledged, QueueInfoField.consumers);
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final RabbitBrokerOperations brokerOperations;
+
+	private volatile String virtualHost = "/";
+
+	private volatile long pollInterval = DEFAULT_POLL_INTERVAL;
+
+	private volatile long[] depthThresholds = new long[0];
+
+	private final List<QueueDepthListener> listeners = new CopyOnWriteArrayList<QueueDepthListener>();
+
+	private volatile QueueStatisticsSnapshot snapshot = new QueueStatisticsSnapshot(0,
+			new HashMap<String, QueueStatistics>());
+
+	private volatile boolean autoStartup = true;
+
+	private volatile int phase = 0;
+
+	private final Object lifecycleMonitor = new Object();
+
+	private final Object pollMonitor = new Object();
+
+	private ScheduledExecutorService scheduler;
+
+
+	public QueueStatisticsPoller(RabbitBrokerOperations brokerOperations) {
+		Assert.notNull(brokerOperations, "brokerOperations must not be null");
+		this.brokerOperations = brokerOperations;
+	}
+
+
+	/**
+	 * The virtual host whose queues are polled. Default "/".
+	 */
+	public void setVirtualHost(String virtualHost) {
+		Assert.notNull(virtualHost, "virtualHost must not be null");
+		this.virtualHost = virtualHost;
+	}
+
+	/**
+	 * The time in milliseconds between the end of one poll and the start of the next. Takes effect on the next
+	 * {@link #start()}. Default 10000.
+	 */
+	public void setPollInterval(long pollInterval) {
+		Assert.isTrue(pollInterval > 0, "pollInterval must be positive");
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * The queue depths at which {@link QueueDepthListener}s are notified. Default none.
+	 */
+	public void setDepthThresholds(long[] depthThresholds) {
+		Assert.notNull(depthThresholds, "depthThresholds must not be null");
+		long[] thresholds = new long[depthThresholds.length];
+		System.arraycopy(depthThresholds, 0, thresholds, 0, thresholds.length);
+		Arrays.sort(thresholds);
+		this.depthThresholds = thresholds;
+	}
+
+	public void setQueueDepthListeners(List<QueueDepthListener> listeners) {
+		this.listeners.clear();
+		this.listeners.addAll(listeners);
+	}
+
+	public void addQueueDepthListener(QueueDepthListener listener) {
+		Assert.notNull(listener, "listener must not be null");
+		this.listeners.add(listener);
+	}
+
+	public void setAutoStartup(boolean autoStartup) {
+		this.autoStartup = autoStartup;
+	}
+
+	public void setPhase(int phase) {
+		this.phase = phase;
+	}
+
+	/**
+	 * @return the result of the latest successful poll (empty, with a timestamp of 0, before the first one)
+	 */
+	public QueueStatisticsSnapshot getSnapshot() {
+		return this.snapshot;
+	}
+
+	/**
+	 * Poll the broker now, independently of the schedule, and notify the listeners of any thresholds crossed.
+	 * @return the new snapshot
+	 */
+	public QueueStatisticsSnapshot refresh() {
+		synchronized (this.pollMonitor) {
+			final Map<String, QueueInfo> queueInfos = new HashMap<String, QueueInfo>();
+			this.brokerOperations.doWithQueues(this.virtualHost, FIELDS, new QueueInfoCallback() {
+				public void doWithQueueInfo(QueueInfo queueInfo) {
+					queueInfos.put(queueInfo.getName(), queueInfo);
+				}
+			});
+			long timestamp = System.currentTimeMillis();
+			QueueStatisticsSnapshot previous = this.snapshot;
+			double seconds = (previous.getTimestamp() > 0) ? (timestamp - previous.getTimestamp()) / 1000.0 : 0;
+			Map<String, QueueStatistics> queues = new HashMap<String, QueueStatistics>(queueInfos.size() * 4 / 3 + 1);
+			for (QueueInfo queueInfo : queueInfos.values()) {
+				QueueStatistics last = previous.getQueue(queueInfo.getName());
+				long depthChange = (last != null) ? queueInfo.getMessages() - last.getMessages() : 0;
+				double depthRate = (seconds > 0) ? depthChange / seconds : 0;
+				queues.put(queueInfo.getName(), new QueueStatistics(queueInfo, depthChange, depthRate));
+			}
+			QueueStatisticsSnapshot current = new QueueStatisticsSnapshot(timestamp, queues);
+			this.snapshot = current;
+			notifyListeners(previous, current);
+			return current;
+		}
+	}
+
+	private void notifyListeners(QueueStatisticsSnapshot previous, QueueStatisticsSnapshot current) {
+		long[] thresholds = this.depthThresholds;
+		if (thresholds.length == 0 || this.listeners.isEmpty()) {
+			return;
+		}
+		for (QueueStatistics queue : current.getQueues()) {
+			QueueStatistics last = previous.getQueue(queue.getName());
+			long before = (last != null) ? last.getMessages() : 0;
+			long after = queue.getMessages();
+			for (long threshold : thresholds) {
+				if (before < threshold && after >= threshold) {
+					notifyListeners(queue, threshold, true);
+				}
+				else if (before >= threshold && after < threshold) {
+					notifyListeners(queue, threshold, false);
+				}
+			}
+		}
+	}
+
+	private void notifyListeners(QueueStatistics queue, long threshold, boolean rising) {
+		for (QueueDepthListener listener : this.listeners) {
+			try {
+				listener.onDepthThresholdCrossed(queue, threshold, rising);
+			}
+			catch (RuntimeException e) {
+				logger.error("QueueDepthListener threw exception for queue [" + queue.getName() + "]", e);
+			}
+		}
+	}
+
+	// SmartLifecycle implementation
+
+	public boolean isAutoStartup() {
+		return this.autoStartup;
+	}
+
+	public int getPhase() {
+		return this.phase;
+	}
+
+	public boolean isRunning() {
+		synchronized (this.lifecycleMonitor) {
+			return this.scheduler != null;
+		}
+	}
+
+	public void start() {
+		synchronized (this.lifecycleMonitor) {
+			if (this.scheduler != null) {
+				return;
+			}
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "QueueStatisticsPoller");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.scheduler.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						refresh();
+					}
+					catch (RuntimeException e) {
+						logger.warn("Failed to poll queue statistics of virtual host [" + virtualHost + "]", e);
+					}
+				}
+			}, 0, this.pollInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void stop() {
+		synchronized (this.lifecycleMonitor) {
+			if (this.scheduler != null) {
+				this.scheduler.shutdownNow();
+				this.scheduler = null;
+			}
+		}
+	}
+
+	public void stop(Runnable callback) {
+		this.stop();
+		callback.run();
+	}
+
+	public void destroy() {
+		this.stop();
+	}
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.admin;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable result of one poll of a {@link QueueStatisticsPoller}.
+ * 
+ * @author agent
+ */
+public class QueueStatisticsSnapshot {
+
+	private final long timestamp;
+
+	private final Map<String, QueueStatistics> queues;
+
+
+	QueueStatisticsSnapshot(long timestamp, Map<String, QueueStatistics> queues) {
+		this.timestamp = timestamp;
+		this.queues = Collections.unmodifiableMap(queues);
+	}
+
+
+	/**
+	 * @return the time of the poll in milliseconds since the epoch, or 0 if the broker has not been polled yet
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	/**
+	 * @param name the queue name
+	 * @return the statistics of the queue, or null if it did not exist at the time of the poll
+	 */
+	public QueueStatistics getQueue(String name) {
+		return this.queues.get(name);
+	}
+
+	public Collection<QueueStatistics> getQueues() {
+		return this.queues.values();
+	}
+
+}
@@ -15,13 +15,20 @@ package org.springframework.amqp.rabbit.admin;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -33,26 +40,36 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.rabbit.admin.RabbitControlErlangConverter.QueueInfoField;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.erlang.OtpAuthException;
 import org.springframework.erlang.OtpException;
+import org.springframework.erlang.UncategorizedOtpException;
 import org.springframework.erlang.connection.ConnectionFactory;
-import org.springframework.erlang.connection.SimpleConnectionFactory;
+import org.springframework.erlang.connection.PooledConnectionFactory;
 import org.springframework.erlang.core.Application;
 import org.springframework.erlang.core.ErlangTemplate;
 import org.springframework.erlang.core.Node;
+import org.springframework.erlang.support.converter.ErlangConverter;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.util.exec.Execute;
+import org.springframework.util.exec.LineHandler;
+import org.springframework.util.exec.MultiplexingStreamHandler;
 import org.springframework.util.exec.Os;
 
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+
 /**
  * Rabbit broker administration implementation exposed via JMX annotations.
  * 
  * @author Mark Pollack
  */
-public class RabbitBrokerAdmin implements RabbitBrokerOperations {
+public class RabbitBrokerAdmin implements RabbitBrokerOperations, DisposableBean {
 
 	private static final String DEFAULT_VHOST = "/";
 
@@ -60,11 +77,26 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 
 	private static final String DEFAULT_ENCODING = "UTF-8";
 
+	private static final int DEFAULT_PORT = 5672;
+
+	private static final long INITIAL_STATUS_INTERVAL = 50;
+
+	private static final long MAX_STATUS_INTERVAL = 1000;
+
+	private static final long PORT_PROBE_INTERVAL = 25;
+
+	private static final int PORT_PROBE_TIMEOUT = 100;
+
+	private static final String BROKER_RUNNING_BANNER = "broker running";
+
 	/** Logger available to subclasses */
 	protected final Log logger = LogFactory.getLog(getClass());
 
 	private ErlangTemplate erlangTemplate;
 
+	// created by this admin, so also closed by it
+	private PooledConnectionFactory defaultConnectionFactory;
+
 	private String encoding = DEFAULT_ENCODING;
 
 	private long timeout = 0;
@@ -74,7 +106,9 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 
 	private final String hostName;
 
-	// TODO: RABBITMQ_NODE_PORT=5672
+	private volatile int port = getDefaultPort();
+
+	private volatile CountDownLatch brokerRunningSignal;
 
 	static {
 		try {
@@ -105,6 +139,16 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 		this.encoding = encoding;
 	}
 
+	/**
+	 * The AMQP port of the broker: a node launched by {@link #startNode()} listens on it (it is passed as
+	 * RABBITMQ_NODE_PORT), and it is probed to detect that the broker is ready after a start. Defaults to the
+	 * RABBITMQ_NODE_PORT system property or environment variable if set, otherwise 5672.
+	 * @param port the port
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
 	/**
 	 * Timeout (milliseconds) to wait for the broker to come up. If the provided timeout is greater than zero then we
 	 * wait for that period for the broker to be ready. If it is not ready after that time the process is stopped.
@@ -128,6 +172,42 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 				getBytes(virtualHost));
 	}
 
+	/**
+	 * Get the queues of several virtual hosts. The RPCs for the virtual hosts run in parallel, on separate
+	 * connections to the broker node.
+	 * @return the queues by virtual host, in the order of the given virtual hosts
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, List<QueueInfo>> getQueuesByVirtualHost(Collection<String> virtualHosts) {
+		Map<String, Future<Object>> futures = new LinkedHashMap<String, Future<Object>>();
+		for (String virtualHost : virtualHosts) {
+			futures.put(virtualHost, erlangTemplate.executeAndConvertRpcAsync("rabbit_amqqueue", "info_all",
+					getBytes(virtualHost)));
+		}
+		Map<String, List<QueueInfo>> queues = new LinkedHashMap<String, List<QueueInfo>>();
+		for (Map.Entry<String, Future<Object>> entry : futures.entrySet()) {
+			queues.put(entry.getKey(), (List<QueueInfo>) getResult(entry.getValue()));
+		}
+		return queues;
+	}
+
+	/**
+	 * Process the queues of a virtual host one at a time, without collecting them into a list. On brokers with
+	 * many queues this keeps only the raw RPC result and the queue being processed on the heap.
+	 * @param virtualHost the virtual host
+	 * @param fields the fields to populate, or null for all of them
+	 * @param callback the callback to invoke for each queue
+	 */
+	public void doWithQueues(String virtualHost, Set<QueueInfoField> fields, QueueInfoCallback callback) {
+		OtpErlangObject result = erlangTemplate.executeErlangRpc("rabbit_amqqueue", "info_all",
+				new OtpErlangList(new OtpErlangBinary(getBytes(virtualHost))));
+		ErlangConverter converter = erlangTemplate.getErlangConverter();
+		if (!(converter instanceof RabbitControlErlangConverter)) {
+			converter = new RabbitControlErlangConverter();
+		}
+		((RabbitControlErlangConverter) converter).doWithQueueInfos(result, fields, callback);
+	}
+
 	// User management
 
 	@ManagedOperation()
@@ -259,7 +339,15 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 		}
 
 		logger.info("Starting RabbitMQ node by shelling out command line.");
-		final Execute execute = new Execute();
+		final CountDownLatch brokerRunning = new CountDownLatch(1);
+		this.brokerRunningSignal = brokerRunning;
+		final Execute execute = new Execute(new MultiplexingStreamHandler(new LineHandler() {
+			public void handleLine(String line) {
+				if (line.indexOf(BROKER_RUNNING_BANNER) >= 0) {
+					brokerRunning.countDown();
+				}
+			}
+		}));
 
 		String rabbitStartScript = null;
 		String hint = "";
@@ -290,6 +378,9 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 		addEnvironment(env, "RABBITMQ_MNESIA_BASE");
 		addEnvironment(env, "ERLANG_HOME");
 
+		// Listen on the port that is probed for readiness
+		env.add("RABBITMQ_NODE_PORT=" + port);
+
 		// Make the hostname explicitly the same so the erl process knows who we are
 		env.add("HOSTNAME=" + hostName);
 
@@ -344,7 +435,7 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 			public boolean get(RabbitStatus status) {
 				return status.isReady();
 			}
-		}, "ready");
+		}, "ready", true);
 	}
 
 	private boolean waitForUnreadyState() {
@@ -352,7 +443,7 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 			public boolean get(RabbitStatus status) {
 				return !status.isRunning();
 			}
-		}, "unready");
+		}, "unready", false);
 	}
 
 	private boolean waitForStoppedState() {
@@ -360,10 +451,16 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 			public boolean get(RabbitStatus status) {
 				return !status.isReady() && !status.isRunning();
 			}
-		}, "stopped");
+		}, "stopped", false);
 	}
 
-	private boolean waitForState(final StatusCallback callable, String state) {
+	/**
+	 * Wait for the broker to enter a state, checking its status with an exponentially increasing interval. When
+	 * waiting for the broker to become ready the interval is cut short as soon as the AMQP port accepts connections
+	 * or a launched broker reports that it is running, so that a starting broker is usually detected within
+	 * milliseconds rather than after a fixed polling period.
+	 */
+	private boolean waitForState(final StatusCallback callable, String state, final boolean ready) {
 
 		if (timeout <= 0) {
 			return true;
@@ -375,12 +472,33 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 
 			logger.info("Waiting for broker to enter state: " + state);
 
+			final CountDownLatch brokerRunningSignal = ready ? this.brokerRunningSignal : null;
 			Future<RabbitStatus> started = executor.submit(new Callable<RabbitStatus>() {
 				public RabbitStatus call() throws Exception {
+					CountDownLatch brokerRunning = brokerRunningSignal;
+					boolean probePort = ready;
+					long interval = INITIAL_STATUS_INTERVAL;
 					RabbitStatus status = getStatus();
 					while (!callable.get(status)) {
-						// Any less than 1000L and we tend to clog up the socket?
-						Thread.sleep(500L);
+						long waitUntil = System.currentTimeMillis() + interval;
+						long remaining = interval;
+						while (remaining > 0) {
+							if (probePort && isPortOpen()) {
+								probePort = false;
+								break;
+							}
+							long step = probePort ? Math.min(remaining, PORT_PROBE_INTERVAL) : remaining;
+							if (brokerRunning != null) {
+								if (brokerRunning.await(step, TimeUnit.MILLISECONDS)) {
+									brokerRunning = null;
+									break;
+								}
+							} else {
+								Thread.sleep(step);
+							}
+							remaining = waitUntil - System.currentTimeMillis();
+						}
+						interval = Math.min(interval * 2, MAX_STATUS_INTERVAL);
 						status = getStatus();
 					}
 					return status;
@@ -389,14 +507,17 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 
 			try {
 				status = started.get(timeout, TimeUnit.MILLISECONDS);
-				// This seems to help... really it just means we didn't get the right status data
-				Thread.sleep(500L);
 			} catch (TimeoutException e) {
 				started.cancel(true);
 			} catch (InterruptedException e) {
 				Thread.currentThread().interrupt();
 			} catch (ExecutionException e) {
 				logger.error("Exception checking broker status for " + state, e.getCause());
+			} finally {
+				if (brokerRunningSignal != null && this.brokerRunningSignal == brokerRunningSignal) {
+					// the banner has been printed once and for all, so do not let a later wait wake up on it
+					this.brokerRunningSignal = null;
+				}
 			}
 
 			if (!callable.get(status)) {
@@ -419,6 +540,33 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 
 	}
 
+	private boolean isPortOpen() {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(hostName, port), PORT_PROBE_TIMEOUT);
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static int getDefaultPort() {
+		String port = System.getProperty("RABBITMQ_NODE_PORT", System.getenv("RABBITMQ_NODE_PORT"));
+		if (port != null) {
+			try {
+				return Integer.parseInt(port.trim());
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return DEFAULT_PORT;
+	}
+
 	/**
 	 * Find a directory whose name starts with a substring in a given parent directory. If there is none return null,
 	 * otherwise sort the results and return the best match (an exact match if there is one or the last one in a lexical
@@ -513,18 +661,43 @@ public class RabbitBrokerAdmin implements RabbitBrokerOperations {
 	protected void initializeDefaultErlangTemplate(String host) {
 		String peerNodeName = "rabbit@" + host;
 		logger.debug("Creating jinterface connection with peerNodeName = [" + peerNodeName + "]");
-		SimpleConnectionFactory otpConnectionFactory = new SimpleConnectionFactory("rabbit-spring-monitor",
+		PooledConnectionFactory otpConnectionFactory = new PooledConnectionFactory("rabbit-spring-monitor",
 				peerNodeName);
 		otpConnectionFactory.afterPropertiesSet();
+		this.defaultConnectionFactory = otpConnectionFactory;
 		createErlangTemplate(otpConnectionFactory);
 	}
 
+	/**
+	 * Close the connections to the broker node of the default ConnectionFactory, if this admin created it (one that a
+	 * subclass supplies instead of it is left alone).
+	 */
+	public void destroy() {
+		if (this.defaultConnectionFactory != null) {
+			this.defaultConnectionFactory.destroy();
+		}
+	}
+
 	protected void createErlangTemplate(ConnectionFactory otpConnectionFactory) {
 		erlangTemplate = new ErlangTemplate(otpConnectionFactory);
 		erlangTemplate.setErlangConverter(new RabbitControlErlangConverter());
 		erlangTemplate.afterPropertiesSet();
 	}
 
+	private Object getResult(Future<Object> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncategorizedOtpException("Interrupted while waiting for RPC result", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new UncategorizedOtpException(e.getCause());
+		}
+	}
+
 	/**
 	 * Safely convert a string to its bytes using the encoding provided.
 	 * 
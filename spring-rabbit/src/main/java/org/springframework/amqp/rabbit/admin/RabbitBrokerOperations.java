@@ -13,9 +13,14 @@
 
 package org.springframework.amqp.rabbit.admin;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
+import org.springframework.amqp.rabbit.admin.RabbitControlErlangConverter.QueueInfoField;
+
 /**
  * Performs administration tasks for RabbitMQ broker administration. <p>Goal is to support full CRUD of Exchanges,
  * Queues, Bindings, User, VHosts, etc. <p>Current implementations expose operations with basic type arguments via JMX.
@@ -31,6 +36,10 @@ public interface RabbitBrokerOperations {
 
 	public List<QueueInfo> getQueues(String virtualHost);
 
+	public Map<String, List<QueueInfo>> getQueuesByVirtualHost(Collection<String> virtualHosts);
+
+	public void doWithQueues(String virtualHost, Set<QueueInfoField> fields, QueueInfoCallback callback);
+
 	// Message Delivery
 
 	void recoverAsync(boolean requeue);
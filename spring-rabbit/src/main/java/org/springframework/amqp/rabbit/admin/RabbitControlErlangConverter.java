@@ -20,6 +20,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -47,6 +50,8 @@ public class RabbitControlErlangConverter extends SimpleErlangConverter implemen
 
 	private Map<String, ErlangConverter> converterMap = new HashMap<String, ErlangConverter>();
 
+	private final QueueInfoAllConverter queueInfoAllConverter = new QueueInfoAllConverter();
+
 	public RabbitControlErlangConverter() {
 		initializeConverterMap();
 	}
@@ -65,10 +70,19 @@ public class RabbitControlErlangConverter extends SimpleErlangConverter implemen
 		return converterMap.get(generateKey(module, function));
 	}
 
+	/**
+	 * Walk the result of <code>rabbit_amqqueue:info_all</code> queue by queue.
+	 * @see QueueInfoAllConverter#doWithQueueInfos(OtpErlangObject, Set, QueueInfoCallback)
+	 */
+	public void doWithQueueInfos(OtpErlangObject erlangObject, Set<QueueInfoField> fields,
+			QueueInfoCallback callback) throws ErlangConversionException {
+		this.queueInfoAllConverter.doWithQueueInfos(erlangObject, fields, callback);
+	}
+
 	protected void initializeConverterMap() {
 		registerConverter("rabbit_access_control", "list_users", new ListUsersConverter());
 		registerConverter("rabbit", "status", new StatusConverter());
-		registerConverter("rabbit_amqqueue", "info_all", new QueueInfoAllConverter());
+		registerConverter("rabbit_amqqueue", "info_all", this.queueInfoAllConverter);
 	}
 
 	protected void registerConverter(String module, String function, ErlangConverter listUsersConverter) {
@@ -170,78 +184,126 @@ public class RabbitControlErlangConverter extends SimpleErlangConverter implemen
 		}
 	}
 
+	/**
+	 * Converter for the result of <code>rabbit_amqqueue:info_all</code>. Besides the conversion into a list of
+	 * {@link QueueInfo}s, the result can be {@link #doWithQueueInfos(OtpErlangObject, Set, QueueInfoCallback)
+	 * walked} queue by queue, decoding only the requested fields, so that a large result is not copied into a
+	 * second complete representation on the heap.
+	 */
 	public class QueueInfoAllConverter extends SimpleErlangConverter {
 
+		private static final int MAX_CACHED_FIELDS = 256;
+
+		private final ConcurrentMap<String, QueueInfoField> fields = new ConcurrentHashMap<String, QueueInfoField>();
+
 		@Override
 		public Object fromErlang(OtpErlangObject erlangObject) throws ErlangConversionException {
-			List<QueueInfo> queueInfoList = new ArrayList<QueueInfo>();
-			if (erlangObject instanceof OtpErlangList) {
-				OtpErlangList erlangList = (OtpErlangList) erlangObject;
-				for (OtpErlangObject element : erlangList.elements()) {
-					QueueInfo queueInfo = new QueueInfo();
-					OtpErlangList itemList = (OtpErlangList) element;
-					for (OtpErlangObject item : itemList.elements()) {
-						OtpErlangTuple tuple = (OtpErlangTuple) item;
-						if (tuple.arity() == 2) {
-							String key = tuple.elementAt(0).toString();
-							OtpErlangObject value = tuple.elementAt(1);
-							switch (QueueInfoField.toQueueInfoField(key)) {
-							case name:
-								queueInfo.setName(extractNameValueFromTuple((OtpErlangTuple) value));
-								break;
-							case transactions:
-								queueInfo.setTransactions(extractLong(value));
-								break;
-							case acks_uncommitted:
-								queueInfo.setAcksUncommitted(extractLong(value));
-								break;
-							case consumers:
-								queueInfo.setConsumers(extractLong(value));
-								break;
-							case pid:
-								queueInfo.setPid(extractPid(value));
-								break;
-							case durable:
-								queueInfo.setDurable(extractAtomBoolean(value));
-								break;
-							case messages:
-								queueInfo.setMessages(extractLong(value));
-								break;
-							case memory:
-								queueInfo.setMemory(extractLong(value));
-								break;
-							case auto_delete:
-								queueInfo.setAutoDelete(extractAtomBoolean(value));
-								break;
-							case messages_ready:
-								queueInfo.setMessagesReady(extractLong(value));
-								break;
-							case arguments:
-								OtpErlangList list = (OtpErlangList) value;
-								if (list != null) {
-									String[] args = new String[list.arity()];
-									for (int i = 0; i < list.arity(); i++) {
-										OtpErlangObject obj = list.elementAt(i);
-										args[i] = obj.toString();
-									}
-									queueInfo.setArguments(args);
-								}
-								break;
-							case messages_unacknowledged:
-								queueInfo.setMessagesUnacknowledged(extractLong(value));
-								break;
-							case messages_uncommitted:
-								queueInfo.setMessageUncommitted(extractLong(value));
-								break;
-							default:
-								break;
-							}
+			int size = (erlangObject instanceof OtpErlangList) ? ((OtpErlangList) erlangObject).arity() : 0;
+			final List<QueueInfo> queueInfoList = new ArrayList<QueueInfo>(size);
+			doWithQueueInfos(erlangObject, null, new QueueInfoCallback() {
+				public void doWithQueueInfo(QueueInfo queueInfo) {
+					queueInfoList.add(queueInfo);
+				}
+			});
+			return queueInfoList;
+		}
+
+		/**
+		 * Walk an <code>info_all</code> result, passing each queue to the callback as soon as it has been
+		 * decoded. Fields that are not requested are skipped without being decoded and keep their default
+		 * values in the {@link QueueInfo}.
+		 * @param erlangObject the RPC result
+		 * @param fields the fields to decode, or null for all of them
+		 * @param callback the callback to invoke for each queue
+		 */
+		public void doWithQueueInfos(OtpErlangObject erlangObject, Set<QueueInfoField> fields,
+				QueueInfoCallback callback) throws ErlangConversionException {
+			if (!(erlangObject instanceof OtpErlangList)) {
+				return;
+			}
+			OtpErlangList erlangList = (OtpErlangList) erlangObject;
+			// elementAt() rather than elements(), which copies the backing array
+			for (int i = 0; i < erlangList.arity(); i++) {
+				QueueInfo queueInfo = new QueueInfo();
+				OtpErlangList itemList = (OtpErlangList) erlangList.elementAt(i);
+				for (int j = 0; j < itemList.arity(); j++) {
+					OtpErlangTuple tuple = (OtpErlangTuple) itemList.elementAt(j);
+					if (tuple.arity() == 2) {
+						QueueInfoField field = resolveField(tuple.elementAt(0));
+						if (fields == null || fields.contains(field)) {
+							setField(queueInfo, field, tuple.elementAt(1));
 						}
 					}
-					queueInfoList.add(queueInfo);
 				}
+				callback.doWithQueueInfo(queueInfo);
+			}
+		}
+
+		private QueueInfoField resolveField(OtpErlangObject key) {
+			String name = (key instanceof OtpErlangAtom) ? ((OtpErlangAtom) key).atomValue() : key.toString();
+			QueueInfoField field = this.fields.get(name);
+			if (field == null) {
+				field = QueueInfoField.toQueueInfoField(name);
+				if (this.fields.size() >= MAX_CACHED_FIELDS) {
+					this.fields.clear();
+				}
+				this.fields.put(name, field);
+			}
+			return field;
+		}
+
+		private void setField(QueueInfo queueInfo, QueueInfoField field, OtpErlangObject value) {
+			switch (field) {
+			case name:
+				queueInfo.setName(extractNameValueFromTuple((OtpErlangTuple) value));
+				break;
+			case transactions:
+				queueInfo.setTransactions(extractLong(value));
+				break;
+			case acks_uncommitted:
+				queueInfo.setAcksUncommitted(extractLong(value));
+				break;
+			case consumers:
+				queueInfo.setConsumers(extractLong(value));
+				break;
+			case pid:
+				queueInfo.setPid(extractPid(value));
+				break;
+			case durable:
+				queueInfo.setDurable(extractAtomBoolean(value));
+				break;
+			case messages:
+				queueInfo.setMessages(extractLong(value));
+				break;
+			case memory:
+				queueInfo.setMemory(extractLong(value));
+				break;
+			case auto_delete:
+				queueInfo.setAutoDelete(extractAtomBoolean(value));
+				break;
+			case messages_ready:
+				queueInfo.setMessagesReady(extractLong(value));
+				break;
+			case arguments:
+				OtpErlangList list = (OtpErlangList) value;
+				if (list != null) {
+					String[] args = new String[list.arity()];
+					for (int i = 0; i < list.arity(); i++) {
+						OtpErlangObject obj = list.elementAt(i);
+						args[i] = obj.toString();
+					}
+					queueInfo.setArguments(args);
+				}
+				break;
+			case messages_unacknowledged:
+				queueInfo.setMessagesUnacknowledged(extractLong(value));
+				break;
+			case messages_uncommitted:
+				queueInfo.setMessageUncommitted(extractLong(value));
+				break;
+			default:
+				break;
 			}
-			return queueInfoList;
 		}
 
 		private boolean extractAtomBoolean(OtpErlangObject value) {
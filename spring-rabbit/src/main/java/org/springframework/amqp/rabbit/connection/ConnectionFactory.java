@@ -33,4 +33,10 @@ public interface ConnectionFactory {
 	
 	String getVirtualHost();
 
+	/**
+	 * Register a listener to be notified of Connections created and closed by this factory from now on.
+	 * @param listener the listener
+	 */
+	void addConnectionListener(ConnectionListener listener);
+
 }
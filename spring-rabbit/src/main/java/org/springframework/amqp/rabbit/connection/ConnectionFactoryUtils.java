@@ -195,7 +195,7 @@ public class ConnectionFactoryUtils {
 	/**
 	 * 
 	 */
-	public static void registerDeliveryTag(ConnectionFactory connectionFactory, Channel channel, Long tag)
+	public static void registerDeliveryTag(ConnectionFactory connectionFactory, Channel channel, long tag)
 			throws IOException {
 
 		Assert.notNull(connectionFactory, "ConnectionFactory must not be null");
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.connection;
+
+/**
+ * Callback interface for components that need to know when a {@link ConnectionFactory} establishes or closes its
+ * shared Connection, e.g. to declare broker-side entities again after a reconnect.
+ * 
+ * @author agent
+ * @see ConnectionFactory#addConnectionListener(ConnectionListener)
+ */
+public interface ConnectionListener {
+
+	/**
+	 * Called when a new Connection has been established, before it is handed out to anyone else. Implementations may
+	 * create Channels on the given Connection, but must not call back into the ConnectionFactory from other threads
+	 * and wait for them, since those calls block until all listeners have returned.
+	 * @param connection the new Connection
+	 */
+	void onCreate(Connection connection);
+
+	/**
+	 * Called when the Connection is about to be closed.
+	 * @param connection the Connection being closed
+	 */
+	void onClose(Connection connection);
+
+}
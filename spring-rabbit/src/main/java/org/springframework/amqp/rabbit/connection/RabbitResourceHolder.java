@@ -14,8 +14,8 @@
 package org.springframework.amqp.rabbit.connection;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -29,8 +29,6 @@ import org.springframework.amqp.rabbit.transaction.RabbitTransactionManager;
 import org.springframework.transaction.support.ResourceHolderSupport;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
 
 import com.rabbitmq.client.Channel;
 /**
@@ -50,13 +48,13 @@ public class RabbitResourceHolder extends ResourceHolderSupport {
 
 	private boolean frozen = false;
 
-	private final List<Connection> connections = new LinkedList<Connection>();
+	private final List<Connection> connections = new ArrayList<Connection>(1);
 
-	private final List<Channel> channels = new LinkedList<Channel>();
+	private final List<Channel> channels = new ArrayList<Channel>(1);
 
 	private final Map<Connection, List<Channel>> channelsPerConnection = new HashMap<Connection, List<Channel>>();
 
-	private MultiValueMap<Channel, Long> deliveryTags = new LinkedMultiValueMap<Channel, Long>();
+	private final Map<Channel, DeliveryTags> deliveryTags = new HashMap<Channel, DeliveryTags>();
 
 	private boolean transactional;
 
@@ -98,7 +96,7 @@ public class RabbitResourceHolder extends ResourceHolderSupport {
 			if (connection != null) {
 				List<Channel> channels = this.channelsPerConnection.get(connection);
 				if (channels == null) {
-					channels = new LinkedList<Channel>();
+					channels = new ArrayList<Channel>(1);
 					this.channelsPerConnection.put(connection, channels);
 				}
 				channels.add(channel);
@@ -125,12 +123,15 @@ public class RabbitResourceHolder extends ResourceHolderSupport {
 	public void commitAll() throws AmqpException {
 		try {
 			for (Channel channel : this.channels) {
-				if (deliveryTags.containsKey(channel)) {
-					for (Long deliveryTag : deliveryTags.get(channel)) {
-						channel.basicAck(deliveryTag, false);
-					}
+				DeliveryTags tags = this.deliveryTags.get(channel);
+				if (tags != null) {
+					tags.ack(channel);
 				}
 				channel.txCommit();
+				if (tags != null) {
+					// settled now, must not be acknowledged again if the holder is reused
+					tags.clear();
+				}
 			}
 		} catch (IOException e) {
 			throw new AmqpException("failed to commit RabbitMQ transaction", e);
@@ -154,7 +155,12 @@ public class RabbitResourceHolder extends ResourceHolderSupport {
 	}
 
 	public void addDeliveryTag(Channel channel, long deliveryTag) {
-		this.deliveryTags.add(channel, deliveryTag);
+		DeliveryTags tags = this.deliveryTags.get(channel);
+		if (tags == null) {
+			tags = new DeliveryTags();
+			this.deliveryTags.put(channel, tags);
+		}
+		tags.add(deliveryTag);
 	}
 
 	public void rollbackAll() {
@@ -163,16 +169,16 @@ public class RabbitResourceHolder extends ResourceHolderSupport {
 				logger.debug("Rolling back messages to channel: " + channel);
 			}
 			RabbitUtils.rollbackIfNecessary(channel);
-			if (deliveryTags.containsKey(channel)) {
-				for (Long deliveryTag : deliveryTags.get(channel)) {
-					try {
-						channel.basicReject(deliveryTag, true);
-						// Need to commit the reject (=nack)
-						RabbitUtils.commitIfNecessary(channel);
-					} catch (IOException ex) {
-						throw new AmqpIOException(ex);
-					}
+			DeliveryTags tags = this.deliveryTags.get(channel);
+			if (tags != null) {
+				try {
+					tags.reject(channel);
+				} catch (IOException ex) {
+					throw new AmqpIOException(ex);
 				}
+				tags.clear();
+				// Need to commit the reject (=nack)
+				RabbitUtils.commitIfNecessary(channel);
 			}
 		}
 	}
@@ -197,4 +203,69 @@ public class RabbitResourceHolder extends ResourceHolderSupport {
 		return this.transactional;
 	}
 
+
+	/**
+	 * The delivery tags registered for one channel, kept as primitives. A <code>multiple</code> ack
+	 * also settles every unacknowledged tag below the given one, including deliveries this holder
+	 * never saw, so it is only used when the holder provably owns all of them: the tags form a
+	 * single ascending run without gaps that starts right after the last tag settled through this
+	 * holder (or at 1, the first tag on a channel). Otherwise each tag is acknowledged on its own.
+	 */
+	private static class DeliveryTags {
+
+		private long[] tags = new long[8];
+
+		private int count;
+
+		private boolean contiguous = true;
+
+		/** Every tag up to and including this one has been settled through this holder. */
+		private long settled;
+
+		void add(long tag) {
+			if (this.count > 0 && tag != this.tags[this.count - 1] + 1) {
+				this.contiguous = false;
+			}
+			if (this.count == this.tags.length) {
+				long[] newTags = new long[this.count << 1];
+				System.arraycopy(this.tags, 0, newTags, 0, this.count);
+				this.tags = newTags;
+			}
+			this.tags[this.count++] = tag;
+		}
+
+		private boolean ownsAllUpToLast() {
+			return this.count > 0 && this.contiguous && this.tags[0] == this.settled + 1;
+		}
+
+		void ack(Channel channel) throws IOException {
+			if (this.count > 1 && ownsAllUpToLast()) {
+				channel.basicAck(this.tags[this.count - 1], true);
+			}
+			else {
+				for (int i = 0; i < this.count; i++) {
+					channel.basicAck(this.tags[i], false);
+				}
+			}
+		}
+
+		/**
+		 * Forget the registered tags once they have been settled.
+		 */
+		void clear() {
+			if (ownsAllUpToLast()) {
+				this.settled = this.tags[this.count - 1];
+			}
+			this.count = 0;
+			this.contiguous = true;
+		}
+
+		void reject(Channel channel) throws IOException {
+			// basic.reject has no "multiple" flag
+			for (int i = 0; i < this.count; i++) {
+				channel.basicReject(this.tags[i], true);
+			}
+		}
+	}
+
 }
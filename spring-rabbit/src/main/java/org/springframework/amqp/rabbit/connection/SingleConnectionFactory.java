@@ -19,6 +19,8 @@ package org.springframework.amqp.rabbit.connection;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,6 +29,8 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.util.Assert;
 
 import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
 import org.springframework.util.StringUtils;
 
 /**
@@ -54,6 +58,8 @@ public class SingleConnectionFactory implements ConnectionFactory, DisposableBea
 	/** Synchronization monitor for the shared Connection */
 	private final Object connectionMonitor = new Object();
 
+	private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<ConnectionListener>();
+
 
 	/**
 	 * Create a new SingleConnectionFactory initializing the hostname to be the 
@@ -114,6 +120,19 @@ public class SingleConnectionFactory implements ConnectionFactory, DisposableBea
 		this.rabbitConnectionFactory.setPort(port);
 	}
 
+	/**
+	 * Set the listeners to be notified when the shared Connection is established or closed.
+	 */
+	public void setConnectionListeners(List<? extends ConnectionListener> connectionListeners) {
+		this.connectionListeners.clear();
+		this.connectionListeners.addAll(connectionListeners);
+	}
+
+	public void addConnectionListener(ConnectionListener listener) {
+		Assert.notNull(listener, "ConnectionListener must not be null");
+		this.connectionListeners.add(listener);
+	}
+
 	protected int getPort() {
 		return this.port;
 	}
@@ -139,6 +158,7 @@ public class SingleConnectionFactory implements ConnectionFactory, DisposableBea
 	public void initConnection() throws IOException {
 		synchronized (this.connectionMonitor) {
 			if (this.targetConnection != null) {
+				notifyClose();
 				closeConnection(this.targetConnection);
 			}
 			this.targetConnection = doCreateConnection();
@@ -147,6 +167,10 @@ public class SingleConnectionFactory implements ConnectionFactory, DisposableBea
 				logger.info("Established shared Rabbit Connection: " + this.targetConnection);
 			}
 			this.connection = getSharedConnectionProxy(this.targetConnection);
+			// other threads asking for the Connection wait until the listeners are done
+			for (ConnectionListener listener : this.connectionListeners) {
+				listener.onCreate(this.connection);
+			}
 		}
 	}
 
@@ -166,6 +190,7 @@ public class SingleConnectionFactory implements ConnectionFactory, DisposableBea
 	public void resetConnection() {
 		synchronized (this.connectionMonitor) {
 			if (this.targetConnection != null) {
+				notifyClose();
 				closeConnection(this.targetConnection);
 			}
 			this.targetConnection = null;
@@ -173,6 +198,14 @@ public class SingleConnectionFactory implements ConnectionFactory, DisposableBea
 		}
 	}
 
+	private void notifyClose() {
+		if (this.connection != null) {
+			for (ConnectionListener listener : this.connectionListeners) {
+				listener.onClose(this.connection);
+			}
+		}
+	}
+
 	/**
 	 * Close the given Connection.
 	 * @param connection the Connection to close
@@ -195,11 +228,36 @@ public class SingleConnectionFactory implements ConnectionFactory, DisposableBea
 	 * @return the new Rabbit Connection
 	 */
 	protected Connection doCreateConnection() throws IOException {	
-		return new SimpleConnection(this.rabbitConnectionFactory.newConnection());	
+		com.rabbitmq.client.Connection target = this.rabbitConnectionFactory.newConnection();
+		final Connection connection = new SimpleConnection(target);
+		target.addShutdownListener(new ShutdownListener() {
+			public void shutdownCompleted(ShutdownSignalException cause) {
+				if (!cause.isInitiatedByApplication()) {
+					connectionLost(connection);
+				}
+			}
+		});
+		return connection;
 	}
 
 	protected void prepareConnection(Connection con) throws IOException {
-		//TODO configure ShutdownListener, investigate reconnection exceptions
+		//TODO investigate reconnection exceptions
+	}
+
+	/**
+	 * Reset the shared Connection if it is the given one, which has been closed by the broker, so that the next
+	 * access establishes a new Connection and the {@link ConnectionListener ConnectionListeners} are notified.
+	 * @param target the Connection that was closed
+	 */
+	private void connectionLost(Connection target) {
+		synchronized (this.connectionMonitor) {
+			if (this.targetConnection == target) {
+				if (logger.isWarnEnabled()) {
+					logger.warn("Shared Rabbit Connection closed by the broker: " + target);
+				}
+				resetConnection();
+			}
+		}
 	}
 
 	private String getDefaultHostName() {
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Remembers the declarations made by a {@link RabbitAdmin} on the current shared Connection, so that repeating an
+ * identical declaration can be answered without a round trip. Declarations are keyed by all of their properties, so a
+ * declaration that differs in any way still goes to the broker. Everything is forgotten when the admin reports a
+ * {@link #connectionChanged() change of Connection}.
+ * <p>
+ * Auto-delete Exchanges and Queues can disappear without notice, so they are never cached, and neither are Bindings to
+ * them (as far as they were declared through this cache).
+ * 
+ * @author agent
+ * @see RabbitAdmin#setDeclarationCacheEnabled(boolean)
+ */
+class DeclarationCache {
+
+	private static final int CACHE_LIMIT = 1024;
+
+	private static final String EXCHANGE = "exchange";
+
+	private static final String QUEUE = "queue";
+
+	private static final String BINDING = "binding";
+
+	private final Map<List<Object>, Boolean> declarations = new ConcurrentHashMap<List<Object>, Boolean>();
+
+	private final Map<List<Object>, Boolean> autoDeleteNames = new ConcurrentHashMap<List<Object>, Boolean>();
+
+	// incremented on every change of Connection
+	private final AtomicLong generation = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+
+	/**
+	 * @param declarable an {@link Exchange}, {@link Queue} or {@link Binding}
+	 * @return the cache key for its declaration
+	 */
+	static List<Object> key(Object declarable) {
+		if (declarable instanceof Exchange) {
+			return key((Exchange) declarable);
+		}
+		if (declarable instanceof Queue) {
+			return key((Queue) declarable);
+		}
+		return key((Binding) declarable);
+	}
+
+	private static List<Object> key(Exchange exchange) {
+		return Arrays.<Object> asList(EXCHANGE, exchange.getName(), exchange.getType(), exchange.isDurable(),
+				exchange.isAutoDelete(), copy(exchange.getArguments()));
+	}
+
+	private static List<Object> key(Queue queue) {
+		return Arrays.<Object> asList(QUEUE, queue.getName(), queue.isDurable(), queue.isExclusive(),
+				queue.isAutoDelete(), copy(queue.getArguments()));
+	}
+
+	private static List<Object> key(Binding binding) {
+		return Arrays.<Object> asList(BINDING, binding.getQueue(), binding.getExchange(), binding.getRoutingKey(),
+				copy(binding.getArguments()));
+	}
+
+	/**
+	 * Forget all declarations, since they were made on a Connection that has been closed.
+	 */
+	void connectionChanged() {
+		this.generation.incrementAndGet();
+		clear();
+	}
+
+	/**
+	 * @return a token identifying the current Connection, to pass to {@link #declared(long, List)}
+	 */
+	long getGeneration() {
+		return this.generation.get();
+	}
+
+	/**
+	 * Check whether the given declaration has been made on the current Connection already.
+	 */
+	boolean isDeclared(List<Object> key) {
+		if (this.declarations.containsKey(key)) {
+			this.hits.incrementAndGet();
+			return true;
+		}
+		this.misses.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Record a declaration, unless the Connection has changed since the given {@link #getGeneration() generation}:
+	 * then the declaration may have been made on the old one.
+	 */
+	void declared(long generation, List<Object> key) {
+		if (isAutoDelete(key)) {
+			put(this.autoDeleteNames, Arrays.<Object> asList(key.get(0), key.get(1)));
+		}
+		else if (!isToAutoDelete(key)) {
+			put(this.declarations, key);
+		}
+		if (generation != this.generation.get()) {
+			// lost the race with connectionChanged()
+			clear();
+		}
+	}
+
+	/**
+	 * Forget the Exchange with the given name and the Bindings to it.
+	 */
+	void exchangeDeleted(String name) {
+		remove(EXCHANGE, name, 1);
+		remove(BINDING, name, 2);
+	}
+
+	/**
+	 * Forget the Queue with the given name and its Bindings.
+	 */
+	void queueDeleted(String name) {
+		remove(QUEUE, name, 1);
+		remove(BINDING, name, 1);
+	}
+
+	/**
+	 * Forget the given Binding, whatever its arguments.
+	 */
+	void bindingRemoved(Binding binding) {
+		List<Object> removed = key(binding).subList(0, 4);
+		for (Iterator<List<Object>> iterator = this.declarations.keySet().iterator(); iterator.hasNext();) {
+			List<Object> key = iterator.next();
+			if (key.subList(0, key.size() - 1).equals(removed)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	void clear() {
+		this.declarations.clear();
+		this.autoDeleteNames.clear();
+	}
+
+	long getHits() {
+		return this.hits.get();
+	}
+
+	long getMisses() {
+		return this.misses.get();
+	}
+
+	private boolean isAutoDelete(List<Object> key) {
+		// the auto-delete flag of Exchange and Queue keys is second to last
+		return !key.get(0).equals(BINDING) && Boolean.TRUE.equals(key.get(key.size() - 2));
+	}
+
+	private boolean isToAutoDelete(List<Object> key) {
+		return key.get(0).equals(BINDING)
+				&& (this.autoDeleteNames.containsKey(Arrays.<Object> asList(QUEUE, key.get(1))) || this.autoDeleteNames
+						.containsKey(Arrays.<Object> asList(EXCHANGE, key.get(2))));
+	}
+
+	private void remove(String kind, String name, int index) {
+		for (Iterator<List<Object>> iterator = this.declarations.keySet().iterator(); iterator.hasNext();) {
+			List<Object> key = iterator.next();
+			if (key.get(0).equals(kind) && ObjectUtils.nullSafeEquals(key.get(index), name)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static void put(Map<List<Object>, Boolean> map, List<Object> key) {
+		if (map.size() >= CACHE_LIMIT) {
+			map.clear();
+		}
+		map.put(key, Boolean.TRUE);
+	}
+
+	private static Map<String, Object> copy(Map<String, Object> arguments) {
+		return (arguments != null) ? new HashMap<String, Object>(arguments) : null;
+	}
+
+}
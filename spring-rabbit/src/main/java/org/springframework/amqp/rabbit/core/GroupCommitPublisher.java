@@ -0,0 +1,222 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactoryUtils;
+import org.springframework.amqp.rabbit.support.RabbitUtils;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+
+/**
+ * Publishes messages on a shared transacted Channel, committing the messages of concurrent callers
+ * together. Each caller queues its message; if no commit is in progress the caller becomes the
+ * committer for everything queued so far: it publishes the batch, issues a single
+ * <code>tx.commit</code> and then releases the other callers of the batch with the outcome.
+ * Callers arriving during a commit queue up for the next one. No caller returns before its message
+ * is committed, so the guarantees are those of a commit per message, but the number of commit
+ * round trips grows with the number of batches rather than the number of messages.
+ * <p>
+ * A batch is committed or rolled back as a whole: if any message of it cannot be published (for
+ * instance because its exchange does not exist, which closes the Channel) every caller of the batch
+ * gets the failure, including those whose own messages were fine.
+ * 
+ * @author agent
+ * @see RabbitTemplate#setGroupCommit(boolean)
+ */
+class GroupCommitPublisher {
+
+	private static final Log logger = LogFactory.getLog(GroupCommitPublisher.class);
+
+	private final ConnectionFactory connectionFactory;
+
+	private final Object monitor = new Object();
+
+	private List<PendingMessage> pending = new ArrayList<PendingMessage>();
+
+	private boolean committing;
+
+	private boolean closeRequested;
+
+	// only used by the current committer
+	private Connection connection;
+
+	private Channel channel;
+
+
+	GroupCommitPublisher(ConnectionFactory connectionFactory) {
+		this.connectionFactory = connectionFactory;
+	}
+
+
+	/**
+	 * Publish a message and wait until it has been committed.
+	 * @throws Exception if publishing or committing the batch containing the message failed
+	 */
+	void publish(String exchange, String routingKey, BasicProperties properties, byte[] body) throws Exception {
+		PendingMessage message = new PendingMessage(exchange, routingKey, properties, body);
+		List<PendingMessage> batch;
+		boolean interrupted = false;
+		synchronized (this.monitor) {
+			this.pending.add(message);
+			// the message cannot be withdrawn once a committer has taken it, so wait uninterruptibly
+			while (this.committing && !message.done) {
+				try {
+					this.monitor.wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (!message.done) {
+				this.committing = true;
+				batch = this.pending;
+				this.pending = new ArrayList<PendingMessage>();
+			}
+			else {
+				batch = null;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (batch != null) {
+			commit(batch);
+		}
+		if (message.failure != null) {
+			throw message.failure;
+		}
+	}
+
+	/**
+	 * Close the shared Channel, or have the current committer close it once its commit has finished.
+	 */
+	void close() {
+		synchronized (this.monitor) {
+			if (this.committing) {
+				this.closeRequested = true;
+			}
+			else {
+				discardChannel(false);
+			}
+		}
+	}
+
+	private void commit(List<PendingMessage> batch) {
+		boolean committed = false;
+		Exception failure = null;
+		try {
+			Channel channel = getChannel();
+			for (PendingMessage message : batch) {
+				channel.basicPublish(message.exchange, message.routingKey, false, false, message.properties,
+						message.body);
+			}
+			channel.txCommit();
+			committed = true;
+			if (logger.isDebugEnabled()) {
+				logger.debug("Committed " + batch.size() + " message(s) on RabbitMQ Channel: " + channel);
+			}
+		}
+		catch (Exception ex) {
+			failure = ex;
+		}
+		finally {
+			if (!committed) {
+				// also reached on an Error, which propagates to the committing caller
+				discardChannel(true);
+				if (failure == null) {
+					failure = new AmqpException("Group commit failed in the committing thread");
+				}
+			}
+			synchronized (this.monitor) {
+				for (PendingMessage message : batch) {
+					message.failure = failure;
+					message.done = true;
+				}
+				if (this.closeRequested) {
+					this.closeRequested = false;
+					discardChannel(false);
+				}
+				this.committing = false;
+				this.monitor.notifyAll();
+			}
+		}
+	}
+
+	private Channel getChannel() throws Exception {
+		if (this.channel == null || !this.channel.isOpen()) {
+			discardChannel(false);
+			this.connection = this.connectionFactory.createConnection();
+			this.channel = this.connection.createChannel(true);
+			this.channel.txSelect();
+		}
+		return this.channel;
+	}
+
+	/**
+	 * Close the Channel and release its Connection.
+	 * @param rollback whether messages may have been published but not committed; they are rolled back
+	 * explicitly, as closing a cached Channel only returns it to the cache, where the next
+	 * <code>tx.commit</code> would commit them
+	 */
+	private void discardChannel(boolean rollback) {
+		if (rollback && this.channel != null && this.channel.isOpen()) {
+			try {
+				this.channel.txRollback();
+			}
+			catch (Exception ex) {
+				logger.warn("Could not roll back group commit on RabbitMQ Channel: " + this.channel, ex);
+			}
+		}
+		RabbitUtils.closeChannel(this.channel);
+		this.channel = null;
+		if (this.connection != null) {
+			ConnectionFactoryUtils.releaseConnection(this.connection);
+			this.connection = null;
+		}
+	}
+
+
+	private static class PendingMessage {
+
+		private final String exchange;
+
+		private final String routingKey;
+
+		private final BasicProperties properties;
+
+		private final byte[] body;
+
+		// guarded by the publisher's monitor
+		private boolean done;
+
+		private Exception failure;
+
+		PendingMessage(String exchange, String routingKey, BasicProperties properties, byte[] body) {
+			this.exchange = exchange;
+			this.routingKey = routingKey;
+			this.properties = properties;
+			this.body = body;
+		}
+	}
+
+}
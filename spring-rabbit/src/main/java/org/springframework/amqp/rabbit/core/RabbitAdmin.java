@@ -17,18 +17,34 @@
 package org.springframework.amqp.rabbit.core;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.Exchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.Connection;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactoryUtils;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.amqp.rabbit.support.RabbitUtils;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.util.Assert;
 
@@ -56,8 +72,18 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 
 	private volatile ApplicationContext applicationContext;
 
+	private volatile int declarationConcurrency = 1;
+
+	private volatile boolean declarationCacheEnabled;
+
+	private final DeclarationCache declarationCache = new DeclarationCache();
+
 	private final Object lifecycleMonitor = new Object();
 
+	private boolean connectionListenerAdded;
+
+	private boolean declarationCacheListenerAdded;
+
 
 	public RabbitAdmin(ConnectionFactory connectionFactory) {
 		Assert.notNull(connectionFactory, "ConnectionFactory must not be null");
@@ -82,6 +108,70 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 		this.applicationContext = applicationContext;
 	}
 
+	/**
+	 * Set the number of Channels used in parallel to declare the Exchanges, Queues and Bindings of the application
+	 * context on {@link #start()}. With a value greater than 1 all Exchanges and Queues are declared first, spread
+	 * over the Channels, and then all Bindings whose Exchange and Queue were declared successfully. A failed
+	 * declaration does not stop the others; all failures are logged and reported together at the end. This can
+	 * shorten startup considerably for large numbers of Bindings, since each declaration is a round trip to the
+	 * broker. Default is 1: everything is declared in turn on a single Channel, stopping at the first failure.
+	 */
+	public void setDeclarationConcurrency(int declarationConcurrency) {
+		Assert.isTrue(declarationConcurrency > 0, "declarationConcurrency must be positive");
+		this.declarationConcurrency = declarationConcurrency;
+	}
+
+	/**
+	 * Set whether repeated identical declarations of Exchanges, Queues and Bindings should be answered locally. A
+	 * declaration is only sent to the broker the first time it is made on the shared Connection; the cache is cleared
+	 * when the ConnectionFactory reports that the Connection has been closed or replaced (a
+	 * {@link org.springframework.amqp.rabbit.connection.SingleConnectionFactory} does so when the broker closes the
+	 * Connection), and entries are removed by the corresponding delete operations of this admin.
+	 * Auto-delete Exchanges and Queues, and Bindings to them, are always declared. Requires a ConnectionFactory that
+	 * shares one Connection, such as {@link org.springframework.amqp.rabbit.connection.SingleConnectionFactory}, and
+	 * assumes that the declared entities are not deleted other than through this admin. Default is "false".
+	 * @see #getDeclarationCacheHits()
+	 * @see #getDeclarationCacheMisses()
+	 */
+	public void setDeclarationCacheEnabled(boolean declarationCacheEnabled) {
+		if (declarationCacheEnabled) {
+			synchronized (this.lifecycleMonitor) {
+				if (!this.declarationCacheListenerAdded) {
+					this.rabbitTemplate.getConnectionFactory().addConnectionListener(new ConnectionListener() {
+						public void onCreate(Connection connection) {
+							declarationCache.connectionChanged();
+						}
+
+						public void onClose(Connection connection) {
+							declarationCache.connectionChanged();
+						}
+					});
+					this.declarationCacheListenerAdded = true;
+				}
+			}
+		}
+		this.declarationCacheEnabled = declarationCacheEnabled;
+		if (!declarationCacheEnabled) {
+			this.declarationCache.clear();
+		}
+	}
+
+	/**
+	 * Return the number of declarations that were answered from the declaration cache.
+	 */
+	@ManagedAttribute
+	public long getDeclarationCacheHits() {
+		return this.declarationCache.getHits();
+	}
+
+	/**
+	 * Return the number of declarations that were looked up in the declaration cache and sent to the broker.
+	 */
+	@ManagedAttribute
+	public long getDeclarationCacheMisses() {
+		return this.declarationCache.getMisses();
+	}
+
 	public RabbitTemplate getRabbitTemplate() {
 		return this.rabbitTemplate;
 	}
@@ -89,7 +179,7 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 	// Exchange operations
 
 	public void declareExchange(final Exchange exchange) {
-		this.rabbitTemplate.execute(new ChannelCallback<Object>() {
+		declare(exchange, new ChannelCallback<Object>() {
 			public Object doInRabbit(Channel channel) throws Exception {
 				declareExchanges(channel, exchange);
 				return null;
@@ -105,13 +195,14 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 				return null;
 			}
 		});
+		this.declarationCache.exchangeDeleted(exchangeName);
 	}
 
 	// Queue operations
 
 	@ManagedOperation
 	public void declareQueue(final Queue queue) {
-		this.rabbitTemplate.execute(new ChannelCallback<Object>() {
+		declare(queue, new ChannelCallback<Object>() {
 			public Object doInRabbit(Channel channel) throws Exception {
 				declareQueues(channel, queue);
 				return null;
@@ -144,6 +235,7 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 				return null;
 			}
 		});
+		this.declarationCache.queueDeleted(queueName);
 	}
 
 	@ManagedOperation
@@ -154,6 +246,7 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 				return null;
 			}
 		});
+		this.declarationCache.queueDeleted(queueName);
 	}
 
 	@ManagedOperation
@@ -169,7 +262,7 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 	// Binding
 	@ManagedOperation
 	public void declareBinding(final Binding binding) {
-		this.rabbitTemplate.execute(new ChannelCallback<Object>() {
+		declare(binding, new ChannelCallback<Object>() {
 			public Object doInRabbit(Channel channel) throws Exception {
 				declareBindings(channel, binding);
 				return null;
@@ -185,7 +278,22 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 						binding.getArguments());
 				return null;
 			}
-		});		
+		});
+		this.declarationCache.bindingRemoved(binding);
+	}
+
+	private void declare(Object declarable, ChannelCallback<Object> declaration) {
+		if (!this.declarationCacheEnabled) {
+			this.rabbitTemplate.execute(declaration);
+			return;
+		}
+		long generation = this.declarationCache.getGeneration();
+		List<Object> key = DeclarationCache.key(declarable);
+		if (this.declarationCache.isDeclared(key)) {
+			return;
+		}
+		this.rabbitTemplate.execute(declaration);
+		this.declarationCache.declared(generation, key);
 	}
 
 	// Lifecycle implementation
@@ -213,17 +321,18 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 				}
 				return;
 			}
-			final Collection<Exchange> exchanges = this.applicationContext.getBeansOfType(Exchange.class).values();
-			final Collection<Queue> queues = this.applicationContext.getBeansOfType(Queue.class).values();
-			final Collection<Binding> bindings = this.applicationContext.getBeansOfType(Binding.class).values();
-			this.rabbitTemplate.execute(new ChannelCallback<Object>() {
-				public Object doInRabbit(Channel channel) throws Exception {
-					declareExchanges(channel, exchanges.toArray(new Exchange[exchanges.size()]));
-					declareQueues(channel, queues.toArray(new Queue[queues.size()]));
-					declareBindings(channel, bindings.toArray(new Binding[bindings.size()]));
-					return null;
-				}
-			});
+			declareBeans(null);
+			if (!this.connectionListenerAdded) {
+				this.rabbitTemplate.getConnectionFactory().addConnectionListener(new ConnectionListener() {
+					public void onCreate(Connection connection) {
+						redeclare(connection);
+					}
+
+					public void onClose(Connection connection) {
+					}
+				});
+				this.connectionListenerAdded = true;
+			}
 			this.running = true;
 		}
 	}
@@ -238,6 +347,63 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 	}
 
 
+	/**
+	 * Declare the Exchanges, Queues and Bindings of the application context again on a new Connection, since
+	 * auto-delete and exclusive Queues, and their Bindings, did not survive the old one. Runs before the new
+	 * Connection is handed out to listener containers.
+	 */
+	private void redeclare(Connection connection) {
+		if (!this.running) {
+			return;
+		}
+		if (logger.isInfoEnabled()) {
+			logger.info("Redeclaring Exchanges, Queues and Bindings on new Connection: " + connection);
+		}
+		try {
+			declareBeans(connection);
+		}
+		catch (Exception e) {
+			logger.error("Failed to redeclare Exchanges, Queues and Bindings", e);
+		}
+	}
+
+	/**
+	 * Declare the Exchanges, Queues and Bindings of the application context on the given Connection, or through the
+	 * template if it is <code>null</code>.
+	 */
+	private void declareBeans(final Connection connection) {
+		final Collection<Exchange> exchanges = this.applicationContext.getBeansOfType(Exchange.class).values();
+		final Collection<Queue> queues = this.applicationContext.getBeansOfType(Queue.class).values();
+		final Collection<Binding> bindings = this.applicationContext.getBeansOfType(Binding.class).values();
+		if (this.declarationConcurrency > 1) {
+			new ParallelDeclaration(this.declarationConcurrency, connection).declare(exchanges, queues, bindings);
+			return;
+		}
+		ChannelCallback<Object> declaration = new ChannelCallback<Object>() {
+			public Object doInRabbit(Channel channel) throws Exception {
+				declareExchanges(channel, exchanges.toArray(new Exchange[exchanges.size()]));
+				declareQueues(channel, queues.toArray(new Queue[queues.size()]));
+				declareBindings(channel, bindings.toArray(new Binding[bindings.size()]));
+				return null;
+			}
+		};
+		if (connection == null) {
+			this.rabbitTemplate.execute(declaration);
+			return;
+		}
+		Channel channel = null;
+		try {
+			channel = connection.createChannel(false);
+			declaration.doInRabbit(channel);
+		}
+		catch (Exception e) {
+			throw RabbitUtils.convertRabbitAccessException(e);
+		}
+		finally {
+			RabbitUtils.closeChannel(channel);
+		}
+	}
+
 	// private methods for declaring Exchanges, Queues, and Bindings on a Channel
 
 	private void declareExchanges(final Channel channel, final Exchange... exchanges) throws IOException {
@@ -277,4 +443,179 @@ public class RabbitAdmin implements AmqpAdmin, ApplicationContextAware, SmartLif
 		}
 	}
 
+
+
+	/**
+	 * Declares Exchanges and Queues, and then Bindings, on several Channels in parallel, collecting the failures.
+	 */
+	private class ParallelDeclaration {
+
+		private final int concurrency;
+
+		private final Connection connection;
+
+		private final Map<String, Boolean> failedExchangeNames = new ConcurrentHashMap<String, Boolean>();
+
+		private final Map<String, Boolean> failedQueueNames = new ConcurrentHashMap<String, Boolean>();
+
+		private final List<String> failures = new ArrayList<String>();
+
+		private Exception firstFailure;
+
+		/**
+		 * @param concurrency the number of Channels to use
+		 * @param connection the Connection to create the Channels on, or <code>null</code> to obtain it from the
+		 * ConnectionFactory
+		 */
+		ParallelDeclaration(int concurrency, Connection connection) {
+			this.concurrency = concurrency;
+			this.connection = connection;
+		}
+
+		void declare(Collection<Exchange> exchanges, Collection<Queue> queues, Collection<Binding> bindings) {
+			ExecutorService executor = Executors.newFixedThreadPool(this.concurrency);
+			List<Declarer> declarers = new ArrayList<Declarer>(this.concurrency);
+			try {
+				for (int i = 0; i < this.concurrency; i++) {
+					declarers.add(new Declarer());
+				}
+				ConcurrentLinkedQueue<Object> work = new ConcurrentLinkedQueue<Object>();
+				work.addAll(exchanges);
+				work.addAll(queues);
+				run(executor, declarers, work);
+				// Bindings depend on their Exchange and Queue
+				for (Binding binding : bindings) {
+					if (this.failedExchangeNames.containsKey(binding.getExchange())
+							|| this.failedQueueNames.containsKey(binding.getQueue())) {
+						failed(describe(binding) + " skipped: its Exchange or Queue could not be declared", null);
+					}
+					else {
+						work.add(binding);
+					}
+				}
+				run(executor, declarers, work);
+			}
+			finally {
+				executor.shutdown();
+				for (Declarer declarer : declarers) {
+					declarer.close();
+				}
+			}
+			if (!this.failures.isEmpty()) {
+				int total = exchanges.size() + queues.size() + bindings.size();
+				throw new AmqpException(this.failures.size() + " of " + total + " declarations failed: "
+						+ this.failures, this.firstFailure);
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Declared " + exchanges.size() + " Exchange(s), " + queues.size() + " Queue(s) and "
+						+ bindings.size() + " Binding(s) on " + this.concurrency + " Channels");
+			}
+		}
+
+		private void run(ExecutorService executor, List<Declarer> declarers, ConcurrentLinkedQueue<Object> work) {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>(declarers.size());
+			for (Declarer declarer : declarers) {
+				declarer.work = work;
+				futures.add(executor.submit(declarer));
+			}
+			for (Future<Object> future : futures) {
+				try {
+					future.get();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new AmqpException("Interrupted while declaring Exchanges, Queues and Bindings", e);
+				}
+				catch (ExecutionException e) {
+					throw RabbitUtils.convertRabbitAccessException(e.getCause());
+				}
+			}
+		}
+
+		private synchronized void failed(String description, Exception cause) {
+			logger.error("Failed to declare " + description, cause);
+			this.failures.add(description);
+			if (this.firstFailure == null) {
+				this.firstFailure = cause;
+			}
+		}
+
+		private String describe(Object declarable) {
+			if (declarable instanceof Exchange) {
+				return "Exchange '" + ((Exchange) declarable).getName() + "'";
+			}
+			if (declarable instanceof Queue) {
+				return "Queue '" + ((Queue) declarable).getName() + "'";
+			}
+			Binding binding = (Binding) declarable;
+			return "Binding of queue [" + binding.getQueue() + "] to exchange [" + binding.getExchange()
+					+ "] with routing key [" + binding.getRoutingKey() + "]";
+		}
+
+
+		/**
+		 * Takes declarations from the shared work queue and declares them on its own Channel, replacing the
+		 * Channel when the broker closes it after a failed declaration.
+		 */
+		private class Declarer implements Callable<Object> {
+
+			private volatile ConcurrentLinkedQueue<Object> work;
+
+			private Connection connection;
+
+			private Channel channel;
+
+			public Object call() throws Exception {
+				Object declarable;
+				while ((declarable = this.work.poll()) != null) {
+					Channel channel = getChannel();
+					try {
+						if (declarable instanceof Exchange) {
+							declareExchanges(channel, (Exchange) declarable);
+						}
+						else if (declarable instanceof Queue) {
+							declareQueues(channel, (Queue) declarable);
+						}
+						else {
+							declareBindings(channel, (Binding) declarable);
+						}
+					}
+					catch (IOException e) {
+						if (declarable instanceof Exchange) {
+							failedExchangeNames.put(((Exchange) declarable).getName(), Boolean.TRUE);
+						}
+						else if (declarable instanceof Queue) {
+							failedQueueNames.put(((Queue) declarable).getName(), Boolean.TRUE);
+						}
+						failed(describe(declarable), e);
+					}
+				}
+				return null;
+			}
+
+			private Channel getChannel() throws IOException {
+				if (this.channel == null || !this.channel.isOpen()) {
+					close();
+					if (ParallelDeclaration.this.connection != null) {
+						this.channel = ParallelDeclaration.this.connection.createChannel(false);
+					}
+					else {
+						this.connection = rabbitTemplate.getConnectionFactory().createConnection();
+						this.channel = this.connection.createChannel(false);
+					}
+				}
+				return this.channel;
+			}
+
+			void close() {
+				RabbitUtils.closeChannel(this.channel);
+				this.channel = null;
+				if (this.connection != null) {
+					ConnectionFactoryUtils.releaseConnection(this.connection);
+					this.connection = null;
+				}
+			}
+		}
+	}
+
 }
@@ -16,8 +16,11 @@
 
 package org.springframework.amqp.rabbit.core;
 
+import java.util.List;
+
 import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
 
 /**
  * Rabbit specific methods for Amqp functionality.
@@ -27,5 +30,24 @@ import org.springframework.amqp.core.AmqpTemplate;
 public interface RabbitOperations extends AmqpTemplate {
 
 	<T> T execute(ChannelCallback<T> action) throws AmqpException;	
+
+	/**
+	 * Receive a message from the given queue, waiting up to the given time for one to arrive.
+	 * @param queueName the name of the queue to receive from
+	 * @param timeout the maximum time to wait in milliseconds; 0 to return immediately and a negative value to wait
+	 * indefinitely
+	 * @return the message, or <code>null</code> if none arrived in time
+	 */
+	Message receive(String queueName, long timeout) throws AmqpException;
+
+	/**
+	 * Receive a batch of messages from the given queue, acknowledging them together.
+	 * @param queueName the name of the queue to receive from
+	 * @param maxMessages the maximum number of messages to receive
+	 * @param timeout the maximum time to wait in milliseconds for the batch to fill up; 0 to take only the messages
+	 * that are available immediately
+	 * @return the messages received (possibly an empty list, never <code>null</code>)
+	 */
+	List<Message> receive(String queueName, int maxMessages, long timeout) throws AmqpException;
 			
 }
@@ -14,9 +14,14 @@
 package org.springframework.amqp.rabbit.core;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.AmqpIllegalStateException;
@@ -25,13 +30,19 @@ import org.springframework.amqp.core.ExchangeTypes;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactoryUtils;
 import org.springframework.amqp.rabbit.connection.RabbitResourceHolder;
+import org.springframework.amqp.rabbit.core.ThreadBoundChannels.BoundChannel;
+import org.springframework.amqp.rabbit.listener.BlockingQueueConsumer;
+import org.springframework.amqp.rabbit.listener.BlockingQueueConsumer.Delivery;
 import org.springframework.amqp.rabbit.support.RabbitAccessor;
 import org.springframework.amqp.rabbit.support.RabbitUtils;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
 import com.rabbitmq.client.AMQP;
@@ -47,7 +58,7 @@ import com.rabbitmq.client.GetResponse;
  * @author Mark Pollack
  * @author Mark Fisher
  */
-public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
+public class RabbitTemplate extends RabbitAccessor implements RabbitOperations, DisposableBean {
 
 	private static final String DEFAULT_EXCHANGE = ""; // alias for amq.direct
 														// default exchange
@@ -56,6 +67,8 @@ public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
 
 	private static final long DEFAULT_REPLY_TIMEOUT = 5000;
 
+	private static final long DEFAULT_THREAD_BOUND_CHANNEL_IDLE_TIMEOUT = 60000;
+
 	// TODO configure defaults
 	// void basicQos(int prefetchSize, int prefetchCount, boolean global)
 
@@ -70,6 +83,20 @@ public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
 
 	private volatile MessageConverter messageConverter = new SimpleMessageConverter();
 
+	private volatile boolean groupCommit;
+
+	private volatile GroupCommitPublisher groupCommitPublisher;
+
+	private volatile int prefetchCount;
+
+	private final Map<String, ReceiveConsumer> receiveConsumers = new ConcurrentHashMap<String, ReceiveConsumer>();
+
+	private volatile int threadBoundChannelLimit;
+
+	private volatile long threadBoundChannelIdleTimeout = DEFAULT_THREAD_BOUND_CHANNEL_IDLE_TIMEOUT;
+
+	private volatile ThreadBoundChannels threadBoundChannels;
+
 	public RabbitTemplate() {
 		initDefaultStrategies();
 	}
@@ -127,6 +154,60 @@ public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
 		return this.messageConverter;
 	}
 
+	/**
+	 * Set whether messages sent on a {@link #setChannelTransacted(boolean) transacted} Channel outside of an
+	 * existing transaction should be committed in groups. Concurrent senders then share one transacted Channel, and
+	 * the messages that accumulate while a commit is in progress are committed together by the next one. Each
+	 * <code>send</code> still returns only once its message has been committed, so the delivery guarantees are
+	 * unchanged, but the number of commit round trips no longer grows with the number of messages. Has no effect on
+	 * sends that participate in a transaction, or on non-transacted templates. Default is "false".
+	 * <p>Messages committed together also fail together: a message that cannot be published, for instance to an
+	 * exchange that does not exist, fails the <code>send</code> of every message in the same group.
+	 */
+	public void setGroupCommit(boolean groupCommit) {
+		this.groupCommit = groupCommit;
+	}
+
+	/**
+	 * Set the number of messages to prefetch per queue for receive operations. With a positive value the template
+	 * keeps a consumer open for each queue it receives from, and {@link #receive(String)} returns buffered messages
+	 * from local memory instead of issuing a <code>basic.get</code> round trip per message (falling back to
+	 * <code>basic.get</code> when the buffer is empty). A message is acknowledged when it is handed out, within a
+	 * local transaction if the template is {@link #setChannelTransacted(boolean) transacted}; buffered messages that
+	 * are not handed out are returned to the queue on {@link #destroy()}. Receives that participate in an existing
+	 * transaction always use <code>basic.get</code>. Default is 0 (no prefetch), in which case no consumer is kept
+	 * open between receive operations.
+	 * @see #receive(String, long)
+	 */
+	public void setPrefetchCount(int prefetchCount) {
+		Assert.isTrue(prefetchCount >= 0, "prefetchCount must not be negative");
+		this.prefetchCount = prefetchCount;
+	}
+
+	/**
+	 * Set the maximum number of Channels to keep bound to the threads that use this template. With a positive value
+	 * each thread executing a non-transacted operation outside of a transaction keeps its own Channel for subsequent
+	 * operations, instead of obtaining and releasing a Channel from the connection factory every time, which suits
+	 * long-lived producer threads. Threads beyond the limit use the regular Channel handling. Default is 0 (no
+	 * thread-bound Channels).
+	 * @see #setThreadBoundChannelIdleTimeout(long)
+	 */
+	public void setThreadBoundChannelLimit(int threadBoundChannelLimit) {
+		Assert.isTrue(threadBoundChannelLimit >= 0, "threadBoundChannelLimit must not be negative");
+		this.threadBoundChannelLimit = threadBoundChannelLimit;
+	}
+
+	/**
+	 * Set the time in milliseconds after which an unused thread-bound Channel (e.g. of a thread that has finished) is
+	 * closed. Channels are checked once per timeout, so a Channel is closed after being idle for between one and two
+	 * timeouts. Default is 60000.
+	 * @see #setThreadBoundChannelLimit(int)
+	 */
+	public void setThreadBoundChannelIdleTimeout(long threadBoundChannelIdleTimeout) {
+		Assert.isTrue(threadBoundChannelIdleTimeout > 0, "threadBoundChannelIdleTimeout must be positive");
+		this.threadBoundChannelIdleTimeout = threadBoundChannelIdleTimeout;
+	}
+
 	public void send(Message message) throws AmqpException {
 		send(this.exchange, this.routingKey, message);
 	}
@@ -136,6 +217,10 @@ public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
 	}
 
 	public void send(final String exchange, final String routingKey, final Message message) throws AmqpException {
+		if (this.groupCommit && isChannelTransacted() && !isInExistingTransaction()) {
+			doGroupCommitSend(exchange, routingKey, message);
+			return;
+		}
 		execute(new ChannelCallback<Object>() {
 			public Object doInRabbit(Channel channel) throws Exception {
 				doSend(channel, exchange, routingKey, message);
@@ -178,28 +263,220 @@ public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
 	}
 
 	public Message receive(final String queueName) {
+		if (this.prefetchCount > 0 && !isInExistingTransaction()) {
+			Message message = receiveFromConsumer(queueName, 0);
+			if (message != null) {
+				return message;
+			}
+		}
 		return execute(new ChannelCallback<Message>() {
 			public Message doInRabbit(Channel channel) throws IOException {
-				GetResponse response = channel.basicGet(queueName, !isChannelTransacted());
-				// Response can be null is the case that there is no message on the queue.
-				if (response != null) {
-					long deliveryTag = response.getEnvelope().getDeliveryTag();
-					if (isChannelLocallyTransacted(channel)) {
-						channel.basicAck(deliveryTag, false);
-						channel.txCommit();
-					} else if (isChannelTransacted()) {
-						// Not locally transacted but it is transacted so it
-						// could be synchronized with an external transaction
-						ConnectionFactoryUtils.registerDeliveryTag(getConnectionFactory(), channel, deliveryTag);
+				return doReceive(channel, queueName);
+			}
+		});
+	}
+
+	/**
+	 * Receive a message from the given queue, waiting up to the given time for one to arrive. With a positive
+	 * {@link #setPrefetchCount(int) prefetchCount} this uses the same per-queue consumer as {@link #receive(String)};
+	 * otherwise a consumer with a prefetch of 1 is started for this call only, and cancelled (returning any message it
+	 * did not hand out to the queue) before the method returns. Within an existing transaction this method does not
+	 * wait, but receives with <code>basic.get</code>.
+	 * @param queueName the name of the queue to receive from
+	 * @param timeout the maximum time to wait in milliseconds; 0 to return immediately and a negative value to wait
+	 * indefinitely
+	 * @return the message, or <code>null</code> if none arrived in time
+	 */
+	public Message receive(String queueName, long timeout) throws AmqpException {
+		if (isInExistingTransaction()) {
+			return receive(queueName);
+		}
+		return receiveFromConsumer(queueName, timeout);
+	}
+
+	/**
+	 * Receive up to the given number of messages from the given queue. Outside of a transaction the messages come from
+	 * the per-queue consumer of {@link #receive(String)} if <code>maxMessages</code> does not exceed the
+	 * {@link #setPrefetchCount(int) prefetchCount}; otherwise from a consumer with a prefetch of
+	 * <code>maxMessages</code> that is started for this call only, and cancelled before the method returns. The
+	 * messages are acknowledged together, with a single multiple ack or commit. Within an existing transaction this
+	 * method does not wait, but receives with repeated <code>basic.get</code> on the transactional Channel.
+	 * @param queueName the name of the queue to receive from
+	 * @param maxMessages the maximum number of messages to receive
+	 * @param timeout the maximum time to wait in milliseconds for the batch to fill up; 0 to take only the messages
+	 * that are available immediately
+	 * @return the messages received (possibly an empty list, never <code>null</code>)
+	 */
+	public List<Message> receive(final String queueName, final int maxMessages, long timeout) throws AmqpException {
+		Assert.isTrue(maxMessages > 0, "maxMessages must be positive");
+		Assert.isTrue(timeout >= 0, "timeout must not be negative");
+		if (isInExistingTransaction()) {
+			return execute(new ChannelCallback<List<Message>>() {
+				public List<Message> doInRabbit(Channel channel) throws IOException {
+					List<Message> messages = new ArrayList<Message>();
+					while (messages.size() < maxMessages) {
+						Message message = doReceive(channel, queueName);
+						if (message == null) {
+							break;
+						}
+						messages.add(message);
 					}
-					MessageProperties messageProps = RabbitUtils.createMessageProperties(response.getProps(),
-							response.getEnvelope(), "UTF-8");
-					messageProps.setMessageCount(response.getMessageCount());
-					return new Message(response.getBody(), messageProps);
+					return messages;
 				}
+			});
+		}
+		return receiveFromConsumer(queueName, maxMessages, timeout);
+	}
+
+	private Message doReceive(Channel channel, String queueName) throws IOException {
+		GetResponse response = channel.basicGet(queueName, !isChannelTransacted());
+		// Response can be null is the case that there is no message on the queue.
+		if (response != null) {
+			long deliveryTag = response.getEnvelope().getDeliveryTag();
+			if (isChannelLocallyTransacted(channel)) {
+				channel.basicAck(deliveryTag, false);
+				channel.txCommit();
+			} else if (isChannelTransacted()) {
+				// Not locally transacted but it is transacted so it
+				// could be synchronized with an external transaction
+				ConnectionFactoryUtils.registerDeliveryTag(getConnectionFactory(), channel, deliveryTag);
+			}
+			MessageProperties messageProps = RabbitUtils.createMessageProperties(response.getProps(),
+					response.getEnvelope(), "UTF-8");
+			messageProps.setMessageCount(response.getMessageCount());
+			return new Message(response.getBody(), messageProps);
+		}
+		return null;
+	}
+
+	private List<Message> receiveFromConsumer(String queueName, int maxMessages, long timeout) {
+		// the shared consumer's prefetch is left alone, a larger batch gets a consumer of its own
+		boolean shared = maxMessages <= this.prefetchCount;
+		ReceiveConsumer consumer = shared ? getReceiveConsumer(queueName) : createReceiveConsumer(queueName,
+				maxMessages);
+		List<Delivery> deliveries = new ArrayList<Delivery>(Math.min(maxMessages, 64));
+		consumer.enter();
+		try {
+			long deadline = System.currentTimeMillis() + timeout;
+			try {
+				while (deliveries.size() < maxMessages) {
+					long remaining = Math.max(deadline - System.currentTimeMillis(), 0);
+					Delivery delivery = consumer.consumer.nextDelivery(remaining);
+					if (delivery == null) {
+						break;
+					}
+					deliveries.add(delivery);
+				}
+			} catch (InterruptedException e) {
+				// hand out what has been taken from the buffer already
+				Thread.currentThread().interrupt();
+			}
+			List<Message> messages = new ArrayList<Message>(deliveries.size());
+			if (deliveries.isEmpty()) {
+				return messages;
+			}
+			consumer.ack(deliveries);
+			for (Delivery delivery : deliveries) {
+				MessageProperties messageProps = RabbitUtils.createMessageProperties(delivery.getProperties(),
+						delivery.getEnvelope(), "UTF-8");
+				messages.add(new Message(delivery.getBody(), messageProps));
+			}
+			return messages;
+		} catch (Exception ex) {
+			// unacknowledged messages are returned to the queue when the channel is closed
+			if (shared) {
+				removeReceiveConsumer(queueName, consumer);
+			}
+			throw convertRabbitAccessException(ex);
+		} finally {
+			consumer.exit();
+			if (!shared) {
+				consumer.close();
+			}
+		}
+	}
+
+	private Message receiveFromConsumer(String queueName, long timeout) {
+		boolean shared = this.prefetchCount > 0;
+		ReceiveConsumer consumer = shared ? getReceiveConsumer(queueName) : createReceiveConsumer(queueName, 1);
+		consumer.enter();
+		try {
+			Delivery delivery = (timeout < 0) ? consumer.consumer.nextDelivery() : consumer.consumer
+					.nextDelivery(timeout);
+			if (delivery == null) {
 				return null;
 			}
-		});
+			consumer.ack(delivery.getEnvelope().getDeliveryTag());
+			MessageProperties messageProps = RabbitUtils.createMessageProperties(delivery.getProperties(),
+					delivery.getEnvelope(), "UTF-8");
+			return new Message(delivery.getBody(), messageProps);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (Exception ex) {
+			// unacknowledged messages are returned to the queue when the channel is closed
+			if (shared) {
+				removeReceiveConsumer(queueName, consumer);
+			}
+			throw convertRabbitAccessException(ex);
+		} finally {
+			consumer.exit();
+			if (!shared) {
+				consumer.close();
+			}
+		}
+	}
+
+	private ReceiveConsumer getReceiveConsumer(String queueName) {
+		ReceiveConsumer consumer = this.receiveConsumers.get(queueName);
+		if (consumer == null) {
+			synchronized (this.receiveConsumers) {
+				consumer = this.receiveConsumers.get(queueName);
+				if (consumer == null) {
+					consumer = createReceiveConsumer(queueName, Math.max(this.prefetchCount, 1));
+					this.receiveConsumers.put(queueName, consumer);
+				}
+			}
+		}
+		return consumer;
+	}
+
+	private ReceiveConsumer createReceiveConsumer(String queueName, int prefetchCount) {
+		try {
+			return new ReceiveConsumer(queueName, prefetchCount, isChannelTransacted());
+		} catch (IOException ex) {
+			throw convertRabbitAccessException(ex);
+		}
+	}
+
+	private void removeReceiveConsumer(String queueName, ReceiveConsumer consumer) {
+		synchronized (this.receiveConsumers) {
+			if (this.receiveConsumers.get(queueName) == consumer) {
+				this.receiveConsumers.remove(queueName);
+			}
+		}
+		consumer.close();
+	}
+
+	/**
+	 * Close the consumers used by prefetching receive operations, returning buffered messages to their queues, and
+	 * the shared Channel used for group commits.
+	 */
+	public void destroy() {
+		synchronized (this.receiveConsumers) {
+			for (ReceiveConsumer consumer : this.receiveConsumers.values()) {
+				consumer.close();
+			}
+			this.receiveConsumers.clear();
+		}
+		GroupCommitPublisher publisher = this.groupCommitPublisher;
+		if (publisher != null) {
+			publisher.close();
+		}
+		ThreadBoundChannels threadBoundChannels = this.threadBoundChannels;
+		if (threadBoundChannels != null) {
+			threadBoundChannels.close();
+		}
 	}
 
 	public Object receiveAndConvert() throws AmqpException {
@@ -280,6 +557,18 @@ public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
 
 	public <T> T execute(ChannelCallback<T> action) {
 		Assert.notNull(action, "Callback object must not be null");
+		if (this.threadBoundChannelLimit > 0 && !isChannelTransacted() && !isInExistingTransaction()) {
+			ThreadBoundChannels threadBoundChannels = getThreadBoundChannels();
+			BoundChannel boundChannel;
+			try {
+				boundChannel = threadBoundChannels.acquire();
+			} catch (IOException ex) {
+				throw convertRabbitAccessException(ex);
+			}
+			if (boundChannel != null) {
+				return execute(action, threadBoundChannels, boundChannel);
+			}
+		}
 		RabbitResourceHolder resourceHolder = getTransactionalResourceHolder();
 		Channel channel = resourceHolder.getChannel();
 		try {
@@ -297,6 +586,34 @@ public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
 		}
 	}
 
+	private <T> T execute(ChannelCallback<T> action, ThreadBoundChannels threadBoundChannels, BoundChannel boundChannel) {
+		boolean failed = true;
+		try {
+			T result = action.doInRabbit(boundChannel.getChannel());
+			failed = false;
+			return result;
+		} catch (Exception ex) {
+			throw convertRabbitAccessException(ex);
+		} finally {
+			threadBoundChannels.release(boundChannel, failed);
+		}
+	}
+
+	private ThreadBoundChannels getThreadBoundChannels() {
+		ThreadBoundChannels threadBoundChannels = this.threadBoundChannels;
+		if (threadBoundChannels == null) {
+			synchronized (this) {
+				threadBoundChannels = this.threadBoundChannels;
+				if (threadBoundChannels == null) {
+					threadBoundChannels = new ThreadBoundChannels(getConnectionFactory(), this.threadBoundChannelLimit,
+							this.threadBoundChannelIdleTimeout);
+					this.threadBoundChannels = threadBoundChannels;
+				}
+			}
+		}
+		return threadBoundChannels;
+	}
+
 	/**
 	 * Send the given message to the specified exchange.
 	 * 
@@ -332,6 +649,43 @@ public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
 		}
 	}
 
+	private void doGroupCommitSend(String exchange, String routingKey, Message message) {
+		GroupCommitPublisher publisher = this.groupCommitPublisher;
+		if (publisher == null) {
+			synchronized (this) {
+				publisher = this.groupCommitPublisher;
+				if (publisher == null) {
+					publisher = new GroupCommitPublisher(getConnectionFactory());
+					this.groupCommitPublisher = publisher;
+				}
+			}
+		}
+		if (exchange == null) {
+			exchange = this.exchange;
+		}
+		if (routingKey == null) {
+			routingKey = this.routingKey;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Queueing message for group commit on exchange [" + exchange + "], routingKey = ["
+					+ routingKey + "]");
+		}
+		try {
+			publisher.publish(exchange, routingKey, RabbitUtils.extractBasicProperties(message, "UTF-8"),
+					message.getBody());
+		} catch (Exception ex) {
+			throw convertRabbitAccessException(ex);
+		}
+	}
+
+	/**
+	 * Check whether Rabbit resources are bound to the current thread, i.e. whether operations of this template
+	 * participate in an existing transaction.
+	 */
+	private boolean isInExistingTransaction() {
+		return TransactionSynchronizationManager.hasResource(getConnectionFactory());
+	}
+
 	/**
 	 * Check whether the given Channel is locally transacted, that is, whether its transaction is managed by this
 	 * template's Channel handling and not by an external transaction coordinator.
@@ -362,4 +716,106 @@ public class RabbitTemplate extends RabbitAccessor implements RabbitOperations {
 		return name;
 	}
 
+
+	/**
+	 * A consumer with its own Channel, buffering up to the prefetch count of messages from one queue.
+	 */
+	private class ReceiveConsumer {
+
+		private final Connection connection;
+
+		private final BlockingQueueConsumer consumer;
+
+		private final boolean transactional;
+
+		// callers between taking deliveries from the buffer and acking them
+		private final AtomicInteger receivers = new AtomicInteger();
+
+		ReceiveConsumer(String queueName, int prefetchCount, boolean transactional) throws IOException {
+			this.transactional = transactional;
+			this.connection = getConnectionFactory().createConnection();
+			Channel channel = null;
+			try {
+				channel = this.connection.createChannel(transactional);
+				if (transactional) {
+					channel.txSelect();
+				}
+				channel.basicQos(prefetchCount);
+				// the buffer is bounded by the prefetch
+				this.consumer = new BlockingQueueConsumer(channel);
+				channel.basicConsume(queueName, false, this.consumer);
+			} catch (IOException ex) {
+				RabbitUtils.closeChannel(channel);
+				ConnectionFactoryUtils.releaseConnection(this.connection);
+				throw ex;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Started prefetching consumer for queue [" + queueName + "] on RabbitMQ Channel: "
+						+ channel);
+			}
+		}
+
+		void enter() {
+			this.receivers.incrementAndGet();
+		}
+
+		void exit() {
+			this.receivers.decrementAndGet();
+		}
+
+		void ack(long deliveryTag) throws IOException {
+			Channel channel = this.consumer.getChannel();
+			if (this.transactional) {
+				// keep concurrent receivers from committing each other's acks half way
+				synchronized (this) {
+					channel.basicAck(deliveryTag, false);
+					channel.txCommit();
+				}
+			} else {
+				channel.basicAck(deliveryTag, false);
+			}
+		}
+
+		void ack(List<Delivery> deliveries) throws IOException {
+			Channel channel = this.consumer.getChannel();
+			if (this.transactional) {
+				synchronized (this) {
+					doAck(channel, deliveries);
+					channel.txCommit();
+				}
+			} else {
+				doAck(channel, deliveries);
+			}
+		}
+
+		private void doAck(Channel channel, List<Delivery> deliveries) throws IOException {
+			if (this.receivers.get() == 1) {
+				/*
+				 * The buffer hands out deliveries in tag order, so with no other receiver holding unacked deliveries
+				 * every smaller tag has been acked already.
+				 */
+				channel.basicAck(deliveries.get(deliveries.size() - 1).getEnvelope().getDeliveryTag(), true);
+			} else {
+				for (Delivery delivery : deliveries) {
+					channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+				}
+			}
+		}
+
+		void close() {
+			Channel channel = this.consumer.getChannel();
+			if (channel.isOpen()) {
+				try {
+					channel.basicCancel(this.consumer.getConsumerTag());
+					// return buffered messages (the Channel may only go back to a cache rather than close)
+					channel.basicRecover(true);
+				} catch (Exception ex) {
+					logger.debug("Error cancelling prefetching consumer", ex);
+				}
+			}
+			RabbitUtils.closeChannel(channel);
+			ConnectionFactoryUtils.releaseConnection(this.connection);
+		}
+	}
+
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.core;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactoryUtils;
+import org.springframework.amqp.rabbit.support.RabbitUtils;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * Keeps a Channel pinned to each thread that executes template operations, so that repeated operations on the same
+ * thread neither take the Channel from the connection factory's cache nor return it. Acquiring the pinned Channel
+ * is a thread-local read and an uncontended state change. The number of pinned Channels is limited; threads beyond
+ * the limit (and nested operations on a thread whose Channel is already in use) get <code>null</code> and are
+ * expected to use the regular Channel handling. Channels that have not been used for a whole idle interval, e.g.
+ * because their thread has finished, are closed by a background reaper.
+ * 
+ * @author agent
+ * @see RabbitTemplate#setThreadBoundChannelLimit(int)
+ */
+class ThreadBoundChannels {
+
+	private static final Log logger = LogFactory.getLog(ThreadBoundChannels.class);
+
+	private static final int IDLE = 0;
+
+	private static final int IN_USE = 1;
+
+	private static final int CLOSED = 2;
+
+	private final ConnectionFactory connectionFactory;
+
+	private final int limit;
+
+	private final ThreadLocal<BoundChannel> boundChannels = new ThreadLocal<BoundChannel>();
+
+	private final Map<BoundChannel, Boolean> allChannels = new ConcurrentHashMap<BoundChannel, Boolean>();
+
+	private final AtomicInteger count = new AtomicInteger();
+
+	private final ScheduledExecutorService reaper;
+
+	private volatile boolean closed;
+
+
+	ThreadBoundChannels(ConnectionFactory connectionFactory, int limit, long idleTimeout) {
+		this.connectionFactory = connectionFactory;
+		this.limit = limit;
+		this.reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "RabbitTemplate-channel-reaper");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.reaper.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				reapIdleChannels();
+			}
+		}, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Mark the Channel of the current thread as in use, opening one if the thread has none yet.
+	 * @return the Channel, which must be {@link #release(BoundChannel, boolean) released} after use, or
+	 * <code>null</code> if the calling thread cannot have a pinned Channel right now
+	 */
+	BoundChannel acquire() throws IOException {
+		BoundChannel bound = this.boundChannels.get();
+		if (bound != null) {
+			if (bound.state.compareAndSet(IDLE, IN_USE)) {
+				if (!bound.used) {
+					bound.used = true;
+				}
+				return bound;
+			}
+			if (bound.state.get() == IN_USE) {
+				// nested operation
+				return null;
+			}
+			// reaped
+			this.boundChannels.remove();
+		}
+		if (this.closed) {
+			return null;
+		}
+		if (this.count.incrementAndGet() > this.limit) {
+			this.count.decrementAndGet();
+			return null;
+		}
+		Connection connection = null;
+		try {
+			connection = this.connectionFactory.createConnection();
+			bound = new BoundChannel(connection, connection.createChannel(false));
+		} catch (IOException ex) {
+			this.count.decrementAndGet();
+			ConnectionFactoryUtils.releaseConnection(connection);
+			throw ex;
+		} catch (RuntimeException ex) {
+			this.count.decrementAndGet();
+			ConnectionFactoryUtils.releaseConnection(connection);
+			throw ex;
+		}
+		this.allChannels.put(bound, Boolean.TRUE);
+		this.boundChannels.set(bound);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Bound RabbitMQ Channel " + bound.channel + " to thread " + Thread.currentThread().getName());
+		}
+		return bound;
+	}
+
+	/**
+	 * Make the Channel available for the next operation of its thread.
+	 * @param failed whether the operation failed, in which case the Channel is discarded unless it is still open
+	 */
+	void release(BoundChannel bound, boolean failed) {
+		if (this.closed || (failed && !bound.channel.isOpen())) {
+			this.boundChannels.remove();
+			discard(bound);
+		} else {
+			bound.state.set(IDLE);
+		}
+	}
+
+	/**
+	 * Close all Channels that are not in use, and the others as soon as they are released.
+	 */
+	void close() {
+		this.closed = true;
+		this.reaper.shutdownNow();
+		for (BoundChannel bound : this.allChannels.keySet()) {
+			if (bound.state.compareAndSet(IDLE, CLOSED)) {
+				discard(bound);
+			}
+		}
+	}
+
+	int size() {
+		return this.count.get();
+	}
+
+	private void reapIdleChannels() {
+		for (BoundChannel bound : this.allChannels.keySet()) {
+			if (bound.used) {
+				// check again at the end of the next interval
+				bound.used = false;
+			} else if (bound.state.compareAndSet(IDLE, CLOSED)) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Closing idle thread-bound RabbitMQ Channel: " + bound.channel);
+				}
+				discard(bound);
+			}
+		}
+	}
+
+	private void discard(BoundChannel bound) {
+		bound.state.set(CLOSED);
+		if (this.allChannels.remove(bound) != null) {
+			this.count.decrementAndGet();
+			RabbitUtils.closeChannel(bound.channel);
+			ConnectionFactoryUtils.releaseConnection(bound.connection);
+		}
+	}
+
+
+	static class BoundChannel {
+
+		private final Connection connection;
+
+		private final Channel channel;
+
+		private final AtomicInteger state = new AtomicInteger(IN_USE);
+
+		// set by the owning thread, cleared by the reaper
+		private volatile boolean used = true;
+
+		BoundChannel(Connection connection, Channel channel) {
+			this.connection = connection;
+			this.channel = channel;
+		}
+
+		Channel getChannel() {
+			return this.channel;
+		}
+	}
+
+}
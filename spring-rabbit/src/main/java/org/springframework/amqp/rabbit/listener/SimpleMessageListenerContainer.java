@@ -273,19 +273,39 @@ public class SimpleMessageListenerContainer extends AbstractMessageListenerConta
 
 		private SimpleMessageListenerContainer messageListenerContainer;
 
-		private PlatformTransactionManager transactionManager;
-
-		private DefaultTransactionDefinition transactionDefinition;
+		private TransactionTemplate transactionTemplate;
 
 		private long receiveTimeout;
 
+		private RabbitResourceHolder resourceHolder;
+
+		private final TransactionCallback<Void> transactionCallback = new TransactionCallback<Void>() {
+			public Void doInTransaction(TransactionStatus status) {
+				try {
+					receiveAndExecute();
+				} catch (ListenerExecutionFailedException ex) {
+					// These are expected
+					throw ex;
+				} catch (Exception ex) {
+					throw new AmqpException("Unexpected exception on listener execution", ex);
+				} catch (Error err) {
+					throw err;
+				} catch (Throwable t) {
+					throw new AmqpException(t);
+				}
+				return null;
+			}
+		};
+
 		public AsyncMessageProcessingConsumer(BlockingQueueConsumer q, int txSize,
 				SimpleMessageListenerContainer messageListenerContainer) {
 			this.queue = q;
 			this.txSize = txSize;
 			this.messageListenerContainer = messageListenerContainer;
-			this.transactionManager = messageListenerContainer.transactionManager;
-			this.transactionDefinition = messageListenerContainer.transactionDefinition;
+			if (messageListenerContainer.transactionManager != null) {
+				this.transactionTemplate = new TransactionTemplate(messageListenerContainer.transactionManager,
+						messageListenerContainer.transactionDefinition);
+			}
 			this.receiveTimeout = messageListenerContainer.receiveTimeout;
 		}
 
@@ -300,7 +320,7 @@ public class SimpleMessageListenerContainer extends AbstractMessageListenerConta
 			try {
 				while (isRunning()) {
 					try {
-						if (this.transactionManager != null) {
+						if (this.transactionTemplate != null) {
 							// Execute within transaction.
 							transactionalReceiveAndExecute();
 						} else {
@@ -327,24 +347,7 @@ public class SimpleMessageListenerContainer extends AbstractMessageListenerConta
 
 		private void transactionalReceiveAndExecute() throws Exception {
 			try {
-				new TransactionTemplate(this.transactionManager, this.transactionDefinition)
-						.execute(new TransactionCallback<Void>() {
-							public Void doInTransaction(TransactionStatus status) {
-								try {
-									receiveAndExecute();
-								} catch (ListenerExecutionFailedException ex) {
-									// These are expected
-									throw ex;
-								} catch (Exception ex) {
-									throw new AmqpException("Unexpected exception on listener execution", ex);
-								} catch (Error err) {
-									throw err;
-								} catch (Throwable t) {
-									throw new AmqpException(t);
-								}
-								return null;
-							}
-						});
+				this.transactionTemplate.execute(this.transactionCallback);
 			} catch (Exception ex) {
 				throw ex;
 			} catch (Error err) {
@@ -361,8 +364,12 @@ public class SimpleMessageListenerContainer extends AbstractMessageListenerConta
 			int totalMsgCount = 0;
 
 			ConnectionFactory connectionFactory = messageListenerContainer.getConnectionFactory();
-			ConnectionFactoryUtils
-					.bindResourceToTransaction(new RabbitResourceHolder(channel), connectionFactory, true);
+			// The holder is only bound if there is an active transaction without Rabbit resources; it can be
+			// reused until it has been unbound at the end of such a transaction
+			if (this.resourceHolder == null || this.resourceHolder.isVoid()) {
+				this.resourceHolder = new RabbitResourceHolder(channel);
+			}
+			ConnectionFactoryUtils.bindResourceToTransaction(this.resourceHolder, connectionFactory, true);
 
 			for (int i = 0; i < txSize; i++) {
 				logger.debug("Receiving message from consumer.");
@@ -18,7 +18,10 @@ package org.springframework.amqp.rabbit.listener.adapter;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,6 +33,9 @@ import org.springframework.amqp.core.Address;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageListener;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactoryUtils;
 import org.springframework.amqp.rabbit.core.ChannelAwareMessageListener;
 import org.springframework.amqp.rabbit.support.RabbitUtils;
 import org.springframework.amqp.support.converter.MessageConversionException;
@@ -38,6 +44,7 @@ import org.springframework.amqp.support.converter.SimpleMessageConverter;
 import org.springframework.util.Assert;
 import org.springframework.util.MethodInvoker;
 import org.springframework.util.ObjectUtils;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 
 import com.rabbitmq.client.Channel;
@@ -112,10 +119,18 @@ import com.rabbitmq.client.Channel;
  *    String handleMessage(String text);
  * }</pre>
  *
+ * A listener method may also return a {@link ReplyFuture}, in which case the
+ * response message is sent when the future is completed, without blocking the
+ * consumer thread until then. The response is then published on a Channel of its
+ * own, obtained from the {@link #setConnectionFactory(ConnectionFactory) ConnectionFactory}.
+ *
  * For further examples and discussion please do refer to the Spring
  * reference documentation which describes this class (and its attendant
  * XML configuration) in detail.
  *
+ * <p>The target method is resolved once per delegate class, method name and
+ * argument types, and cached for subsequent messages.
+ *
  * @author Juergen Hoeller
  * @author Mark Pollack
  * @author Mark Fisher
@@ -137,6 +152,8 @@ public class MessageListenerAdapter	implements MessageListener, ChannelAwareMess
 
 	private static final String DEFAULT_RESPONSE_ROUTING_KEY = "";
 
+	private static final int LISTENER_METHOD_CACHE_LIMIT = 256;
+
 
 	// TODO configure defaults
 	// void basicQos(int prefetchSize, int prefetchCount, boolean global)
@@ -158,6 +175,10 @@ public class MessageListenerAdapter	implements MessageListener, ChannelAwareMess
 
 	private MessageConverter messageConverter;
 
+	private volatile ConnectionFactory connectionFactory;
+
+	private final ConcurrentMap<ListenerMethodKey, Method> listenerMethodCache = new ConcurrentHashMap<ListenerMethodKey, Method>();
+
 
 	/**
 	 * Create a new {@link MessageListenerAdapter} with default settings.
@@ -267,6 +288,16 @@ public class MessageListenerAdapter	implements MessageListener, ChannelAwareMess
 		return this.messageConverter;
 	}
 
+	/**
+	 * Set the ConnectionFactory used to send the response to a listener method that returns a
+	 * {@link ReplyFuture}. The future is completed on another thread, so the response cannot be
+	 * published on the consumer's Channel; a Channel is created for each such response instead.
+	 * Required only for asynchronous replies.
+	 */
+	public void setConnectionFactory(ConnectionFactory connectionFactory) {
+		this.connectionFactory = connectionFactory;
+	}
+
 	public void setMandatoryPublish(boolean mandatoryPublish) {
 		this.mandatoryPublish = mandatoryPublish;
 	}
@@ -340,7 +371,10 @@ public class MessageListenerAdapter	implements MessageListener, ChannelAwareMess
 		// Invoke the handler method with appropriate arguments.
 		Object[] listenerArguments = buildListenerArguments(convertedMessage);
 		Object result = invokeListenerMethod(methodName, listenerArguments);
-		if (result != null) {
+		if (result instanceof ReplyFuture<?>) {
+			handleAsyncResult((ReplyFuture<?>) result, methodName, message);
+		}
+		else if (result != null) {
 			handleResult(result, message, channel);
 		}
 		else {
@@ -432,12 +466,8 @@ public class MessageListenerAdapter	implements MessageListener, ChannelAwareMess
 	 */
 	protected Object invokeListenerMethod(String methodName, Object[] arguments) throws Exception {
 		try {
-			MethodInvoker methodInvoker = new MethodInvoker();
-			methodInvoker.setTargetObject(getDelegate());
-			methodInvoker.setTargetMethod(methodName);
-			methodInvoker.setArguments(arguments);
-			methodInvoker.prepare();
-			return methodInvoker.invoke();
+			Object delegate = getDelegate();
+			return getListenerMethod(delegate, methodName, arguments).invoke(delegate, arguments);
 		}
 		catch (InvocationTargetException ex) {
 			Throwable targetEx = ex.getTargetException();
@@ -462,6 +492,37 @@ public class MessageListenerAdapter	implements MessageListener, ChannelAwareMess
 		}
 	}
 
+	/**
+	 * Resolve the listener method for the given arguments, using the same rules as a
+	 * {@link MethodInvoker} (exact public signature first, then the closest match by type
+	 * difference weight). The result is cached per delegate class, method name and argument
+	 * types, so the reflective search only happens for the first message of each type.
+	 * <p>Can be overridden to select the method by other criteria.
+	 * @param delegate the target object
+	 * @param methodName the name of the listener method
+	 * @param arguments the message arguments to be passed in
+	 * @return the method to invoke on the delegate (accessible, never <code>null</code>)
+	 * @throws Exception if no matching method can be found
+	 */
+	protected Method getListenerMethod(Object delegate, String methodName, Object[] arguments) throws Exception {
+		ListenerMethodKey key = new ListenerMethodKey(delegate.getClass(), methodName, arguments);
+		Method method = this.listenerMethodCache.get(key);
+		if (method == null) {
+			MethodInvoker methodInvoker = new MethodInvoker();
+			methodInvoker.setTargetObject(delegate);
+			methodInvoker.setTargetMethod(methodName);
+			methodInvoker.setArguments(arguments);
+			methodInvoker.prepare();
+			method = methodInvoker.getPreparedMethod();
+			ReflectionUtils.makeAccessible(method);
+			if (this.listenerMethodCache.size() >= LISTENER_METHOD_CACHE_LIMIT) {
+				this.listenerMethodCache.clear();
+			}
+			this.listenerMethodCache.put(key, method);
+		}
+		return method;
+	}
+
 
 	/**
 	 * Handle the given result object returned from the listener method,
@@ -492,6 +553,53 @@ public class MessageListenerAdapter	implements MessageListener, ChannelAwareMess
 		}
 	}
 
+	/**
+	 * Handle a {@link ReplyFuture} returned from the listener method: when the future is completed
+	 * the reply is sent through {@link #handleResult(Object, Message, Channel)} on a new Channel
+	 * from the {@link #setConnectionFactory(ConnectionFactory) ConnectionFactory}, and a failure is
+	 * passed to {@link #handleListenerException(Throwable)}.
+	 * <p>The consumer's Channel is not used: the future is usually completed on another thread,
+	 * and Channels must not be shared between threads. The reply is therefore not part of any
+	 * transaction of the listener container.
+	 * @param future the future returned from the listener method
+	 * @param methodName the name of the listener method
+	 * @param request the original request message
+	 * @throws AmqpIllegalStateException if no ConnectionFactory has been set
+	 */
+	protected void handleAsyncResult(ReplyFuture<?> future, final String methodName, final Message request) {
+		final ConnectionFactory connectionFactory = this.connectionFactory;
+		if (connectionFactory == null) {
+			throw new AmqpIllegalStateException("Listener method '" + methodName +
+					"' returned a ReplyFuture, but no ConnectionFactory has been set to send the reply with");
+		}
+		future.addCallback(new ReplyCallback<Object>() {
+			public void onSuccess(Object result) {
+				if (result == null) {
+					logger.trace("No result object given - no result to handle");
+					return;
+				}
+				Connection connection = null;
+				Channel channel = null;
+				try {
+					connection = connectionFactory.createConnection();
+					channel = connection.createChannel(false);
+					handleResult(result, request, channel);
+				}
+				catch (Throwable ex) {
+					handleListenerException(ex);
+				}
+				finally {
+					RabbitUtils.closeChannel(channel);
+					ConnectionFactoryUtils.releaseConnection(connection);
+				}
+			}
+			public void onFailure(Throwable ex) {
+				handleListenerException(new ListenerExecutionFailedException(
+						"Listener method '" + methodName + "' failed to produce a reply", ex));
+			}
+		});
+	}
+
 	protected String getReceivedExchange(Message request) {
 		return request.getMessageProperties().getReceivedExchange();
 	}
@@ -601,4 +709,60 @@ public class MessageListenerAdapter	implements MessageListener, ChannelAwareMess
 	protected void postProcessChannel(Channel channel, Message response) throws Exception {
 	}
 
+
+	/**
+	 * Cache key for a resolved listener method. Argument types are compared by identity, with
+	 * <code>null</code> for a <code>null</code> argument (which cannot match a primitive parameter).
+	 */
+	private static final class ListenerMethodKey {
+
+		private final Class<?> targetClass;
+
+		private final String methodName;
+
+		private final Class<?>[] argumentTypes;
+
+		private final int hashCode;
+
+		ListenerMethodKey(Class<?> targetClass, String methodName, Object[] arguments) {
+			this.targetClass = targetClass;
+			this.methodName = methodName;
+			int length = (arguments != null) ? arguments.length : 0;
+			this.argumentTypes = new Class<?>[length];
+			int hash = 31 * targetClass.hashCode() + methodName.hashCode();
+			for (int i = 0; i < length; i++) {
+				Class<?> type = (arguments[i] != null) ? arguments[i].getClass() : null;
+				this.argumentTypes[i] = type;
+				hash = 31 * hash + ObjectUtils.nullSafeHashCode(type);
+			}
+			this.hashCode = hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof ListenerMethodKey)) {
+				return false;
+			}
+			ListenerMethodKey otherKey = (ListenerMethodKey) other;
+			if (this.targetClass != otherKey.targetClass || !this.methodName.equals(otherKey.methodName)
+					|| this.argumentTypes.length != otherKey.argumentTypes.length) {
+				return false;
+			}
+			for (int i = 0; i < this.argumentTypes.length; i++) {
+				if (this.argumentTypes[i] != otherKey.argumentTypes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
 }
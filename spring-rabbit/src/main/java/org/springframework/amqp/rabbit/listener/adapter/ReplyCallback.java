@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.amqp.rabbit.listener.adapter;
+
+/**
+ * Callback notified when a {@link ReplyFuture} completes.
+ *
+ * @author agent
+ * @see ReplyFuture#addCallback(ReplyCallback)
+ */
+public interface ReplyCallback<T> {
+
+	/**
+	 * Called when the reply has been {@link ReplyFuture#set(Object) set}.
+	 * @param result the reply (may be <code>null</code>)
+	 */
+	void onSuccess(T result);
+
+	/**
+	 * Called when the reply has {@link ReplyFuture#setException(Throwable) failed}.
+	 * @param ex the cause of the failure
+	 */
+	void onFailure(Throwable ex);
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.amqp.rabbit.listener.adapter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Future} for the result of a listener method that completes asynchronously. A listener
+ * method invoked by a {@link MessageListenerAdapter} can return a <code>ReplyFuture</code> and
+ * complete it later from any thread, typically a callback of a downstream service, with
+ * {@link #set(Object)} or {@link #setException(Throwable)}. The adapter then sends the reply without
+ * holding on to the consumer thread in the meantime.
+ * <p>
+ * Callbacks are invoked on the thread that completes the future, or immediately on the registering
+ * thread if it has already completed.
+ *
+ * @author agent
+ * @see MessageListenerAdapter
+ */
+public class ReplyFuture<T> implements Future<T> {
+
+	private final Object monitor = new Object();
+
+	private List<ReplyCallback<? super T>> callbacks = new ArrayList<ReplyCallback<? super T>>();
+
+	private boolean done;
+
+	private boolean cancelled;
+
+	private T result;
+
+	private Throwable failure;
+
+
+	/**
+	 * Complete the future with the given result.
+	 * @param result the result (may be <code>null</code> for no reply)
+	 * @return <code>true</code> if the future was completed by this call, <code>false</code> if it was
+	 * already complete
+	 */
+	public boolean set(T result) {
+		return complete(result, null, false);
+	}
+
+	/**
+	 * Complete the future with a failure.
+	 * @param ex the cause of the failure
+	 * @return <code>true</code> if the future was completed by this call, <code>false</code> if it was
+	 * already complete
+	 */
+	public boolean setException(Throwable ex) {
+		Assert.notNull(ex, "exception must not be null");
+		return complete(null, ex, false);
+	}
+
+	/**
+	 * Register a callback to be notified when the future completes. If it has completed already
+	 * the callback is invoked immediately.
+	 */
+	public void addCallback(ReplyCallback<? super T> callback) {
+		Assert.notNull(callback, "callback must not be null");
+		synchronized (this.monitor) {
+			if (!this.done) {
+				this.callbacks.add(callback);
+				return;
+			}
+		}
+		if (this.failure != null) {
+			callback.onFailure(this.failure);
+		}
+		else {
+			callback.onSuccess(this.result);
+		}
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return complete(null, new CancellationException("ReplyFuture was cancelled"), true);
+	}
+
+	public boolean isCancelled() {
+		synchronized (this.monitor) {
+			return this.cancelled;
+		}
+	}
+
+	public boolean isDone() {
+		synchronized (this.monitor) {
+			return this.done;
+		}
+	}
+
+	public T get() throws InterruptedException, ExecutionException {
+		synchronized (this.monitor) {
+			while (!this.done) {
+				this.monitor.wait();
+			}
+			return getResult();
+		}
+	}
+
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (this.monitor) {
+			while (!this.done) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					throw new TimeoutException();
+				}
+				TimeUnit.NANOSECONDS.timedWait(this.monitor, remaining);
+			}
+			return getResult();
+		}
+	}
+
+	private boolean complete(T result, Throwable failure, boolean cancelled) {
+		List<ReplyCallback<? super T>> callbacks;
+		synchronized (this.monitor) {
+			if (this.done) {
+				return false;
+			}
+			this.result = result;
+			this.failure = failure;
+			this.cancelled = cancelled;
+			this.done = true;
+			this.monitor.notifyAll();
+			callbacks = this.callbacks;
+			this.callbacks = null;
+		}
+		for (ReplyCallback<? super T> callback : callbacks) {
+			if (failure != null) {
+				callback.onFailure(failure);
+			}
+			else {
+				callback.onSuccess(result);
+			}
+		}
+		return true;
+	}
+
+	private T getResult() throws ExecutionException {
+		if (this.cancelled) {
+			throw (CancellationException) this.failure;
+		}
+		if (this.failure != null) {
+			throw new ExecutionException(this.failure);
+		}
+		return this.result;
+	}
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.listener.adapter;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.ReflectionUtils.MethodCallback;
+
+/**
+ * {@link MessageListenerAdapter} that routes each message to a delegate method according to the
+ * type of the converted payload, so that a single delegate can handle several payload types
+ * without <code>instanceof</code> checks:
+ *
+ * <pre class="code">public class OrderHandler {
+ *    &#064;MessageHandler
+ *    public void handle(NewOrder order) { ... }
+ *    &#064;MessageHandler
+ *    public Receipt handle(Payment payment) { ... }
+ * }</pre>
+ *
+ * The delegate is scanned for {@link MessageHandler} methods once, and the handler for each
+ * payload class is looked up once and then cached. The most specific handler wins: the payload
+ * class and its superclasses are checked first, then its interfaces, and finally a handler for
+ * <code>Object</code>. Payloads without a matching handler (and delegates without any
+ * annotated methods) fall back to the {@link #setDefaultListenerMethod default listener method}.
+ *
+ * @author agent
+ * @see MessageHandler
+ */
+public class TypeDispatchingMessageListenerAdapter extends MessageListenerAdapter {
+
+	private static final int HANDLER_CACHE_LIMIT = 256;
+
+
+	private volatile DispatchTable dispatchTable;
+
+
+	/**
+	 * Create a new {@link TypeDispatchingMessageListenerAdapter} with default settings.
+	 */
+	public TypeDispatchingMessageListenerAdapter() {
+		super();
+	}
+
+	/**
+	 * Create a new {@link TypeDispatchingMessageListenerAdapter} for the given delegate.
+	 * @param delegate the delegate object
+	 */
+	public TypeDispatchingMessageListenerAdapter(Object delegate) {
+		super(delegate);
+	}
+
+	/**
+	 * Create a new {@link TypeDispatchingMessageListenerAdapter} for the given delegate.
+	 * @param delegate the delegate object
+	 * @param messageConverter the message converter to use
+	 */
+	public TypeDispatchingMessageListenerAdapter(Object delegate, MessageConverter messageConverter) {
+		super(delegate, messageConverter);
+	}
+
+
+	@Override
+	protected Method getListenerMethod(Object delegate, String methodName, Object[] arguments) throws Exception {
+		if (arguments != null && arguments.length == 1 && arguments[0] != null) {
+			Method method = getDispatchTable(delegate.getClass()).getHandler(arguments[0].getClass());
+			if (method != null) {
+				return method;
+			}
+		}
+		return super.getListenerMethod(delegate, methodName, arguments);
+	}
+
+	private DispatchTable getDispatchTable(Class<?> delegateClass) {
+		DispatchTable dispatchTable = this.dispatchTable;
+		if (dispatchTable == null || dispatchTable.delegateClass != delegateClass) {
+			dispatchTable = new DispatchTable(delegateClass);
+			this.dispatchTable = dispatchTable;
+		}
+		return dispatchTable;
+	}
+
+
+	/**
+	 * The {@link MessageHandler} methods of one delegate class, indexed by parameter type, plus a
+	 * cache of the handler resolved for each payload class.
+	 */
+	private static class DispatchTable {
+
+		private final Class<?> delegateClass;
+
+		private final Map<Class<?>, Method> handlers = new HashMap<Class<?>, Method>();
+
+		private final ConcurrentMap<Class<?>, HandlerMethod> resolvedHandlers = new ConcurrentHashMap<Class<?>, HandlerMethod>();
+
+		DispatchTable(Class<?> delegateClass) {
+			this.delegateClass = delegateClass;
+			// subclass methods are visited before the superclass methods they override
+			ReflectionUtils.doWithMethods(delegateClass, new MethodCallback() {
+				public void doWith(Method method) {
+					if (method.isBridge() || method.getAnnotation(MessageHandler.class) == null) {
+						return;
+					}
+					Class<?>[] parameterTypes = method.getParameterTypes();
+					if (parameterTypes.length != 1) {
+						throw new IllegalStateException("@MessageHandler method must have exactly one parameter: "
+								+ method);
+					}
+					Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(parameterTypes[0]);
+					Method existing = handlers.get(type);
+					if (existing == null) {
+						ReflectionUtils.makeAccessible(method);
+						handlers.put(type, method);
+					}
+					else if (existing.getDeclaringClass() == method.getDeclaringClass()) {
+						throw new IllegalStateException("Ambiguous @MessageHandler methods for payload type ["
+								+ type.getName() + "]: " + existing + " and " + method);
+					}
+				}
+			});
+		}
+
+		Method getHandler(Class<?> payloadClass) {
+			if (this.handlers.isEmpty()) {
+				return null;
+			}
+			HandlerMethod handler = this.resolvedHandlers.get(payloadClass);
+			if (handler == null) {
+				handler = new HandlerMethod(findHandler(payloadClass));
+				if (this.resolvedHandlers.size() >= HANDLER_CACHE_LIMIT) {
+					this.resolvedHandlers.clear();
+				}
+				this.resolvedHandlers.put(payloadClass, handler);
+			}
+			return handler.method;
+		}
+
+		private Method findHandler(Class<?> payloadClass) {
+			Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+			for (Class<?> type = payloadClass; type != null && type != Object.class; type = type.getSuperclass()) {
+				Method method = this.handlers.get(type);
+				if (method != null) {
+					return method;
+				}
+				for (Class<?> ifc : type.getInterfaces()) {
+					interfaces.add(ifc);
+				}
+			}
+			// breadth first, so that directly implemented interfaces win over inherited ones
+			while (!interfaces.isEmpty()) {
+				Set<Class<?>> superInterfaces = new LinkedHashSet<Class<?>>();
+				for (Class<?> ifc : interfaces) {
+					Method method = this.handlers.get(ifc);
+					if (method != null) {
+						return method;
+					}
+					for (Class<?> superIfc : ifc.getInterfaces()) {
+						superInterfaces.add(superIfc);
+					}
+				}
+				interfaces = superInterfaces;
+			}
+			return this.handlers.get(Object.class);
+		}
+	}
+
+
+	/**
+	 * Cache entry for a payload class; the method is <code>null</code> if there is no handler.
+	 */
+	private static class HandlerMethod {
+
+		private final Method method;
+
+		HandlerMethod(Method method) {
+			this.method = method;
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.admin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.amqp.rabbit.admin.RabbitControlErlangConverter.QueueInfoField;
+
+/**
+ * @author agent
+ */
+public class QueueStatisticsPollerTests {
+
+	private final Map<String, Long> depths = new LinkedHashMap<String, Long>();
+
+	private RabbitBrokerOperations brokerOperations;
+
+	@Before
+	public void setUp() {
+		brokerOperations = mock(RabbitBrokerOperations.class);
+		doAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				QueueInfoCallback callback = (QueueInfoCallback) invocation.getArguments()[2];
+				for (Map.Entry<String, Long> entry : depths.entrySet()) {
+					QueueInfo queueInfo = new QueueInfo();
+					queueInfo.setName(entry.getKey());
+					queueInfo.setMessages(entry.getValue());
+					callback.doWithQueueInfo(queueInfo);
+				}
+				return null;
+			}
+		}).when(brokerOperations).doWithQueues(eq("/"), anySetOf(QueueInfoField.class), any(QueueInfoCallback.class));
+	}
+
+	@Test
+	public void depthChange() throws Exception {
+		QueueStatisticsPoller poller = new QueueStatisticsPoller(brokerOperations);
+		assertEquals(0, poller.getSnapshot().getTimestamp());
+		depths.put("foo", 10L);
+		QueueStatisticsSnapshot first = poller.refresh();
+		assertEquals(10, first.getQueue("foo").getMessages());
+		assertEquals(0, first.getQueue("foo").getDepthChange());
+		Thread.sleep(20);
+		depths.put("foo", 4L);
+		depths.put("bar", 1L);
+		QueueStatisticsSnapshot second = poller.refresh();
+		assertEquals(-6, second.getQueue("foo").getDepthChange());
+		assertTrue(second.getQueue("foo").getDepthRate() < 0);
+		assertEquals(0, second.getQueue("bar").getDepthChange());
+		assertEquals(second, poller.getSnapshot());
+		// earlier snapshots are unaffected
+		assertEquals(10, first.getQueue("foo").getMessages());
+		assertNull(first.getQueue("bar"));
+	}
+
+	@Test
+	public void depthThresholds() {
+		final List<String> crossings = new ArrayList<String>();
+		QueueStatisticsPoller poller = new QueueStatisticsPoller(brokerOperations);
+		poller.setDepthThresholds(new long[] { 100, 10 });
+		poller.addQueueDepthListener(new QueueDepthListener() {
+			public void onDepthThresholdCrossed(QueueStatistics queue, long threshold, boolean rising) {
+				crossings.add(queue.getName() + (rising ? ">=" : "<") + threshold);
+			}
+		});
+		depths.put("foo", 50L);
+		poller.refresh();
+		assertEquals("[foo>=10]", crossings.toString());
+		crossings.clear();
+		depths.put("foo", 60L);
+		poller.refresh();
+		assertTrue(crossings.isEmpty());
+		depths.put("foo", 150L);
+		poller.refresh();
+		assertEquals("[foo>=100]", crossings.toString());
+		crossings.clear();
+		depths.put("foo", 5L);
+		poller.refresh();
+		assertEquals("[foo<10, foo<100]", crossings.toString());
+	}
+
+	@Test
+	public void scheduledPolling() throws Exception {
+		depths.put("foo", 3L);
+		QueueStatisticsPoller poller = new QueueStatisticsPoller(brokerOperations);
+		poller.setPollInterval(10);
+		poller.start();
+		try {
+			assertTrue(poller.isRunning());
+			for (int i = 0; i < 100 && poller.getSnapshot().getTimestamp() == 0; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(3, poller.getSnapshot().getQueue("foo").getMessages());
+		}
+		finally {
+			poller.stop();
+		}
+		assertFalse(poller.isRunning());
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.admin;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.erlang.connection.Connection;
+import org.springframework.erlang.connection.ConnectionFactory;
+import org.springframework.erlang.core.Application;
+import org.springframework.erlang.core.Node;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+
+/**
+ * Tests for waiting on the broker state, with the status of the broker simulated rather than queried.
+ * 
+ * @author agent
+ */
+public class RabbitBrokerAdminTests {
+
+	private final StubRabbitBrokerAdmin admin = new StubRabbitBrokerAdmin();
+
+
+	@After
+	public void close() throws Exception {
+		if (this.admin.serverSocket != null) {
+			this.admin.serverSocket.close();
+		}
+		this.admin.destroy();
+	}
+
+	@Test
+	public void readyDetectedWhenPortOpens() throws Exception {
+		this.admin.port = findFreePort();
+		this.admin.setPort(this.admin.port);
+		this.admin.setStartupTimeout(10000);
+		// the status checks back off to 50, 150, 350 and 750 ms, so the broker is up with the next one 800 ms away
+		this.admin.openPortAfter = 700;
+		this.admin.startBrokerApplication();
+		long detected = System.currentTimeMillis();
+		assertTrue("Broker not ready", this.admin.getStatus().isReady());
+		long latency = detected - this.admin.readyTime;
+		assertTrue("Ready state detected after " + latency + "ms", latency < 500);
+		verify(this.admin.connection).sendRPC(eq("rabbit"), eq("start"), any(OtpErlangList.class));
+		assertFalse(this.admin.stopped);
+	}
+
+	@Test
+	public void nodeStoppedWhenNotReadyAfterTimeout() throws Exception {
+		this.admin.setPort(findFreePort());
+		this.admin.setStartupTimeout(300);
+		long start = System.currentTimeMillis();
+		this.admin.startBrokerApplication();
+		assertTrue(System.currentTimeMillis() - start >= 300);
+		assertTrue(this.admin.stopped);
+		verify(this.admin.connection).sendRPC(eq("rabbit"), eq("stop_and_halt"), any(OtpErlangList.class));
+		assertTrue(this.admin.statusChecks.get() > 2);
+	}
+
+	private int findFreePort() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+
+	/**
+	 * A broker whose node is running: the application becomes ready when it opens its port, on the first status check
+	 * at least {@link #openPortAfter} milliseconds after the first one, and everything stops when the node is stopped.
+	 */
+	private static class StubRabbitBrokerAdmin extends RabbitBrokerAdmin {
+
+		// assigned while the super constructor runs, so no initializer
+		private Connection connection;
+
+		private final AtomicInteger statusChecks = new AtomicInteger();
+
+		private volatile int port;
+
+		private volatile long openPortAfter;
+
+		private volatile ServerSocket serverSocket;
+
+		private volatile long firstCheckTime;
+
+		private volatile long readyTime;
+
+		private volatile boolean stopped;
+
+		public StubRabbitBrokerAdmin() {
+			super("localhost");
+		}
+
+		@Override
+		protected void initializeDefaultErlangTemplate(String host) {
+			ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+			this.connection = mock(Connection.class);
+			try {
+				when(connectionFactory.createConnection()).thenReturn(this.connection);
+				when(this.connection.receiveRPC()).thenReturn(new OtpErlangAtom("ok"));
+			}
+			catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			createErlangTemplate(connectionFactory);
+		}
+
+		@Override
+		public RabbitStatus getStatus() {
+			long now = System.currentTimeMillis();
+			if (this.statusChecks.incrementAndGet() == 1) {
+				this.firstCheckTime = now;
+			}
+			boolean ready = this.readyTime > 0;
+			if (!ready && this.openPortAfter > 0 && now - this.firstCheckTime >= this.openPortAfter) {
+				// the port opens, but this status check still reports the broker as starting
+				try {
+					this.serverSocket = new ServerSocket(this.port, 50, InetAddress.getByName("localhost"));
+				}
+				catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				this.readyTime = now;
+			}
+			if (this.stopped) {
+				return new RabbitStatus(Collections.<Application> emptyList(), Collections.<Node> emptyList(),
+						Collections.<Node> emptyList());
+			}
+			List<Node> nodes = Collections.singletonList(new Node("rabbit@localhost"));
+			List<Application> applications = Collections.emptyList();
+			if (ready) {
+				applications = Collections.singletonList(new Application("RabbitMQ", "rabbit", "2.1.0"));
+			}
+			return new RabbitStatus(applications, nodes, nodes);
+		}
+
+		@Override
+		public void stopNode() {
+			this.stopped = true;
+			super.stopNode();
+		}
+
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.admin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.amqp.rabbit.admin.RabbitControlErlangConverter.QueueInfoField;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * @author agent
+ */
+public class RabbitControlErlangConverterTests {
+
+	private final RabbitControlErlangConverter converter = new RabbitControlErlangConverter();
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void queueInfoAll() {
+		List<QueueInfo> queues = (List<QueueInfo>) converter.fromErlangRpc("rabbit_amqqueue", "info_all",
+				infoAll("foo", 3, "bar", 5));
+		assertEquals(2, queues.size());
+		assertEquals("foo", queues.get(0).getName());
+		assertEquals(3, queues.get(0).getMessages());
+		assertTrue(queues.get(0).isDurable());
+		assertEquals("bar", queues.get(1).getName());
+		assertEquals(5, queues.get(1).getMessages());
+	}
+
+	@Test
+	public void queueInfoAllStreamedWithProjection() {
+		final List<QueueInfo> queues = new ArrayList<QueueInfo>();
+		converter.doWithQueueInfos(infoAll("foo", 3, "bar", 5), EnumSet.of(QueueInfoField.messages),
+				new QueueInfoCallback() {
+					public void doWithQueueInfo(QueueInfo queueInfo) {
+						queues.add(queueInfo);
+					}
+				});
+		assertEquals(2, queues.size());
+		assertNull(queues.get(0).getName());
+		assertEquals(3, queues.get(0).getMessages());
+		assertFalse(queues.get(0).isDurable());
+		assertEquals(5, queues.get(1).getMessages());
+	}
+
+	private OtpErlangList infoAll(Object... nameAndMessages) {
+		OtpErlangObject[] queues = new OtpErlangObject[nameAndMessages.length / 2];
+		for (int i = 0; i < queues.length; i++) {
+			String name = (String) nameAndMessages[2 * i];
+			int messages = (Integer) nameAndMessages[2 * i + 1];
+			OtpErlangTuple resource = new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("resource"),
+					new OtpErlangBinary("/".getBytes()), new OtpErlangAtom("queue"),
+					new OtpErlangBinary(name.getBytes()) });
+			queues[i] = new OtpErlangList(new OtpErlangObject[] { item("name", resource),
+					item("durable", new OtpErlangAtom(true)), item("messages", new OtpErlangLong(messages)),
+					item("unknown_field", new OtpErlangLong(0)) });
+		}
+		return new OtpErlangList(queues);
+	}
+
+	private OtpErlangTuple item(String key, OtpErlangObject value) {
+		return new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom(key), value });
+	}
+
+}
@@ -9,15 +9,19 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
 
 /**
  * @author Mark Pollack
@@ -314,4 +318,73 @@ public class CachingConnectionFactoryTests {
 		verify(mockChannel2, times(1)).close();
 
 	}
+	@Test
+	public void testConnectionListener() throws IOException {
+		com.rabbitmq.client.ConnectionFactory mockConnectionFactory = mock(com.rabbitmq.client.ConnectionFactory.class);
+		com.rabbitmq.client.Connection mockConnection1 = mock(com.rabbitmq.client.Connection.class);
+		com.rabbitmq.client.Connection mockConnection2 = mock(com.rabbitmq.client.Connection.class);
+		when(mockConnectionFactory.newConnection()).thenReturn(mockConnection1).thenReturn(mockConnection2);
+
+		final CachingConnectionFactory ccf = new CachingConnectionFactory(mockConnectionFactory);
+		final List<Connection> created = new ArrayList<Connection>();
+		final List<Connection> closed = new ArrayList<Connection>();
+		ccf.addConnectionListener(new ConnectionListener() {
+			public void onCreate(Connection connection) {
+				try {
+					// the new Connection is already available to the listener's thread
+					Assert.assertSame(connection, ccf.createConnection());
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				created.add(connection);
+			}
+
+			public void onClose(Connection connection) {
+				closed.add(connection);
+			}
+		});
+		Connection con1 = ccf.createConnection();
+		ccf.createConnection();
+		assertEquals(1, created.size());
+		Assert.assertSame(con1, created.get(0));
+		ccf.resetConnection();
+		assertEquals(1, closed.size());
+		Assert.assertSame(con1, closed.get(0));
+		Connection con2 = ccf.createConnection();
+		assertEquals(2, created.size());
+		Assert.assertSame(con2, created.get(1));
+		verify(mockConnection1).close();
+	}
+
+	@Test
+	public void connectionClosedByBrokerIsReplaced() throws IOException {
+		com.rabbitmq.client.ConnectionFactory mockConnectionFactory = mock(com.rabbitmq.client.ConnectionFactory.class);
+		com.rabbitmq.client.Connection mockConnection1 = mock(com.rabbitmq.client.Connection.class);
+		com.rabbitmq.client.Connection mockConnection2 = mock(com.rabbitmq.client.Connection.class);
+		when(mockConnectionFactory.newConnection()).thenReturn(mockConnection1, mockConnection2);
+
+		SingleConnectionFactory scf = new SingleConnectionFactory(mockConnectionFactory);
+		final List<Connection> closed = new ArrayList<Connection>();
+		scf.addConnectionListener(new ConnectionListener() {
+			public void onCreate(Connection connection) {
+			}
+
+			public void onClose(Connection connection) {
+				closed.add(connection);
+			}
+		});
+		Connection con1 = scf.createConnection();
+		ArgumentCaptor<ShutdownListener> shutdownListener = ArgumentCaptor.forClass(ShutdownListener.class);
+		verify(mockConnection1).addShutdownListener(shutdownListener.capture());
+		// closing the Connection ourselves is not a loss
+		shutdownListener.getValue().shutdownCompleted(new ShutdownSignalException(true, true, null, mockConnection1));
+		Assert.assertSame(con1, scf.createConnection());
+		shutdownListener.getValue().shutdownCompleted(new ShutdownSignalException(true, false, null, mockConnection1));
+		assertEquals(1, closed.size());
+		Assert.assertSame(con1, closed.get(0));
+		Connection con2 = scf.createConnection();
+		Assert.assertNotSame(con1, con2);
+		verify(mockConnectionFactory, times(2)).newConnection();
+	}
+
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.connection;
+
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * @author agent
+ */
+public class RabbitResourceHolderTests {
+
+	@Test
+	public void contiguousTagsAckedWithMultiple() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitResourceHolder holder = new RabbitResourceHolder(channel);
+		for (long tag = 1; tag <= 20; tag++) {
+			holder.addDeliveryTag(channel, tag);
+		}
+		holder.commitAll();
+		InOrder inOrder = inOrder(channel);
+		inOrder.verify(channel).basicAck(20, true);
+		inOrder.verify(channel).txCommit();
+		verify(channel, times(1)).basicAck(anyLong(), anyBoolean());
+	}
+
+	@Test
+	public void tagsNotOwnedFromTheStartAckedIndividually() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitResourceHolder holder = new RabbitResourceHolder(channel);
+		for (long tag = 5; tag <= 24; tag++) {
+			holder.addDeliveryTag(channel, tag);
+		}
+		holder.commitAll();
+		for (long tag = 5; tag <= 24; tag++) {
+			verify(channel).basicAck(tag, false);
+		}
+		verify(channel, never()).basicAck(anyLong(), eq(true));
+	}
+
+	@Test
+	public void singleTagAckedAlone() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitResourceHolder holder = new RabbitResourceHolder(channel);
+		holder.addDeliveryTag(channel, 3);
+		holder.commitAll();
+		verify(channel).basicAck(3, false);
+	}
+
+	@Test
+	public void gapsAckedIndividually() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitResourceHolder holder = new RabbitResourceHolder(channel);
+		holder.addDeliveryTag(channel, 1);
+		holder.addDeliveryTag(channel, 2);
+		holder.addDeliveryTag(channel, 4);
+		holder.commitAll();
+		verify(channel).basicAck(1, false);
+		verify(channel).basicAck(2, false);
+		verify(channel).basicAck(4, false);
+		verify(channel, never()).basicAck(anyLong(), eq(true));
+	}
+
+	@Test
+	public void tagsTrackedPerChannel() throws Exception {
+		Channel channel1 = mock(Channel.class);
+		Channel channel2 = mock(Channel.class);
+		RabbitResourceHolder holder = new RabbitResourceHolder(channel1);
+		holder.addChannel(channel2);
+		holder.addDeliveryTag(channel1, 1);
+		holder.addDeliveryTag(channel2, 7);
+		holder.addDeliveryTag(channel1, 2);
+		holder.commitAll();
+		verify(channel1).basicAck(2, true);
+		verify(channel2).basicAck(7, false);
+		verify(channel1).txCommit();
+		verify(channel2).txCommit();
+	}
+
+	@Test
+	public void tagsNotAckedTwice() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitResourceHolder holder = new RabbitResourceHolder(channel);
+		holder.addDeliveryTag(channel, 1);
+		holder.commitAll();
+		holder.addDeliveryTag(channel, 2);
+		holder.addDeliveryTag(channel, 3);
+		holder.commitAll();
+		verify(channel).basicAck(1, false);
+		verify(channel).basicAck(3, true);
+		verify(channel, times(2)).basicAck(anyLong(), anyBoolean());
+	}
+
+	@Test
+	public void noMultipleAckAfterGap() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitResourceHolder holder = new RabbitResourceHolder(channel);
+		holder.addDeliveryTag(channel, 1);
+		holder.addDeliveryTag(channel, 3);
+		holder.commitAll();
+		// tag 2 may still be outstanding elsewhere
+		holder.addDeliveryTag(channel, 4);
+		holder.addDeliveryTag(channel, 5);
+		holder.commitAll();
+		verify(channel).basicAck(4, false);
+		verify(channel).basicAck(5, false);
+		verify(channel, never()).basicAck(anyLong(), eq(true));
+	}
+
+	@Test
+	public void rejectedTagsCountAsSettled() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitResourceHolder holder = new RabbitResourceHolder(channel);
+		holder.addDeliveryTag(channel, 1);
+		holder.addDeliveryTag(channel, 2);
+		holder.rollbackAll();
+		holder.addDeliveryTag(channel, 3);
+		holder.addDeliveryTag(channel, 4);
+		holder.commitAll();
+		verify(channel).basicAck(4, true);
+		verify(channel, times(1)).basicAck(anyLong(), anyBoolean());
+	}
+
+	@Test
+	public void rollbackRejectsEachTag() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitResourceHolder holder = new RabbitResourceHolder(channel);
+		holder.addDeliveryTag(channel, 1);
+		holder.addDeliveryTag(channel, 2);
+		holder.addDeliveryTag(channel, 3);
+		holder.rollbackAll();
+		InOrder inOrder = inOrder(channel);
+		inOrder.verify(channel).txRollback();
+		inOrder.verify(channel).basicReject(1, true);
+		inOrder.verify(channel).basicReject(2, true);
+		inOrder.verify(channel).basicReject(3, true);
+		inOrder.verify(channel).txCommit();
+		verify(channel, never()).basicAck(anyLong(), anyBoolean());
+	}
+
+}
@@ -1,8 +1,36 @@
 package org.springframework.amqp.rabbit.core;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.context.ApplicationContext;
+
+import com.rabbitmq.client.Channel;
 
 public class RabbitAdminTests {
 
@@ -18,4 +46,165 @@ public class RabbitAdminTests {
 		}
 	}
 
+	@Test
+	public void parallelDeclaration() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitAdmin admin = createAdmin(channel, 4);
+		admin.start();
+		verify(channel).exchangeDeclare(eq("exchange"), eq("direct"), anyBoolean(), anyBoolean(), anyArguments());
+		verify(channel).queueDeclare(eq("foo"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+		verify(channel).queueDeclare(eq("bar"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+		verify(channel).queueBind(eq("foo"), eq("exchange"), eq("foo"), anyArguments());
+		verify(channel).queueBind(eq("bar"), eq("exchange"), eq("bar"), anyArguments());
+		assertTrue(admin.isRunning());
+	}
+
+	@Test
+	public void parallelDeclarationFailure() throws Exception {
+		Channel channel = mock(Channel.class);
+		when(channel.queueDeclare(eq("foo"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments())).thenThrow(
+				new IOException("PRECONDITION_FAILED"));
+		RabbitAdmin admin = createAdmin(channel, 2);
+		try {
+			admin.start();
+			fail("Expected AmqpException");
+		}
+		catch (AmqpException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("2 of 5 declarations failed"));
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		// the other declarations are not affected, but the Binding of the failed Queue is skipped
+		verify(channel).queueDeclare(eq("bar"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+		verify(channel).queueBind(eq("bar"), eq("exchange"), eq("bar"), anyArguments());
+		verify(channel, never()).queueBind(eq("foo"), anyString(), anyString(), anyArguments());
+	}
+
+	@Test
+	public void declarationCache() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitAdmin admin = createAdmin(channel, 1);
+		admin.setDeclarationCacheEnabled(true);
+		DirectExchange exchange = new DirectExchange("exchange");
+		Queue queue = new Queue("foo");
+		Binding binding = new Binding(queue, exchange, "foo");
+		for (int i = 0; i < 3; i++) {
+			admin.declareExchange(exchange);
+			admin.declareQueue(queue);
+			admin.declareBinding(binding);
+		}
+		verify(channel, times(1)).exchangeDeclare(eq("exchange"), eq("direct"), anyBoolean(), anyBoolean(), anyArguments());
+		verify(channel, times(1)).queueDeclare(eq("foo"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+		verify(channel, times(1)).queueBind(eq("foo"), eq("exchange"), eq("foo"), anyArguments());
+		assertEquals(6, admin.getDeclarationCacheHits());
+		assertEquals(3, admin.getDeclarationCacheMisses());
+		// a different declaration of the same Queue goes to the broker
+		Queue durableQueue = new Queue("foo");
+		durableQueue.setDurable(!queue.isDurable());
+		admin.declareQueue(durableQueue);
+		verify(channel, times(2)).queueDeclare(eq("foo"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+		// deleting the Queue also removes its Binding
+		admin.deleteQueue("foo");
+		admin.declareQueue(queue);
+		admin.declareBinding(binding);
+		admin.declareExchange(exchange);
+		verify(channel, times(3)).queueDeclare(eq("foo"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+		verify(channel, times(2)).queueBind(eq("foo"), eq("exchange"), eq("foo"), anyArguments());
+		verify(channel, times(1)).exchangeDeclare(eq("exchange"), eq("direct"), anyBoolean(), anyBoolean(), anyArguments());
+	}
+
+	@Test
+	public void declarationCacheClearedOnNewConnection() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitAdmin admin = createAdmin(channel, 1);
+		admin.setDeclarationCacheEnabled(true);
+		ArgumentCaptor<ConnectionListener> listener = ArgumentCaptor.forClass(ConnectionListener.class);
+		verify(admin.getRabbitTemplate().getConnectionFactory()).addConnectionListener(listener.capture());
+		Queue queue = new Queue("foo");
+		admin.declareQueue(queue);
+		admin.declareQueue(queue);
+		listener.getValue().onClose(mock(Connection.class));
+		admin.declareQueue(queue);
+		admin.declareQueue(queue);
+		verify(channel, times(2)).queueDeclare(eq("foo"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+		// the cache does not need a Connection of its own, only the one the declarations are made on
+		verify(admin.getRabbitTemplate().getConnectionFactory(), times(2)).createConnection();
+		admin.setDeclarationCacheEnabled(true);
+		verify(admin.getRabbitTemplate().getConnectionFactory(), times(1)).addConnectionListener(
+				any(ConnectionListener.class));
+	}
+
+	@Test
+	public void autoDeleteNotCached() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitAdmin admin = createAdmin(channel, 1);
+		admin.setDeclarationCacheEnabled(true);
+		DirectExchange exchange = new DirectExchange("exchange");
+		Queue queue = new Queue("foo");
+		queue.setAutoDelete(true);
+		Binding binding = new Binding(queue, exchange, "foo");
+		for (int i = 0; i < 2; i++) {
+			admin.declareQueue(queue);
+			admin.declareBinding(binding);
+		}
+		verify(channel, times(2)).queueDeclare(eq("foo"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+		verify(channel, times(2)).queueBind(eq("foo"), eq("exchange"), eq("foo"), anyArguments());
+		assertEquals(0, admin.getDeclarationCacheHits());
+	}
+
+	@Test
+	public void redeclareOnNewConnection() throws Exception {
+		Channel channel = mock(Channel.class);
+		RabbitAdmin admin = createAdmin(channel, 1);
+		admin.start();
+		ArgumentCaptor<ConnectionListener> listener = ArgumentCaptor.forClass(ConnectionListener.class);
+		verify(admin.getRabbitTemplate().getConnectionFactory()).addConnectionListener(listener.capture());
+		Connection connection = mock(Connection.class);
+		Channel newChannel = mock(Channel.class);
+		when(connection.createChannel(false)).thenReturn(newChannel);
+		listener.getValue().onCreate(connection);
+		verify(newChannel).exchangeDeclare(eq("exchange"), eq("direct"), anyBoolean(), anyBoolean(), anyArguments());
+		verify(newChannel).queueDeclare(eq("foo"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+		verify(newChannel).queueBind(eq("bar"), eq("exchange"), eq("bar"), anyArguments());
+		verify(newChannel).close();
+		// only once, even if restarted
+		admin.stop();
+		listener.getValue().onCreate(connection);
+		admin.start();
+		verify(admin.getRabbitTemplate().getConnectionFactory(), times(1)).addConnectionListener(
+				any(ConnectionListener.class));
+		verify(newChannel, times(1)).queueDeclare(eq("foo"), anyBoolean(), anyBoolean(), anyBoolean(), anyArguments());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> anyArguments() {
+		return anyMap();
+	}
+
+	private RabbitAdmin createAdmin(Channel channel, int concurrency) throws IOException {
+		ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		when(connection.createChannel(false)).thenReturn(channel);
+		when(channel.isOpen()).thenReturn(true);
+		DirectExchange exchange = new DirectExchange("exchange");
+		Queue foo = new Queue("foo");
+		Queue bar = new Queue("bar");
+		Map<String, Exchange> exchanges = new HashMap<String, Exchange>();
+		exchanges.put("exchange", exchange);
+		Map<String, Queue> queues = new HashMap<String, Queue>();
+		queues.put("foo", foo);
+		queues.put("bar", bar);
+		Map<String, Binding> bindings = new HashMap<String, Binding>();
+		bindings.put("fooBinding", new Binding(foo, exchange, "foo"));
+		bindings.put("barBinding", new Binding(bar, exchange, "bar"));
+		ApplicationContext applicationContext = mock(ApplicationContext.class);
+		when(applicationContext.getBeansOfType(Exchange.class)).thenReturn(exchanges);
+		when(applicationContext.getBeansOfType(Queue.class)).thenReturn(queues);
+		when(applicationContext.getBeansOfType(Binding.class)).thenReturn(bindings);
+		RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+		admin.setApplicationContext(applicationContext);
+		admin.setDeclarationConcurrency(concurrency);
+		return admin;
+	}
+
 }
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+
+/**
+ * @author agent
+ */
+public class RabbitTemplateTests {
+
+	private ConnectionFactory connectionFactory;
+
+	private Connection connection;
+
+	@Test
+	public void groupCommitBatchesConcurrentSends() throws Exception {
+		ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		Channel channel = mock(Channel.class);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		when(connection.createChannel(true)).thenReturn(channel);
+		when(channel.isOpen()).thenReturn(true);
+		final CountDownLatch commitLatch = new CountDownLatch(1);
+		final AtomicInteger commits = new AtomicInteger();
+		when(channel.txCommit()).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				if (commits.incrementAndGet() == 1) {
+					// hold the first commit so that the other senders queue up behind it
+					commitLatch.await(10, TimeUnit.SECONDS);
+				}
+				return null;
+			}
+		});
+
+		final RabbitTemplate template = new RabbitTemplate(connectionFactory);
+		template.setChannelTransacted(true);
+		template.setGroupCommit(true);
+		int senders = 10;
+		ExecutorService executor = Executors.newFixedThreadPool(senders);
+		Future<?>[] results = new Future<?>[senders];
+		for (int i = 0; i < senders; i++) {
+			final String body = "message" + i;
+			results[i] = executor.submit(new Runnable() {
+				public void run() {
+					template.convertAndSend("exchange", "key", body);
+				}
+			});
+		}
+		Thread.sleep(200);
+		commitLatch.countDown();
+		for (Future<?> result : results) {
+			result.get(10, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		verify(channel, times(senders)).basicPublish(anyString(), anyString(), anyBoolean(), anyBoolean(),
+				any(BasicProperties.class), any(byte[].class));
+		assertTrue("Expected fewer commits than messages: " + commits.get(), commits.get() < senders);
+		verify(channel).txSelect();
+		verify(connectionFactory).createConnection();
+	}
+
+	@Test
+	public void groupCommitFailureReportedAndChannelReplaced() throws Exception {
+		ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		Channel failingChannel = mock(Channel.class);
+		Channel channel = mock(Channel.class);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		when(connection.createChannel(true)).thenReturn(failingChannel, channel);
+		when(failingChannel.isOpen()).thenReturn(true);
+		when(channel.isOpen()).thenReturn(true);
+		doThrow(new IOException("commit failed")).when(failingChannel).txCommit();
+
+		RabbitTemplate template = new RabbitTemplate(connectionFactory);
+		template.setChannelTransacted(true);
+		template.setGroupCommit(true);
+		try {
+			template.convertAndSend("exchange", "key", "foo");
+			fail("Expected AmqpIOException");
+		}
+		catch (AmqpIOException e) {
+			assertEquals("commit failed", e.getCause().getMessage());
+		}
+		verify(failingChannel).close();
+		template.convertAndSend("exchange", "key", "bar");
+		verify(channel).txCommit();
+		verify(channel, atMost(1)).basicPublish(anyString(), anyString(), anyBoolean(), anyBoolean(),
+				any(BasicProperties.class), any(byte[].class));
+	}
+
+	@Test
+	public void groupCommitErrorFailsWholeBatch() throws Exception {
+		ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		Channel channel = mock(Channel.class);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		when(connection.createChannel(true)).thenReturn(channel);
+		when(channel.isOpen()).thenReturn(true);
+		final CountDownLatch commitLatch = new CountDownLatch(1);
+		final AtomicInteger commits = new AtomicInteger();
+		when(channel.txCommit()).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				if (commits.incrementAndGet() == 1) {
+					commitLatch.await(10, TimeUnit.SECONDS);
+					return null;
+				}
+				throw new Error("commit failed");
+			}
+		});
+
+		final RabbitTemplate template = new RabbitTemplate(connectionFactory);
+		template.setChannelTransacted(true);
+		template.setGroupCommit(true);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		Runnable sender = new Runnable() {
+			public void run() {
+				template.convertAndSend("exchange", "key", "foo");
+			}
+		};
+		Future<?> first = executor.submit(sender);
+		Thread.sleep(200);
+		// these two queue up behind the held commit and are committed together
+		Future<?> second = executor.submit(sender);
+		Future<?> third = executor.submit(sender);
+		Thread.sleep(200);
+		commitLatch.countDown();
+		first.get(10, TimeUnit.SECONDS);
+		for (Future<?> result : new Future<?>[] { second, third }) {
+			try {
+				result.get(10, TimeUnit.SECONDS);
+				fail("Expected the batch to fail");
+			}
+			catch (ExecutionException e) {
+				// the committer sees the Error, the other caller an AmqpException
+			}
+		}
+		executor.shutdown();
+		assertEquals(2, commits.get());
+		verify(channel).close();
+	}
+
+	@Test
+	public void groupCommitFailureRolledBackOnCachedChannel() throws Exception {
+		com.rabbitmq.client.ConnectionFactory mockConnectionFactory = mock(com.rabbitmq.client.ConnectionFactory.class);
+		com.rabbitmq.client.Connection mockConnection = mock(com.rabbitmq.client.Connection.class);
+		Channel mockChannel = mock(Channel.class);
+		when(mockConnectionFactory.newConnection()).thenReturn(mockConnection);
+		when(mockConnection.createChannel()).thenReturn(mockChannel);
+		when(mockChannel.isOpen()).thenReturn(true);
+		doThrow(new IOException("publish failed")).when(mockChannel).basicPublish(eq("bad"), anyString(),
+				anyBoolean(), anyBoolean(), any(BasicProperties.class), any(byte[].class));
+
+		RabbitTemplate template = new RabbitTemplate(new CachingConnectionFactory(mockConnectionFactory));
+		template.setChannelTransacted(true);
+		template.setGroupCommit(true);
+		try {
+			template.convertAndSend("bad", "key", "foo");
+			fail("Expected AmqpIOException");
+		}
+		catch (AmqpIOException e) {
+			assertEquals("publish failed", e.getCause().getMessage());
+		}
+		// the Channel goes back to the cache, so nothing of the failed batch may be left for the next commit
+		verify(mockChannel, never()).close();
+		template.convertAndSend("good", "key", "bar");
+		InOrder inOrder = inOrder(mockChannel);
+		inOrder.verify(mockChannel).txRollback();
+		inOrder.verify(mockChannel).basicPublish(eq("good"), anyString(), anyBoolean(), anyBoolean(),
+				any(BasicProperties.class), any(byte[].class));
+		inOrder.verify(mockChannel).txCommit();
+		verify(mockConnection).createChannel();
+	}
+
+	@Test
+	public void groupCommitChannelClosedAfterCommitInProgress() throws Exception {
+		ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		Channel channel = mock(Channel.class);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		when(connection.createChannel(true)).thenReturn(channel);
+		when(channel.isOpen()).thenReturn(true);
+		final CountDownLatch committing = new CountDownLatch(1);
+		final CountDownLatch commitLatch = new CountDownLatch(1);
+		when(channel.txCommit()).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				committing.countDown();
+				commitLatch.await(10, TimeUnit.SECONDS);
+				return null;
+			}
+		});
+
+		final RabbitTemplate template = new RabbitTemplate(connectionFactory);
+		template.setChannelTransacted(true);
+		template.setGroupCommit(true);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<?> result = executor.submit(new Runnable() {
+			public void run() {
+				template.convertAndSend("exchange", "key", "foo");
+			}
+		});
+		assertTrue(committing.await(10, TimeUnit.SECONDS));
+		template.destroy();
+		verify(channel, never()).close();
+		commitLatch.countDown();
+		result.get(10, TimeUnit.SECONDS);
+		executor.shutdown();
+		verify(channel).close();
+		verify(connection).close();
+		verify(channel, never()).txRollback();
+	}
+
+	@Test
+	public void prefetchingReceive() throws Exception {
+		Channel channel = mockChannel(false);
+		RabbitTemplate template = new RabbitTemplate(this.connectionFactory);
+		template.setPrefetchCount(5);
+		// nothing buffered yet, falls back to basic.get
+		assertNull(template.receive("queue"));
+		verify(channel).basicGet("queue", true);
+		Consumer consumer = captureConsumer(channel, 5);
+		deliver(consumer, 1, "foo");
+		deliver(consumer, 2, "bar");
+		assertEquals("foo", new String(template.receive("queue").getBody()));
+		assertEquals("bar", new String(template.receive("queue").getBody()));
+		verify(channel).basicAck(1, false);
+		verify(channel).basicAck(2, false);
+		verify(channel, never()).txCommit();
+		// one for the basic.get and one for the consumer
+		verify(this.connection, times(2)).createChannel(false);
+		template.destroy();
+		verify(channel).basicRecover(true);
+		verify(channel, times(2)).close();
+	}
+
+	@Test
+	public void prefetchingReceiveTransacted() throws Exception {
+		Channel channel = mockChannel(true);
+		RabbitTemplate template = new RabbitTemplate(this.connectionFactory);
+		template.setChannelTransacted(true);
+		template.setPrefetchCount(5);
+		assertNull(template.receive("queue", 0));
+		Consumer consumer = captureConsumer(channel, 5);
+		deliver(consumer, 1, "foo");
+		assertEquals("foo", new String(template.receive("queue", 0).getBody()));
+		InOrder inOrder = inOrder(channel);
+		inOrder.verify(channel).basicAck(1, false);
+		inOrder.verify(channel).txCommit();
+	}
+
+	@Test
+	public void receiveWithTimeout() throws Exception {
+		Channel channel = mockChannel(false);
+		final RabbitTemplate template = new RabbitTemplate(this.connectionFactory);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<Message> result = executor.submit(new Callable<Message>() {
+			public Message call() throws Exception {
+				return template.receive("queue", 5000);
+			}
+		});
+		Consumer consumer = null;
+		for (int i = 0; i < 100 && consumer == null; i++) {
+			try {
+				consumer = captureConsumer(channel, 1);
+			} catch (Throwable e) {
+				Thread.sleep(50);
+			}
+		}
+		deliver(consumer, 1, "foo");
+		assertEquals("foo", new String(result.get(5, TimeUnit.SECONDS).getBody()));
+		executor.shutdown();
+		// without a prefetch count the consumer only lives for one receive
+		InOrder inOrder = inOrder(channel);
+		inOrder.verify(channel).basicAck(1, false);
+		inOrder.verify(channel).basicCancel(anyString());
+		inOrder.verify(channel).basicRecover(true);
+		inOrder.verify(channel).close();
+		assertNull(template.receive("queue", 10));
+		verify(channel, times(2)).basicConsume(eq("queue"), eq(false), any(Consumer.class));
+		verify(channel, times(2)).close();
+	}
+
+	@Test
+	public void batchReceive() throws Exception {
+		Channel channel = mockChannel(false);
+		final RabbitTemplate template = new RabbitTemplate(this.connectionFactory);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<List<Message>> result = executor.submit(new Callable<List<Message>>() {
+			public List<Message> call() throws Exception {
+				return template.receive("queue", 2, 5000);
+			}
+		});
+		Consumer consumer = null;
+		for (int i = 0; i < 100 && consumer == null; i++) {
+			try {
+				consumer = captureConsumer(channel, 2);
+			} catch (Throwable e) {
+				Thread.sleep(50);
+			}
+		}
+		deliver(consumer, 1, "foo");
+		deliver(consumer, 2, "bar");
+		List<Message> messages = result.get(5, TimeUnit.SECONDS);
+		executor.shutdown();
+		assertEquals(2, messages.size());
+		assertEquals("foo", new String(messages.get(0).getBody()));
+		assertEquals("bar", new String(messages.get(1).getBody()));
+		// without a prefetch count the consumer only lives for the one batch
+		InOrder inOrder = inOrder(channel);
+		inOrder.verify(channel).basicAck(2, true);
+		inOrder.verify(channel).basicCancel(anyString());
+		inOrder.verify(channel).basicRecover(true);
+		inOrder.verify(channel).close();
+		verify(channel, times(1)).basicAck(anyLong(), anyBoolean());
+	}
+
+	@Test
+	public void batchReceiveLargerThanPrefetch() throws Exception {
+		Channel channel = mockChannel(false);
+		RabbitTemplate template = new RabbitTemplate(this.connectionFactory);
+		template.setPrefetchCount(2);
+		assertTrue(template.receive("queue", 2, 0).isEmpty());
+		Consumer consumer = captureConsumer(channel, 2);
+		deliver(consumer, 1, "foo");
+		deliver(consumer, 2, "bar");
+		List<Message> messages = template.receive("queue", 2, 0);
+		assertEquals(2, messages.size());
+		assertEquals("foo", new String(messages.get(0).getBody()));
+		assertEquals("bar", new String(messages.get(1).getBody()));
+		verify(channel).basicAck(2, true);
+		// a larger batch does not change the prefetch of the shared consumer
+		assertTrue(template.receive("queue", 10, 0).isEmpty());
+		verify(channel).basicQos(10);
+		verify(channel, times(2)).basicQos(anyInt());
+		verify(channel, times(1)).basicCancel(anyString());
+		template.destroy();
+		verify(channel, times(2)).basicCancel(anyString());
+	}
+
+	@Test
+	public void batchReceiveTransacted() throws Exception {
+		Channel channel = mockChannel(true);
+		RabbitTemplate template = new RabbitTemplate(this.connectionFactory);
+		template.setChannelTransacted(true);
+		template.setPrefetchCount(5);
+		assertTrue(template.receive("queue", 5, 0).isEmpty());
+		Consumer consumer = captureConsumer(channel, 5);
+		deliver(consumer, 1, "foo");
+		deliver(consumer, 2, "bar");
+		assertEquals(2, template.receive("queue", 5, 10).size());
+		InOrder inOrder = inOrder(channel);
+		inOrder.verify(channel).basicAck(2, true);
+		inOrder.verify(channel).txCommit();
+		verify(channel, times(1)).txCommit();
+	}
+
+	@Test
+	public void threadBoundChannel() throws Exception {
+		Channel channel = mockChannel(false);
+		final RabbitTemplate template = new RabbitTemplate(this.connectionFactory);
+		template.setThreadBoundChannelLimit(1);
+		template.convertAndSend("foo", "bar", "baz");
+		template.convertAndSend("foo", "bar", "baz");
+		verify(channel, times(2)).basicPublish(eq("foo"), eq("bar"), eq(false), eq(false),
+				any(BasicProperties.class), any(byte[].class));
+		verify(this.connection, times(1)).createChannel(false);
+		verify(channel, never()).close();
+		// over the limit another thread gets a Channel per operation
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				template.convertAndSend("foo", "bar", "baz");
+			}
+		});
+		thread.start();
+		thread.join();
+		verify(this.connection, times(2)).createChannel(false);
+		verify(channel, times(1)).close();
+		template.destroy();
+		verify(channel, times(2)).close();
+	}
+
+	@Test
+	public void threadBoundChannelReaped() throws Exception {
+		Channel channel = mockChannel(false);
+		RabbitTemplate template = new RabbitTemplate(this.connectionFactory);
+		template.setThreadBoundChannelLimit(1);
+		template.setThreadBoundChannelIdleTimeout(20);
+		template.convertAndSend("foo", "bar", "baz");
+		for (int i = 0; i < 100; i++) {
+			try {
+				verify(channel).close();
+				break;
+			} catch (Throwable e) {
+				Thread.sleep(20);
+			}
+		}
+		verify(channel).close();
+		template.convertAndSend("foo", "bar", "baz");
+		verify(this.connection, times(2)).createChannel(false);
+		template.destroy();
+	}
+
+	@Test
+	public void threadBoundChannelDiscardedWhenClosed() throws Exception {
+		Channel channel = mockChannel(false);
+		RabbitTemplate template = new RabbitTemplate(this.connectionFactory);
+		template.setThreadBoundChannelLimit(1);
+		doThrow(new IOException("channel error")).when(channel).basicPublish(anyString(), anyString(),
+				anyBoolean(), anyBoolean(), any(BasicProperties.class), any(byte[].class));
+		when(channel.isOpen()).thenReturn(false);
+		try {
+			template.convertAndSend("foo", "bar", "baz");
+			fail("Expected AmqpIOException");
+		} catch (AmqpIOException e) {
+		}
+		verify(channel).close();
+		try {
+			template.convertAndSend("foo", "bar", "baz");
+			fail("Expected AmqpIOException");
+		} catch (AmqpIOException e) {
+		}
+		verify(this.connection, times(2)).createChannel(false);
+		template.destroy();
+	}
+
+	private Channel mockChannel(boolean transactional) throws IOException {
+		this.connectionFactory = mock(ConnectionFactory.class);
+		this.connection = mock(Connection.class);
+		Channel channel = mock(Channel.class);
+		when(this.connectionFactory.createConnection()).thenReturn(this.connection);
+		when(this.connection.createChannel(transactional)).thenReturn(channel);
+		when(channel.isOpen()).thenReturn(true);
+		return channel;
+	}
+
+	private Consumer captureConsumer(Channel channel, int prefetchCount) throws IOException {
+		verify(channel).basicQos(prefetchCount);
+		ArgumentCaptor<Consumer> captor = ArgumentCaptor.forClass(Consumer.class);
+		verify(channel).basicConsume(eq("queue"), eq(false), captor.capture());
+		return captor.getValue();
+	}
+
+	private void deliver(Consumer consumer, long deliveryTag, String body) throws IOException {
+		consumer.handleDelivery("tag", new Envelope(deliveryTag, false, "", "queue"), new BasicProperties(),
+				body.getBytes());
+	}
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.listener.adapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.AmqpIllegalStateException;
+import org.springframework.amqp.core.Address;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+
+/**
+ * @author agent
+ */
+public class MessageListenerAdapterTests {
+
+	private final SimpleMessageConverter converter = new SimpleMessageConverter();
+
+	private final SimpleDelegate delegate = new SimpleDelegate();
+
+	private MessageListenerAdapter adapter;
+
+
+	@Before
+	public void init() {
+		this.adapter = new MessageListenerAdapter(this.delegate);
+	}
+
+	@Test
+	public void overloadResolvedByArgumentType() throws Exception {
+		this.adapter.onMessage(createMessage("foo"), null);
+		assertEquals("String:foo", this.delegate.lastCall);
+		this.adapter.onMessage(createMessage(new byte[] { 1 }), null);
+		assertEquals("byte[]", this.delegate.lastCall);
+		this.adapter.onMessage(createMessage(Integer.valueOf(42)), null);
+		assertEquals("Number:42", this.delegate.lastCall);
+		// cached methods are used for subsequent messages of the same types
+		this.adapter.onMessage(createMessage("bar"), null);
+		assertEquals("String:bar", this.delegate.lastCall);
+		this.adapter.onMessage(createMessage(Long.valueOf(7)), null);
+		assertEquals("Number:7", this.delegate.lastCall);
+	}
+
+	@Test
+	public void customListenerMethod() throws Exception {
+		this.adapter.setDefaultListenerMethod("onText");
+		this.adapter.onMessage(createMessage("foo"), null);
+		assertEquals("onText:foo", this.delegate.lastCall);
+	}
+
+	@Test
+	public void delegateChanged() throws Exception {
+		this.adapter.onMessage(createMessage("foo"), null);
+		SimpleDelegate other = new SimpleDelegate() {
+			@Override
+			public void handleMessage(String text) {
+				this.lastCall = "Other:" + text;
+			}
+		};
+		this.adapter.setDelegate(other);
+		this.adapter.onMessage(createMessage("bar"), null);
+		assertEquals("Other:bar", other.lastCall);
+		assertEquals("String:foo", this.delegate.lastCall);
+	}
+
+	@Test
+	public void nonPublicDelegateClass() throws Exception {
+		PackageDelegate packageDelegate = new PackageDelegate();
+		this.adapter.setDelegate(packageDelegate);
+		this.adapter.onMessage(createMessage("foo"), null);
+		this.adapter.onMessage(createMessage("bar"), null);
+		assertEquals("bar", packageDelegate.text);
+	}
+
+	@Test
+	public void noMatchingMethod() throws Exception {
+		this.adapter.setDefaultListenerMethod("noSuchMethod");
+		for (int i = 0; i < 2; i++) {
+			try {
+				this.adapter.onMessage(createMessage("foo"), null);
+				fail("Expected ListenerExecutionFailedException");
+			}
+			catch (ListenerExecutionFailedException e) {
+				assertEquals(NoSuchMethodException.class, e.getCause().getClass());
+			}
+		}
+	}
+
+	@Test
+	public void listenerExceptionUnwrapped() throws Exception {
+		this.adapter.setDefaultListenerMethod("fail");
+		for (int i = 0; i < 2; i++) {
+			try {
+				this.adapter.onMessage(createMessage("foo"), null);
+				fail("Expected ListenerExecutionFailedException");
+			}
+			catch (ListenerExecutionFailedException e) {
+				assertSame(IllegalStateException.class, e.getCause().getClass());
+			}
+		}
+		this.adapter.setDefaultListenerMethod("failIO");
+		try {
+			this.adapter.onMessage(createMessage("foo"), null);
+			fail("Expected AmqpIOException");
+		}
+		catch (AmqpIOException e) {
+			assertEquals("expected", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void asyncReplySentOnCompletion() throws Exception {
+		ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		Channel replyChannel = mock(Channel.class);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		when(connection.createChannel(false)).thenReturn(replyChannel);
+		this.adapter.setConnectionFactory(connectionFactory);
+		this.adapter.setDefaultListenerMethod("handleAsync");
+		Channel channel = mock(Channel.class);
+		Message request = createMessage("foo");
+		request.getMessageProperties().setReplyTo(new Address(null, "replyExchange", "replyKey"));
+		this.adapter.onMessage(request, channel);
+		verify(connectionFactory, never()).createConnection();
+		this.delegate.pendingReply.set("FOO");
+		verify(replyChannel).basicPublish(eq("replyExchange"), eq("replyKey"), anyBoolean(), anyBoolean(),
+				any(BasicProperties.class), eq("FOO".getBytes("UTF-8")));
+		verify(replyChannel).close();
+		verify(connection).close();
+		verify(channel, never()).basicPublish(any(String.class), any(String.class), anyBoolean(), anyBoolean(),
+				any(BasicProperties.class), any(byte[].class));
+	}
+
+	@Test(expected = AmqpIllegalStateException.class)
+	public void asyncReplyWithoutConnectionFactory() throws Exception {
+		this.adapter.setDefaultListenerMethod("handleAsync");
+		this.adapter.onMessage(createMessage("foo"), mock(Channel.class));
+	}
+
+	@Test
+	public void asyncReplyFailureHandled() throws Exception {
+		final Throwable[] handled = new Throwable[1];
+		MessageListenerAdapter adapter = new MessageListenerAdapter(this.delegate) {
+			@Override
+			protected void handleListenerException(Throwable ex) {
+				handled[0] = ex;
+			}
+		};
+		adapter.setConnectionFactory(mock(ConnectionFactory.class));
+		adapter.setDefaultListenerMethod("handleAsync");
+		Channel channel = mock(Channel.class);
+		adapter.onMessage(createMessage("foo"), channel);
+		IllegalStateException failure = new IllegalStateException("downstream failed");
+		this.delegate.pendingReply.setException(failure);
+		assertTrue(handled[0] instanceof ListenerExecutionFailedException);
+		assertSame(failure, handled[0].getCause());
+	}
+
+	@Test
+	public void replyFutureCallbacks() throws Exception {
+		ReplyFuture<String> future = new ReplyFuture<String>();
+		final String[] received = new String[2];
+		future.addCallback(new ReplyCallback<Object>() {
+			public void onSuccess(Object result) {
+				received[0] = (String) result;
+			}
+			public void onFailure(Throwable ex) {
+			}
+		});
+		assertTrue(future.set("foo"));
+		assertEquals("foo", received[0]);
+		assertEquals(false, future.set("bar"));
+		assertEquals("foo", future.get());
+		// late registration is notified immediately
+		future.addCallback(new ReplyCallback<String>() {
+			public void onSuccess(String result) {
+				received[1] = result;
+			}
+			public void onFailure(Throwable ex) {
+			}
+		});
+		assertEquals("foo", received[1]);
+		ReplyFuture<String> failed = new ReplyFuture<String>();
+		failed.setException(new IllegalStateException());
+		try {
+			failed.get();
+			fail("Expected ExecutionException");
+		}
+		catch (ExecutionException e) {
+			assertEquals(IllegalStateException.class, e.getCause().getClass());
+		}
+	}
+
+	private Message createMessage(Object body) {
+		return this.converter.toMessage(body, new MessageProperties());
+	}
+
+
+	public static class SimpleDelegate {
+
+		protected String lastCall;
+
+		protected ReplyFuture<String> pendingReply;
+
+		public void handleMessage(String text) {
+			this.lastCall = "String:" + text;
+		}
+
+		public void handleMessage(byte[] bytes) {
+			this.lastCall = "byte[]";
+		}
+
+		public void handleMessage(Number number) {
+			this.lastCall = "Number:" + number;
+		}
+
+		public void handleMessage(Object object) {
+			this.lastCall = "Object:" + object;
+		}
+
+		public void onText(String text) {
+			this.lastCall = "onText:" + text;
+		}
+
+		public void fail(String text) {
+			throw new IllegalStateException(text);
+		}
+
+		public void failIO(String text) throws IOException {
+			throw new IOException("expected");
+		}
+
+		public ReplyFuture<String> handleAsync(String text) {
+			this.pendingReply = new ReplyFuture<String>();
+			return this.pendingReply;
+		}
+	}
+
+
+	static class PackageDelegate {
+
+		private String text;
+
+		public void handleMessage(String text) {
+			this.text = text;
+		}
+	}
+
+}
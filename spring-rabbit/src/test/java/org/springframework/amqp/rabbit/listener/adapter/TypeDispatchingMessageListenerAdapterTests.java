@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.amqp.rabbit.listener.adapter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+/**
+ * @author agent
+ */
+public class TypeDispatchingMessageListenerAdapterTests {
+
+	private final SimpleMessageConverter converter = new SimpleMessageConverter();
+
+	@Test
+	public void dispatchByPayloadType() throws Exception {
+		Handlers handlers = new Handlers();
+		TypeDispatchingMessageListenerAdapter adapter = new TypeDispatchingMessageListenerAdapter(handlers);
+		adapter.onMessage(createMessage("foo"), null);
+		adapter.onMessage(createMessage(new byte[] { 1 }), null);
+		adapter.onMessage(createMessage(Integer.valueOf(1)), null);
+		adapter.onMessage(createMessage(Long.valueOf(2)), null);
+		adapter.onMessage(createMessage(new ArrayList<String>()), null);
+		adapter.onMessage(createMessage(new HashMap<String, String>()), null);
+		adapter.onMessage(createMessage("bar"), null);
+		assertEquals("[text:foo, bytes, number:1, number:2, list, object, text:bar]", handlers.calls.toString());
+	}
+
+	@Test
+	public void subclassHandlerWins() throws Exception {
+		Handlers handlers = new Handlers() {
+			@Override
+			@MessageHandler
+			public void text(String text) {
+				calls.add("override:" + text);
+			}
+		};
+		TypeDispatchingMessageListenerAdapter adapter = new TypeDispatchingMessageListenerAdapter(handlers);
+		adapter.onMessage(createMessage("foo"), null);
+		assertEquals("[override:foo]", handlers.calls.toString());
+	}
+
+	@Test
+	public void fallbackToDefaultListenerMethod() throws Exception {
+		PlainHandler handler = new PlainHandler();
+		TypeDispatchingMessageListenerAdapter adapter = new TypeDispatchingMessageListenerAdapter(handler);
+		adapter.onMessage(createMessage("foo"), null);
+		assertEquals("foo", handler.text);
+		NumberHandler numberHandler = new NumberHandler();
+		adapter.setDelegate(numberHandler);
+		adapter.onMessage(createMessage("foo"), null);
+		assertEquals("default:foo", numberHandler.text);
+		adapter.onMessage(createMessage(Integer.valueOf(3)), null);
+		assertEquals("number:3", numberHandler.text);
+	}
+
+	@Test(expected = ListenerExecutionFailedException.class)
+	public void ambiguousHandlers() throws Exception {
+		new TypeDispatchingMessageListenerAdapter(new AmbiguousHandlers()).onMessage(createMessage("foo"), null);
+	}
+
+	private Message createMessage(Object body) {
+		return this.converter.toMessage(body, new MessageProperties());
+	}
+
+
+	public static class Handlers {
+
+		protected final List<String> calls = new ArrayList<String>();
+
+		@MessageHandler
+		public void text(String text) {
+			this.calls.add("text:" + text);
+		}
+
+		@MessageHandler
+		public void bytes(byte[] bytes) {
+			this.calls.add("bytes");
+		}
+
+		@MessageHandler
+		public void number(Number number) {
+			this.calls.add("number:" + number);
+		}
+
+		@MessageHandler
+		public void list(List<?> list) {
+			this.calls.add("list");
+		}
+
+		@MessageHandler
+		public void object(Object object) {
+			this.calls.add("object");
+		}
+
+		public void handleMessage(Object object) {
+			this.calls.add("default");
+		}
+	}
+
+
+	public static class PlainHandler {
+
+		private String text;
+
+		public void handleMessage(String text) {
+			this.text = text;
+		}
+	}
+
+
+	public static class NumberHandler {
+
+		private String text;
+
+		@MessageHandler
+		public void number(Number number) {
+			this.text = "number:" + number;
+		}
+
+		public void handleMessage(String text) {
+			this.text = "default:" + text;
+		}
+	}
+
+
+	public static class AmbiguousHandlers {
+
+		@MessageHandler
+		public void one(String text) {
+		}
+
+		@MessageHandler
+		public void two(String text) {
+		}
+	}
+
+}